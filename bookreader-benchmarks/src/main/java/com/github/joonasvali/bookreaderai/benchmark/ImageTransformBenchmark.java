@@ -0,0 +1,86 @@
+package com.github.joonasvali.bookreaderai.benchmark;
+
+import com.github.joonasvali.bookreaderai.imageutil.CutImageUtil;
+import com.github.joonasvali.bookreaderai.imageutil.ImageResizer;
+import com.github.joonasvali.bookreaderai.imageutil.PerspectiveImageUtil;
+import com.github.joonasvali.bookreaderai.imageutil.RotateImageUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The image stages that run on every page before it is sent to the API, from the photo as it is loaded to the
+ * slices that are transcribed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class ImageTransformBenchmark {
+
+  @Param({"2", "12", "24", "48"})
+  private int megapixels;
+
+  @Param({"INT_RGB", "3BYTE_BGR", "INT_ARGB"})
+  private String imageType;
+
+  private BufferedImage image;
+  private Point[] corners;
+  private ImageResizer imageResizer;
+
+  @Setup
+  public void setUp() {
+    image = PageImages.page(megapixels, PageImages.imageType(imageType), megapixels);
+    corners = PageImages.skewedCorners(image);
+    imageResizer = ImageResizer.getStandardOpenAIImageResizer();
+  }
+
+  @Benchmark
+  public BufferedImage normalizeImageToRectangle() {
+    return PerspectiveImageUtil.normalizeImageToRectangle(image, corners);
+  }
+
+  @Benchmark
+  public BufferedImage normalizeImageToRectangleBilinear() {
+    return PerspectiveImageUtil.normalizeImageToRectangle(image, corners, true);
+  }
+
+  @Benchmark
+  public BufferedImage cutImage() {
+    return CutImageUtil.cutImage(image, corners);
+  }
+
+  @Benchmark
+  public CutImageUtil.SplitImageResult splitImageIntoSections() {
+    return CutImageUtil.splitImageIntoSections(image, 3, image.getHeight() / 18, true);
+  }
+
+  @Benchmark
+  public CutImageUtil.SplitImageResult splitImageAtLineGaps() {
+    return CutImageUtil.splitImageAtLineGaps(image, 800, 15);
+  }
+
+  @Benchmark
+  public BufferedImage resizeImageToLimits() {
+    return imageResizer.resizeImageToLimits(image);
+  }
+
+  @Benchmark
+  public BufferedImage applyRotation() {
+    return RotateImageUtil.applyRotation(image, 1);
+  }
+}
@@ -0,0 +1,148 @@
+package com.github.joonasvali.bookreaderai.benchmark;
+
+import com.github.joonasvali.bookreaderai.textutil.restoration.TextSentenceSplitter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates page texts and noisy transcriptions of them, so that the restoration benchmarks work on input that
+ * looks like what the transcriber agents return.
+ * <p>
+ * Pages are built from the sentences of the passages used in the unit tests. Every sample is a copy of the page
+ * with the mistakes OCR typically makes: confused characters, dropped and doubled characters, sentences that were
+ * missed or merged and line breaks in different places. The generator is seeded, so every run of a benchmark gets
+ * the same input.
+ */
+public class OcrNoiseCorpus {
+  private static final String CORPUS_RESOURCE = "/corpus.txt";
+
+  // Pairs of strings that are commonly mistaken for each other.
+  private static final String[][] CONFUSIONS = {
+      {"rn", "m"}, {"m", "rn"}, {"l", "1"}, {"I", "l"}, {"O", "0"}, {"e", "c"}, {"a", "o"}, {"h", "b"},
+      {"cl", "d"}, {"vv", "w"}, {"S", "5"}, {",", "."}
+  };
+
+  private final Random random;
+  private final String[] sentences;
+
+  public OcrNoiseCorpus(long seed) {
+    this.random = new Random(seed);
+    this.sentences = new TextSentenceSplitter().getSentences(readCorpus());
+  }
+
+  /**
+   * Returns a page of the given number of sentences, broken into lines of a few sentences each.
+   */
+  public String page(int sentenceCount) {
+    StringBuilder page = new StringBuilder();
+    for (int i = 0; i < sentenceCount; i++) {
+      if (i > 0) {
+        page.append(random.nextInt(4) == 0 ? "\n" : " ");
+      }
+      page.append(sentences[random.nextInt(sentences.length)].strip());
+    }
+    return page.toString();
+  }
+
+  /**
+   * Returns the given number of noisy transcriptions of the page.
+   *
+   * @param errorRate probability of a mistake at each character, for example 0.02
+   */
+  public String[] samples(String page, int count, double errorRate) {
+    String[] samples = new String[count];
+    for (int i = 0; i < count; i++) {
+      samples[i] = addNoise(page, errorRate);
+    }
+    return samples;
+  }
+
+  /**
+   * Returns the given number of noisy sentence pairs of about the given length in characters.
+   */
+  public List<String[]> sentencePairs(int count, int length, double errorRate) {
+    List<String[]> pairs = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      StringBuilder sentence = new StringBuilder();
+      while (sentence.length() < length) {
+        if (!sentence.isEmpty()) {
+          sentence.append(' ');
+        }
+        sentence.append(sentences[random.nextInt(sentences.length)].strip());
+      }
+      String clean = sentence.substring(0, length);
+      pairs.add(new String[]{addNoise(clean, errorRate), addNoise(clean, errorRate)});
+    }
+    return pairs;
+  }
+
+  private String addNoise(String text, double errorRate) {
+    StringBuilder noisy = new StringBuilder(text.length() + 16);
+    int i = 0;
+    while (i < text.length()) {
+      char c = text.charAt(i);
+      if (c == '.' && random.nextDouble() < errorRate * 5) {
+        // The end of a sentence is missed, merging it with the next one.
+        i++;
+        continue;
+      }
+      if (c == '\n' || (c == ' ' && random.nextDouble() < errorRate * 2)) {
+        // Line breaks rarely land in the same place in two transcriptions.
+        noisy.append(random.nextBoolean() ? '\n' : ' ');
+        i++;
+        continue;
+      }
+      if (random.nextDouble() >= errorRate) {
+        noisy.append(c);
+        i++;
+        continue;
+      }
+      switch (random.nextInt(4)) {
+        case 0 -> i += confuse(text, i, noisy);
+        case 1 -> i++;
+        case 2 -> {
+          noisy.append(c).append(c);
+          i++;
+        }
+        default -> {
+          noisy.append((char) ('a' + random.nextInt(26)));
+          i++;
+        }
+      }
+    }
+    return noisy.toString();
+  }
+
+  /**
+   * Appends a confused version of the text at the index, or the character as is if none applies.
+   *
+   * @return how many characters of the text were consumed
+   */
+  private int confuse(String text, int index, StringBuilder noisy) {
+    for (String[] confusion : CONFUSIONS) {
+      if (text.startsWith(confusion[0], index)) {
+        noisy.append(confusion[1]);
+        return confusion[0].length();
+      }
+    }
+    noisy.append(text.charAt(index));
+    return 1;
+  }
+
+  private static String readCorpus() {
+    try (InputStream in = OcrNoiseCorpus.class.getResourceAsStream(CORPUS_RESOURCE)) {
+      if (in == null) {
+        throw new IllegalStateException("Missing " + CORPUS_RESOURCE);
+      }
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
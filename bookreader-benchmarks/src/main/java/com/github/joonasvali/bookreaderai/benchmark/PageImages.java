@@ -0,0 +1,99 @@
+package com.github.joonasvali.bookreaderai.benchmark;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Generates photographs of book pages for the image benchmarks: lines of text on a slightly uneven paper color,
+ * with sensor noise so that the JPEG encoder has as much work as with a real photo.
+ */
+public class PageImages {
+
+  /**
+   * Returns a portrait 3:4 page of about the given number of megapixels.
+   *
+   * @param type one of the {@link BufferedImage} TYPE_ constants
+   */
+  public static BufferedImage page(int megapixels, int type, long seed) {
+    int width = (int) Math.round(Math.sqrt(megapixels * 1_000_000 * 3 / 4.0));
+    int height = width * 4 / 3;
+    BufferedImage image = new BufferedImage(width, height, type);
+    Random random = new Random(seed);
+
+    Graphics2D g = image.createGraphics();
+    g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+    g.setColor(new Color(236, 228, 208));
+    g.fillRect(0, 0, width, height);
+
+    int lineHeight = Math.max(12, height / 60);
+    g.setFont(new Font(Font.SERIF, Font.PLAIN, lineHeight * 2 / 3));
+    g.setColor(new Color(40, 36, 30));
+    int margin = width / 10;
+    for (int y = margin + lineHeight; y < height - margin; y += lineHeight) {
+      StringBuilder line = new StringBuilder();
+      while (g.getFontMetrics().stringWidth(line.toString()) < width - 2 * margin) {
+        int wordLength = 2 + random.nextInt(8);
+        for (int i = 0; i < wordLength; i++) {
+          line.append((char) ('a' + random.nextInt(26)));
+        }
+        line.append(' ');
+      }
+      g.drawString(line.toString(), margin, y);
+    }
+    g.dispose();
+
+    addNoise(image, random);
+    return image;
+  }
+
+  /**
+   * Maps the names used in benchmark parameters to {@link BufferedImage} types.
+   */
+  public static int imageType(String name) {
+    return switch (name) {
+      case "INT_RGB" -> BufferedImage.TYPE_INT_RGB;
+      case "3BYTE_BGR" -> BufferedImage.TYPE_3BYTE_BGR;
+      case "INT_ARGB" -> BufferedImage.TYPE_INT_ARGB;
+      default -> throw new IllegalArgumentException("Unknown image type: " + name);
+    };
+  }
+
+  /**
+   * Corners of a page photographed slightly at an angle, clockwise from the top left.
+   */
+  public static Point[] skewedCorners(BufferedImage image) {
+    int w = image.getWidth();
+    int h = image.getHeight();
+    return new Point[]{
+        new Point(w / 20, h / 30),
+        new Point(w - w / 12, h / 18),
+        new Point(w - w / 25, h - h / 40),
+        new Point(w / 16, h - h / 15)
+    };
+  }
+
+  private static void addNoise(BufferedImage image, Random random) {
+    int width = image.getWidth();
+    int[] row = new int[width];
+    for (int y = 0; y < image.getHeight(); y++) {
+      image.getRGB(0, y, width, 1, row, 0, width);
+      for (int x = 0; x < width; x++) {
+        int noise = random.nextInt(9) - 4;
+        int r = clamp(((row[x] >> 16) & 0xFF) + noise);
+        int g = clamp(((row[x] >> 8) & 0xFF) + noise);
+        int b = clamp((row[x] & 0xFF) + noise);
+        row[x] = (row[x] & 0xFF000000) | (r << 16) | (g << 8) | b;
+      }
+      image.setRGB(0, y, width, 1, row, 0, width);
+    }
+  }
+
+  private static int clamp(int value) {
+    return Math.max(0, Math.min(255, value));
+  }
+}
@@ -0,0 +1,83 @@
+package com.github.joonasvali.bookreaderai.benchmark;
+
+import com.github.joonasvali.bookreaderai.textutil.SentencePotentialMatcher;
+import com.github.joonasvali.bookreaderai.textutil.restoration.TextSentenceSplitter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The sentence level building blocks of the restoration: splitting a page into sentences and matching two
+ * transcriptions of a sentence.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SentenceBenchmark {
+  private static final int PAIR_COUNT = 64;
+
+  @State(Scope.Thread)
+  public static class MatchState {
+    @Param({"20", "80", "300"})
+    private int length;
+
+    @Param({"0.02"})
+    private double errorRate;
+
+    private List<String[]> pairs;
+    private int next;
+    // Not thread-safe, hence one per benchmark thread.
+    private SentencePotentialMatcher matcher;
+
+    @Setup
+    public void setUp() {
+      pairs = new OcrNoiseCorpus(length).sentencePairs(PAIR_COUNT, length, errorRate);
+      matcher = new SentencePotentialMatcher();
+    }
+
+    private String[] nextPair() {
+      String[] pair = pairs.get(next);
+      next = (next + 1) % pairs.size();
+      return pair;
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class SplitState {
+    @Param({"10", "100", "1000"})
+    private int sentences;
+
+    private String page;
+    private TextSentenceSplitter splitter;
+
+    @Setup
+    public void setUp() {
+      page = new OcrNoiseCorpus(sentences).page(sentences);
+      splitter = new TextSentenceSplitter();
+    }
+  }
+
+  @Benchmark
+  public SentencePotentialMatcher.MatchResult match(MatchState state) {
+    String[] pair = state.nextPair();
+    return state.matcher.match(pair[0], pair[1]);
+  }
+
+  @Benchmark
+  public String[] getSentences(SplitState state) {
+    return state.splitter.getSentences(state.page);
+  }
+}
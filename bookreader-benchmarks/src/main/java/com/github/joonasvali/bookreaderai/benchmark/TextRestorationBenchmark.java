@@ -0,0 +1,68 @@
+package com.github.joonasvali.bookreaderai.benchmark;
+
+import com.github.joonasvali.bookreaderai.textutil.restoration.MajorityVoter;
+import com.github.joonasvali.bookreaderai.textutil.restoration.TextAligner;
+import com.github.joonasvali.bookreaderai.textutil.restoration.TextRestorer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Restores a page out of several noisy transcriptions of it, the way the transcriber does with multiple samples.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextRestorationBenchmark {
+
+  @Param({"10", "50", "200"})
+  private int sentences;
+
+  @Param({"3", "5"})
+  private int samples;
+
+  @Param({"0.02"})
+  private double errorRate;
+
+  private String[] texts;
+  private TextRestorer textRestorer;
+  private TextAligner textAligner;
+  private MajorityVoter majorityVoter;
+
+  @Setup
+  public void setUp() {
+    OcrNoiseCorpus corpus = new OcrNoiseCorpus(sentences * 31L + samples);
+    texts = corpus.samples(corpus.page(sentences), samples, errorRate);
+    textRestorer = new TextRestorer();
+    textAligner = new TextAligner();
+    majorityVoter = new MajorityVoter();
+  }
+
+  @Benchmark
+  public String restoreText() {
+    return textRestorer.restoreText(texts);
+  }
+
+  @Benchmark
+  public TextAligner.AlignmentResult alignTexts() {
+    return textAligner.alignTexts(texts);
+  }
+
+  @Benchmark
+  public MajorityVoter.VoteResult vote() {
+    return majorityVoter.vote(texts);
+  }
+}
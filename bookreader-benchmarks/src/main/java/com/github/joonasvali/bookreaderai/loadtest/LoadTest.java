@@ -0,0 +1,169 @@
+package com.github.joonasvali.bookreaderai.loadtest;
+
+import com.github.joonasvali.bookreaderai.Constants;
+import com.github.joonasvali.bookreaderai.MainFrame;
+import com.github.joonasvali.bookreaderai.Settings;
+import com.github.joonasvali.bookreaderai.TranscriptionHints;
+import com.github.joonasvali.bookreaderai.openai.ProcessingResult;
+import com.github.joonasvali.bookreaderai.openai.ResponseCache;
+import com.github.joonasvali.bookreaderai.openai.TransportSettings;
+import com.github.joonasvali.bookreaderai.transcribe.PageTranscriber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives the full page pipeline (approximation, slices, joiner) over a folder of images and reports the throughput,
+ * the page latency and how many requests were spent on retries.
+ * <p>
+ * By default the calls go to an embedded {@link MockOpenAIServer}, set {@code loadtest.mockServer=false} to use the
+ * configured {@code http.baseUrl} instead. The SDK requires the {@code OPENAI_API_KEY} environment variable even
+ * though the mock server ignores it, any value will do.
+ * <p>
+ * Usage: {@code LoadTest <image folder> [properties file]}
+ */
+public class LoadTest {
+  private static final Logger logger = LoggerFactory.getLogger(LoadTest.class);
+
+  public static final String CONCURRENCY_KEY = "loadtest.concurrency";
+  public static final String ROUNDS_KEY = "loadtest.rounds";
+  public static final String MOCK_SERVER_KEY = "loadtest.mockServer";
+  public static final String GPT_MODEL_KEY = "loadtest.gptModel";
+  public static final String PARALLEL_SLICES_KEY = "loadtest.parallelSlices";
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    System.setProperty("java.awt.headless", "true");
+
+    if (args.length < 1) {
+      logger.error("Usage: LoadTest <image folder> [properties file]");
+      System.exit(1);
+    }
+    Path inputFolder = Path.of(args[0]).toAbsolutePath();
+    if (!Files.isDirectory(inputFolder)) {
+      logger.error("Input folder not found: {}", inputFolder);
+      System.exit(1);
+    }
+    if (System.getenv(Constants.OPENAI_API_KEY_ENV_VARIABLE) == null) {
+      logger.error("Set the {} environment variable, any value works with the mock server", Constants.OPENAI_API_KEY_ENV_VARIABLE);
+      System.exit(1);
+    }
+
+    Properties properties = new Properties();
+    if (args.length > 1) {
+      try (var in = Files.newInputStream(Path.of(args[1]))) {
+        properties.load(in);
+      }
+    }
+
+    MockOpenAIServer server = null;
+    if (Boolean.parseBoolean(properties.getProperty(MOCK_SERVER_KEY, "true"))) {
+      server = new MockOpenAIServer(MockServerSettings.fromProperties(properties)).start();
+      properties.setProperty(TransportSettings.BASE_URL_KEY, server.getBaseUrl());
+    }
+    // Cached responses would never reach the server under test.
+    properties.putIfAbsent(ResponseCache.ENABLED_KEY, "false");
+    Settings.configureAll(properties);
+
+    TranscriptionHints hints = new TranscriptionHints(
+        properties.getProperty("default.hint.language"),
+        properties.getProperty("default.hint.story", ""),
+        properties.getProperty(GPT_MODEL_KEY, "GPT-4.1")
+    );
+    int concurrency = Integer.parseInt(properties.getProperty(CONCURRENCY_KEY, "4"));
+    int rounds = Integer.parseInt(properties.getProperty(ROUNDS_KEY, "1"));
+    boolean parallelSlices = Boolean.parseBoolean(properties.getProperty(PARALLEL_SLICES_KEY, "false"));
+
+    Path[] imagePaths = MainFrame.sortByName(MainFrame.listInputFolderContent(inputFolder));
+    List<Path> pages = new ArrayList<>();
+    for (int i = 0; i < rounds; i++) {
+      pages.addAll(Arrays.asList(imagePaths));
+    }
+    logger.info("Transcribing {} pages from {} with {} workers", pages.size(), inputFolder, concurrency);
+
+    long[] latencies = new long[pages.size()];
+    AtomicInteger failed = new AtomicInteger();
+    AtomicLong totalTokens = new AtomicLong();
+    long start = System.nanoTime();
+    ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < pages.size(); i++) {
+        final int index = i;
+        futures.add(executor.submit(() -> {
+          long pageStart = System.nanoTime();
+          try {
+            ProcessingResult<String> result = transcribePage(pages.get(index), hints, parallelSlices);
+            totalTokens.addAndGet(result.totalTokens());
+          } catch (Exception e) {
+            failed.incrementAndGet();
+            logger.error("Unable to transcribe " + pages.get(index), e);
+          }
+          latencies[index] = (System.nanoTime() - pageStart) / 1_000_000;
+        }));
+      }
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          logger.error("Load test task failed", e.getCause());
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+    Arrays.sort(latencies);
+    logger.info("-- Load test results --");
+    logger.info("Pages: {} ({} failed) in {}s", pages.size(), failed.get(), String.format("%.1f", elapsedSeconds));
+    logger.info("Throughput: {} pages/minute", String.format("%.2f", pages.size() * 60 / elapsedSeconds));
+    logger.info("Page latency: p50 {} ms, p99 {} ms, max {} ms",
+        percentile(latencies, 0.50), percentile(latencies, 0.99), latencies.length == 0 ? 0 : latencies[latencies.length - 1]);
+    logger.info("Tokens reported to the pipeline: {}", totalTokens.get());
+    if (server != null) {
+      MockOpenAIServer.Stats stats = server.getStats();
+      long answered = stats.requests() - stats.rateLimited();
+      logger.info("Requests: {} answered, {} rate limited, retry overhead {}%",
+          answered, stats.rateLimited(), String.format("%.1f", answered == 0 ? 0.0 : 100.0 * stats.rateLimited() / answered));
+      logger.info("Tokens charged by the server: {} prompt, {} completion", stats.promptTokens(), stats.completionTokens());
+      server.stop();
+    }
+    System.exit(failed.get() > 0 ? 2 : 0);
+  }
+
+  private static ProcessingResult<String> transcribePage(Path imagePath, TranscriptionHints hints, boolean parallelSlices) throws IOException {
+    BufferedImage image = ImageIO.read(imagePath.toFile());
+    if (image == null) {
+      throw new IOException("Unable to decode image " + imagePath);
+    }
+    PageTranscriber pageTranscriber = new PageTranscriber(hints);
+    pageTranscriber.setParallelSlices(parallelSlices);
+    return pageTranscriber.transcribe(image, null);
+  }
+
+  /**
+   * Nearest-rank percentile of sorted values.
+   */
+  static long percentile(long[] sorted, double fraction) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int rank = (int) Math.ceil(fraction * sorted.length);
+    return sorted[Math.max(0, rank - 1)];
+  }
+}
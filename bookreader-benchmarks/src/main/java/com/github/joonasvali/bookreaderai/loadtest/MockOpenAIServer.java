@@ -0,0 +1,303 @@
+package com.github.joonasvali.bookreaderai.loadtest;
+
+import com.github.joonasvali.bookreaderai.benchmark.OcrNoiseCorpus;
+import com.github.joonasvali.bookreaderai.openai.RateLimiter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for the {@code /v1/chat/completions} endpoint of the OpenAI API, so that the transcription
+ * pipeline can be load tested offline and for free.
+ * <p>
+ * Every answer is a noisy transcription of the same generated page, one per requested sample, and arrives after a
+ * log-normally distributed latency. Requests are rejected with a 429 at random and when the optional per-minute
+ * budgets run out, with the {@code retry-after-ms} and {@code x-ratelimit-*} headers the real API sends. Token usage
+ * is estimated the way the API counts it and reported in every answer.
+ * <p>
+ * Usage: {@code MockOpenAIServer [properties file]}, see {@link MockServerSettings} for the keys.
+ */
+public class MockOpenAIServer {
+  private static final Logger logger = LoggerFactory.getLogger(MockOpenAIServer.class);
+
+  private static final String COMPLETIONS_PATH = "/chat/completions";
+  private static final long MINUTE_MILLIS = 60_000;
+
+  private final MockServerSettings settings;
+  private final OcrNoiseCorpus corpus;
+  private final String page;
+  private HttpServer server;
+
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong rateLimited = new AtomicLong();
+  private final AtomicLong promptTokens = new AtomicLong();
+  private final AtomicLong completionTokens = new AtomicLong();
+
+  // Fixed one minute windows of the per-minute budgets.
+  private long windowStart;
+  private long windowRequests;
+  private long windowTokens;
+
+  /**
+   * Totals since the server was started.
+   *
+   * @param requests    requests received, rejected ones included
+   * @param rateLimited requests rejected with a 429
+   */
+  public record Stats(long requests, long rateLimited, long promptTokens, long completionTokens) {
+  }
+
+  public MockOpenAIServer(MockServerSettings settings) {
+    this.settings = settings;
+    this.corpus = new OcrNoiseCorpus(42);
+    this.page = corpus.page(settings.pageSentences());
+  }
+
+  public MockOpenAIServer start() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), settings.port()), 0);
+    server.createContext("/", this::handle);
+    // Answers mostly sleep out their latency, a virtual thread per request keeps any number of them in flight.
+    server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    server.start();
+    logger.info("Mock OpenAI server listening at {}", getBaseUrl());
+    return this;
+  }
+
+  public void stop() {
+    server.stop(0);
+  }
+
+  /**
+   * Returns the API root to configure as {@code http.baseUrl}.
+   */
+  public String getBaseUrl() {
+    return "http://localhost:" + server.getAddress().getPort() + "/v1";
+  }
+
+  public Stats getStats() {
+    return new Stats(requests.get(), rateLimited.get(), promptTokens.get(), completionTokens.get());
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      if (!"POST".equals(exchange.getRequestMethod()) || !exchange.getRequestURI().getPath().endsWith(COMPLETIONS_PATH)) {
+        send(exchange, 404, error("Unknown endpoint " + exchange.getRequestURI().getPath(), "invalid_request_error"));
+        return;
+      }
+      requests.incrementAndGet();
+
+      JSONObject request;
+      try {
+        request = new JSONObject(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+      } catch (JSONException e) {
+        send(exchange, 400, error("Invalid JSON: " + e.getMessage(), "invalid_request_error"));
+        return;
+      }
+      int n = request.optInt("n", 1);
+      long prompt = estimatePromptTokens(request.optJSONArray("messages"));
+
+      long now = System.currentTimeMillis();
+      boolean injected = ThreadLocalRandom.current().nextDouble() < settings.rateLimitProbability();
+      long resetMillis = injected ? settings.retryAfterMillis() : admit(prompt, now);
+      if (resetMillis >= 0) {
+        rateLimited.incrementAndGet();
+        exchange.getResponseHeaders().set("retry-after-ms", String.valueOf(resetMillis));
+        send(exchange, 429, error("Rate limit reached", "requests"));
+        return;
+      }
+
+      sleep(sampleLatency());
+
+      JSONArray choices = new JSONArray();
+      long completion = 0;
+      for (int i = 0; i < n; i++) {
+        String content = transcription();
+        completion += content.length() / 4 + 1;
+        choices.put(new JSONObject()
+            .put("index", i)
+            .put("message", new JSONObject()
+                .put("role", "assistant")
+                .put("content", content)
+                .put("refusal", JSONObject.NULL))
+            .put("logprobs", JSONObject.NULL)
+            .put("finish_reason", "stop"));
+      }
+      promptTokens.addAndGet(prompt);
+      completionTokens.addAndGet(completion);
+      synchronized (this) {
+        windowTokens += completion;
+      }
+
+      JSONObject response = new JSONObject()
+          .put("id", "chatcmpl-" + UUID.randomUUID())
+          .put("object", "chat.completion")
+          .put("created", now / 1000)
+          .put("model", request.optString("model", "mock"))
+          .put("choices", choices)
+          .put("usage", new JSONObject()
+              .put("prompt_tokens", prompt)
+              .put("completion_tokens", completion)
+              .put("total_tokens", prompt + completion));
+      send(exchange, 200, response);
+    } catch (Exception e) {
+      logger.error("Mock request failed", e);
+      throw e;
+    }
+  }
+
+  /**
+   * Takes the request out of the per-minute budgets and sets the rate limit headers of the answer.
+   *
+   * @return -1 if the request is admitted, otherwise the milliseconds until the budgets are refilled
+   */
+  private synchronized long admit(long tokens, long now) {
+    if (now - windowStart >= MINUTE_MILLIS) {
+      windowStart = now;
+      windowRequests = 0;
+      windowTokens = 0;
+    }
+    long reset = windowStart + MINUTE_MILLIS - now;
+    boolean overRequests = settings.requestsPerMinute() > 0 && windowRequests >= settings.requestsPerMinute();
+    boolean overTokens = settings.tokensPerMinute() > 0 && windowTokens + tokens > settings.tokensPerMinute();
+    if (!overRequests && !overTokens) {
+      windowRequests++;
+      windowTokens += tokens;
+    }
+    return overRequests || overTokens ? reset : -1;
+  }
+
+  private synchronized void setRateLimitHeaders(HttpExchange exchange) {
+    long reset = Math.max(0, windowStart + MINUTE_MILLIS - System.currentTimeMillis());
+    if (settings.requestsPerMinute() > 0) {
+      exchange.getResponseHeaders().set("x-ratelimit-limit-requests", String.valueOf(settings.requestsPerMinute()));
+      exchange.getResponseHeaders().set("x-ratelimit-remaining-requests", String.valueOf(Math.max(0, settings.requestsPerMinute() - windowRequests)));
+      exchange.getResponseHeaders().set("x-ratelimit-reset-requests", reset + "ms");
+    }
+    if (settings.tokensPerMinute() > 0) {
+      exchange.getResponseHeaders().set("x-ratelimit-limit-tokens", String.valueOf(settings.tokensPerMinute()));
+      exchange.getResponseHeaders().set("x-ratelimit-remaining-tokens", String.valueOf(Math.max(0, settings.tokensPerMinute() - windowTokens)));
+      exchange.getResponseHeaders().set("x-ratelimit-reset-tokens", reset + "ms");
+    }
+  }
+
+  private long sampleLatency() {
+    double gaussian = ThreadLocalRandom.current().nextGaussian();
+    return Math.round(settings.medianLatencyMillis() * Math.exp(settings.latencySigma() * gaussian));
+  }
+
+  private String transcription() {
+    synchronized (corpus) {
+      return corpus.samples(page, 1, settings.errorRate())[0];
+    }
+  }
+
+  /**
+   * Counts the text of the messages at about four characters per token and the images as the API does, from their
+   * dimensions.
+   */
+  private static long estimatePromptTokens(JSONArray messages) {
+    long tokens = 0;
+    if (messages == null) {
+      return tokens;
+    }
+    for (int i = 0; i < messages.length(); i++) {
+      Object content = messages.getJSONObject(i).opt("content");
+      if (content instanceof String text) {
+        tokens += text.length() / 4 + 1;
+      } else if (content instanceof JSONArray parts) {
+        for (int j = 0; j < parts.length(); j++) {
+          JSONObject part = parts.getJSONObject(j);
+          if (part.has("image_url")) {
+            tokens += estimateImageTokens(part.getJSONObject("image_url").optString("url"));
+          } else {
+            tokens += part.optString("text").length() / 4 + 1;
+          }
+        }
+      }
+    }
+    return tokens;
+  }
+
+  private static long estimateImageTokens(String dataUrl) {
+    int comma = dataUrl.indexOf(',');
+    if (comma < 0) {
+      return RateLimiter.estimateImageTokens(512, 512);
+    }
+    byte[] image = Base64.getDecoder().decode(dataUrl.substring(comma + 1));
+    // Only the header of the image is read to get its size.
+    try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(image))) {
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+      if (readers.hasNext()) {
+        ImageReader reader = readers.next();
+        try {
+          reader.setInput(in);
+          return RateLimiter.estimateImageTokens(reader.getWidth(0), reader.getHeight(0));
+        } finally {
+          reader.dispose();
+        }
+      }
+    } catch (IOException e) {
+      logger.debug("Unable to read image size", e);
+    }
+    return RateLimiter.estimateImageTokens(512, 512);
+  }
+
+  private void send(HttpExchange exchange, int status, JSONObject body) throws IOException {
+    setRateLimitHeaders(exchange);
+    byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  private static JSONObject error(String message, String type) {
+    return new JSONObject().put("error", new JSONObject()
+        .put("message", message)
+        .put("type", type)
+        .put("param", JSONObject.NULL)
+        .put("code", JSONObject.NULL));
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    Properties properties = new Properties();
+    if (args.length > 0) {
+      try (var in = Files.newInputStream(Path.of(args[0]))) {
+        properties.load(in);
+      }
+    }
+    new MockOpenAIServer(MockServerSettings.fromProperties(properties)).start();
+  }
+}
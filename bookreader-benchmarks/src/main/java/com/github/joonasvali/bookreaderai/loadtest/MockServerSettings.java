@@ -0,0 +1,53 @@
+package com.github.joonasvali.bookreaderai.loadtest;
+
+import java.util.Properties;
+
+/**
+ * Behaviour of the {@link MockOpenAIServer}.
+ *
+ * @param port                 port to listen on, 0 picks a free one
+ * @param medianLatencyMillis  median time the server takes to answer
+ * @param latencySigma         spread of the log-normal latency distribution, 0 answers always after the median
+ * @param rateLimitProbability probability of rejecting an otherwise admitted request with a 429
+ * @param retryAfterMillis     wait the server asks for when it rejects a request
+ * @param requestsPerMinute    requests admitted per minute before answering 429, 0 for no limit
+ * @param tokensPerMinute      tokens admitted per minute before answering 429, 0 for no limit
+ * @param pageSentences        sentences in the page the server "transcribes"
+ * @param errorRate            probability of an OCR mistake per character of an answer
+ */
+public record MockServerSettings(int port, long medianLatencyMillis, double latencySigma, double rateLimitProbability,
+                                 long retryAfterMillis, long requestsPerMinute, long tokensPerMinute,
+                                 int pageSentences, double errorRate) {
+
+  public static final String PORT_KEY = "mock.port";
+  public static final String MEDIAN_LATENCY_MILLIS_KEY = "mock.medianLatencyMillis";
+  public static final String LATENCY_SIGMA_KEY = "mock.latencySigma";
+  public static final String RATE_LIMIT_PROBABILITY_KEY = "mock.rateLimitProbability";
+  public static final String RETRY_AFTER_MILLIS_KEY = "mock.retryAfterMillis";
+  public static final String REQUESTS_PER_MINUTE_KEY = "mock.requestsPerMinute";
+  public static final String TOKENS_PER_MINUTE_KEY = "mock.tokensPerMinute";
+  public static final String PAGE_SENTENCES_KEY = "mock.pageSentences";
+  public static final String ERROR_RATE_KEY = "mock.errorRate";
+
+  public static MockServerSettings defaults() {
+    return new MockServerSettings(0, 2000, 0.5, 0.02, 1000, 0, 0, 20, 0.02);
+  }
+
+  /**
+   * Reads the settings from the given properties, falling back to {@link #defaults()} for every missing key.
+   */
+  public static MockServerSettings fromProperties(Properties properties) {
+    MockServerSettings defaults = defaults();
+    return new MockServerSettings(
+        Integer.parseInt(properties.getProperty(PORT_KEY, String.valueOf(defaults.port()))),
+        Long.parseLong(properties.getProperty(MEDIAN_LATENCY_MILLIS_KEY, String.valueOf(defaults.medianLatencyMillis()))),
+        Double.parseDouble(properties.getProperty(LATENCY_SIGMA_KEY, String.valueOf(defaults.latencySigma()))),
+        Double.parseDouble(properties.getProperty(RATE_LIMIT_PROBABILITY_KEY, String.valueOf(defaults.rateLimitProbability()))),
+        Long.parseLong(properties.getProperty(RETRY_AFTER_MILLIS_KEY, String.valueOf(defaults.retryAfterMillis()))),
+        Long.parseLong(properties.getProperty(REQUESTS_PER_MINUTE_KEY, String.valueOf(defaults.requestsPerMinute()))),
+        Long.parseLong(properties.getProperty(TOKENS_PER_MINUTE_KEY, String.valueOf(defaults.tokensPerMinute()))),
+        Integer.parseInt(properties.getProperty(PAGE_SENTENCES_KEY, String.valueOf(defaults.pageSentences()))),
+        Double.parseDouble(properties.getProperty(ERROR_RATE_KEY, String.valueOf(defaults.errorRate())))
+    );
+  }
+}
@@ -0,0 +1,64 @@
+package com.github.joonasvali.bookreaderai.openai;
+
+import com.github.joonasvali.bookreaderai.benchmark.PageImages;
+import okio.BufferedSink;
+import okio.Okio;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding of a page into a request: the JPEG compression done by {@link ImageAnalysis} and the base64 encoding of
+ * the JPEG as the request body is written. Lives in the package of {@link ImageAnalysis} to reach its encoder.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class ImageEncodingBenchmark {
+
+  @Param({"2", "12", "24", "48"})
+  private int megapixels;
+
+  @Param({"INT_RGB", "3BYTE_BGR", "INT_ARGB"})
+  private String imageType;
+
+  private BufferedImage image;
+  private byte[] jpeg;
+
+  @Setup
+  public void setUp() throws IOException {
+    image = PageImages.page(megapixels, PageImages.imageType(imageType), megapixels);
+    jpeg = ImageAnalysis.convertBufferedImage(image, "jpg");
+  }
+
+  @Benchmark
+  public byte[] encodeJpeg() throws IOException {
+    return ImageAnalysis.convertBufferedImage(image, "jpg");
+  }
+
+  @Benchmark
+  public long writeRequestBody() throws IOException {
+    ImageRequestBody body = ImageRequestBody.create(
+        base64Image -> new JSONObject().put("url", "data:image/jpeg;base64," + base64Image), jpeg);
+    try (BufferedSink sink = Okio.buffer(Okio.blackhole())) {
+      body.writeTo(sink);
+    }
+    return body.contentLength();
+  }
+}
@@ -5,8 +5,12 @@ import org.slf4j.Logger;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.prefs.Preferences;
 
 public class FileHandler {
+  public static final String DRAFTS_FOLDER = "drafts";
+  public static final String PREF_KEY_ROTATION_BASE = "rotation";
+
   private final Logger logger = org.slf4j.LoggerFactory.getLogger(FileHandler.class);
   private final Path outputFolder;
 
@@ -38,6 +42,54 @@ public class FileHandler {
     return "";
   }
 
+  /**
+   * Drafts are transcriptions nobody has reviewed yet. They are kept in a subfolder of the output folder, so that
+   * they never end up in the final result.
+   */
+  public Path getDraftFilePath(String fileNameBody) {
+    return outputFolder.resolve(DRAFTS_FOLDER).resolve(fileNameBody + ".txt");
+  }
+
+  public void saveDraft(String fileNameBody, String content) throws IOException {
+    logger.info("Saving draft: {}", fileNameBody);
+    Path filePath = getDraftFilePath(fileNameBody);
+    Files.createDirectories(filePath.getParent());
+    Files.writeString(filePath, content);
+  }
+
+  /**
+   * @return the draft of the page, or null if there is none
+   */
+  public String loadDraft(String fileNameBody) throws IOException {
+    Path filePath = getDraftFilePath(fileNameBody);
+    if (Files.exists(filePath)) {
+      return Files.readString(filePath);
+    }
+    return null;
+  }
+
+  public void deleteDraft(String fileNameBody) throws IOException {
+    Files.deleteIfExists(getDraftFilePath(fileNameBody));
+  }
+
+  /**
+   * @return the number of 90° clockwise rotations the user has applied to the image, as stored in preferences
+   */
+  public int getStoredRotation(Path imagePath) {
+    Preferences prefs = Preferences.userNodeForPackage(FileHandler.class);
+    return prefs.getInt(getRotationPrefKey(imagePath), 0);
+  }
+
+  public void storeRotation(Path imagePath, int rotation) {
+    Preferences prefs = Preferences.userNodeForPackage(FileHandler.class);
+    prefs.putInt(getRotationPrefKey(imagePath), rotation);
+  }
+
+  // The preference key for rotation based on outputFolder and file name.
+  private String getRotationPrefKey(Path imagePath) {
+    return PREF_KEY_ROTATION_BASE + ":" + outputFolder.toString().hashCode() + ":" + getFileNameWithoutSuffix(imagePath).hashCode();
+  }
+
   public static String getFileNameWithoutSuffix(Path path) {
     String fileName = path.getFileName().toString();
     int dotIndex = fileName.lastIndexOf('.');
@@ -1,16 +1,11 @@
 package com.github.joonasvali.bookreaderai;
 
-import com.github.joonasvali.bookreaderai.imageutil.CutImageUtil;
 import com.github.joonasvali.bookreaderai.imageutil.PerspectiveImageUtil;
-import com.github.joonasvali.bookreaderai.imageutil.RotateImageUtil;
 import com.github.joonasvali.bookreaderai.openai.ProcessingResult;
 import com.github.joonasvali.bookreaderai.textutil.LineUtil;
-import com.github.joonasvali.bookreaderai.transcribe.JoinedTranscriber;
-import com.github.joonasvali.bookreaderai.transcribe.SimpleTranscriberAgent;
-import com.github.joonasvali.bookreaderai.util.ModelUtils;
+import com.github.joonasvali.bookreaderai.transcribe.Transcriber;
 import org.slf4j.Logger;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.text.DefaultCaret;
 import java.awt.*;
@@ -19,21 +14,18 @@ import java.awt.event.ComponentEvent;
 import java.awt.event.FocusEvent;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.prefs.Preferences;
 
 public class ImageContentPanel extends JPanel {
-  public static final int LINE_BREAK_CHARS = 100;
   public static final int DUMMY_PROGRESS = 5;
 
-  private final Executor executor = Executors.newSingleThreadExecutor();
-
   private final Logger logger = org.slf4j.LoggerFactory.getLogger(ImageContentPanel.class);
   private static final String PREF_KEY_LAST_IMAGE_INDEX_BASE = "lastImageIndex";
-  public static final String PREF_KEY_ROTATION_BASE = "rotation";
 
   private Path[] paths;
   private int currentIndex = 0;
@@ -47,10 +39,16 @@ public class ImageContentPanel extends JPanel {
   private JButton produceFinalResultButton;
   private JButton transcribeButton;
   private JCheckBox normalizePerspectiveCheckBox;
+  private JCheckBox parallelSlicesCheckBox;
   private JLabel counterLabel;
 
-  private BufferedImage loadedImage;
-  private BufferedImage originalImage;
+  private PagePrefetcher.Page page;
+  private final PagePrefetcher prefetcher;
+  private final SpeculativeTranscriber speculativeTranscriber;
+  // Blank pages and duplicates of the folder, null until the scan is done or if it is off.
+  private PageScan pageScan;
+  // True while the text area shows a draft made in the background that has not been saved yet.
+  private boolean showingDraft;
   private ImagePanel imagePanel;
   private JProgressBar bar;
   private final Path outputFolder;
@@ -61,10 +59,14 @@ public class ImageContentPanel extends JPanel {
   private boolean hasAPIKey = true;
   private FinalResultManager finalResultManager;
   private boolean normalizePerspective = true;
+  private boolean parallelSlices = false;
 
   private Timer resizeTimer;  // For debouncing resize events
+  private CompletableFuture<ProcessingResult<String>> runningTranscription;
 
-  public ImageContentPanel(TranscriptionHints hints, Path[] paths, Path outputFolder, Runnable switchToSettingsAction) {
+  public ImageContentPanel(TranscriptionHints hints, Path[] paths, Path outputFolder, PrefetchSettings prefetchSettings,
+                           SpeculationSettings speculationSettings, CompletableFuture<PageScan> pageScanFuture,
+                           Runnable switchToSettingsAction) {
     String openaiApiKey = System.getenv(Constants.OPENAI_API_KEY_ENV_VARIABLE);
     if (openaiApiKey == null || openaiApiKey.isEmpty()) {
       hasAPIKey = false;
@@ -85,6 +87,11 @@ public class ImageContentPanel extends JPanel {
     this.switchToSettingsAction = switchToSettingsAction;
     this.fileHandler = new FileHandler(outputFolder);
     this.finalResultManager = new FinalResultManager(paths, fileHandler);
+    this.prefetcher = new PagePrefetcher(paths, fileHandler::getStoredRotation, prefetchSettings);
+    this.speculativeTranscriber = hasAPIKey && speculationSettings.enabled()
+        ? new SpeculativeTranscriber(paths, fileHandler, prefetcher, hints, speculationSettings,
+        name -> SwingUtilities.invokeLater(() -> showDraftIfOpen(name)))
+        : null;
 
     // Use the helper method to load the image (which also applies rotation)
     inputFileName = FileHandler.getFileNameWithoutSuffix(paths[currentIndex]);
@@ -92,6 +99,10 @@ public class ImageContentPanel extends JPanel {
 
     initComponents();
     loadContent();
+    speculate();
+    if (pageScanFuture != null) {
+      pageScanFuture.thenAccept(scan -> SwingUtilities.invokeLater(() -> pageScanDone(scan)));
+    }
   }
 
   private void initComponents() {
@@ -130,6 +141,12 @@ public class ImageContentPanel extends JPanel {
       normalizePerspective = normalizePerspectiveCheckBox.isSelected();
     });
 
+    parallelSlicesCheckBox = new JCheckBox("Parallel Slices", parallelSlices);
+    parallelSlicesCheckBox.setToolTipText("Transcribe all slices at once and reconcile their overlaps afterwards");
+    parallelSlicesCheckBox.addChangeListener((e) -> {
+      parallelSlices = parallelSlicesCheckBox.isSelected();
+    });
+
     topLeftPanel.add(settingsButton);
 
     // Add rotate button to the top panel
@@ -138,6 +155,7 @@ public class ImageContentPanel extends JPanel {
     rotateButton.addActionListener(e -> rotateImage());
 
     topMiddlePanel.add(normalizePerspectiveCheckBox);
+    topMiddlePanel.add(parallelSlicesCheckBox);
     topMiddlePanel.add(transcribeButton);
     topMiddlePanel.add(bar);
     topRightPanel.add(saveButton);
@@ -220,141 +238,118 @@ public class ImageContentPanel extends JPanel {
     return PREF_KEY_LAST_IMAGE_INDEX_BASE + ":" + outputFolder.toString().hashCode();
   }
 
-  // New method to build the preference key for rotation based on outputFolder and file name.
-  private String getRotationPrefKey() {
-    return PREF_KEY_ROTATION_BASE + ":" + outputFolder.toString().hashCode() + ":" + FileHandler.getFileNameWithoutSuffix(paths[currentIndex]).hashCode();
+  JTextArea getTextArea() {
+    return textArea;
   }
 
   private void performTranscription() {
+    if (runningTranscription != null) {
+      // The button cancels the transcription that is in progress.
+      runningTranscription.cancel(true);
+      return;
+    }
+    transcribe(imagePanel.getOriginalCropCoordinates());
+  }
 
+  /**
+   * Transcribes the area of the open page within the given corners, in the coordinates of the full image, and puts
+   * the text into the text area.
+   */
+  void transcribe(Point[] points) {
     bar.setValue(DUMMY_PROGRESS);
 
-    var points = imagePanel.getOriginalCropCoordinates();
-
-    BufferedImage croppedImage = loadedImage;
-    if (!PerspectiveImageUtil.arePointsAtTheCornersOfImage(loadedImage, points)) {
-      if (normalizePerspective) {
-        logger.info("Bounds: Using normalized perspective");
-        croppedImage = PerspectiveImageUtil.normalizeImageToRectangle(loadedImage, points);
-      } else {
-        logger.info("Bounds: Using cropped image");
-        croppedImage = CutImageUtil.cutImage(loadedImage, points);
+    int index = currentIndex;
+    int width = page.width();
+    int height = page.height();
+    String fileName = inputFileName;
+
+    Transcriber transcriber = new Transcriber(hints);
+    transcriber.setParallelSlices(parallelSlices);
+    transcriber.setPageName(fileName);
+
+    Consumer<Float> listener = progress -> SwingUtilities.invokeLater(() ->
+        bar.setValue(Math.max(DUMMY_PROGRESS, (int) (progress * 100))));
+
+    transcribeButton.setText("Cancel");
+    // The panel only holds the page at display resolution, the full image is read for the transcription.
+    Supplier<BufferedImage> image = () -> {
+      try {
+        return prefetcher.readFullImage(index);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    };
+    CompletableFuture<ProcessingResult<String>> transcription = transcriber.transcribe(image, points, normalizePerspective, listener);
+    runningTranscription = transcription;
+    transcription.whenComplete((result, throwable) -> SwingUtilities.invokeLater(() -> {
+      runningTranscription = null;
+      bar.setValue(0);
+      transcribeButton.setText("Transcribe");
+
+      if (transcription.isCancelled()) {
+        logger.info("Transcription cancelled for " + fileName);
+        return;
+      }
+      if (throwable != null) {
+        logger.error("Unable to complete transcription for " + fileName, throwable);
+        return;
       }
-    }
 
-    // Check if the model requires whole image processing
-    boolean requiresWholeImageProcessing = ModelUtils.requiresWholeImageProcessing(hints.gptModel());
-    
-    if (requiresWholeImageProcessing) {
-      // For models that require whole image processing: process without slicing or scaling
-      logger.info("Using {}: processing whole image without slicing", hints.gptModel());
-      
-      SimpleTranscriberAgent transcriberAgent = new SimpleTranscriberAgent(croppedImage, hints.language(), hints.story(), 1, hints.gptModel());
-      
-      transcribeButton.setEnabled(false);
-      executor.execute(() -> {
-        try {
-          ProcessingResult<String> result = transcriberAgent.transcribe(null);
-          SwingUtilities.invokeLater(() -> bar.setValue(100));
-          
-          LineUtil lineUtil = new LineUtil();
-          String text = lineUtil.lineBreakAfterEvery(result.content(), LINE_BREAK_CHARS);
-
-          logger.info("-- Tokens used --");
-          logger.info("Used completion tokens: " + result.completionTokens());
-          logger.info("Used prompt tokens: " + result.promptTokens());
-          logger.info("User total tokens: " + result.totalTokens());
-
-          SwingUtilities.invokeLater(() -> {
-            if (PerspectiveImageUtil.arePointsAtTheCornersOfImage(loadedImage, points)) {
-              // When the image is not cropped, the text is transcribed from the original image, overwrite existing text.
-              textArea.setText(text);
-            } else {
-              // If user has selected text, replace that selection; otherwise, append the transcription result.
-              String selectedText = textArea.getSelectedText();
-              if (selectedText != null && !selectedText.isEmpty()) {
-                textArea.replaceSelection(text);
-              } else {
-                textArea.append("\n\n" + text);
-              }
-            }
-          });
-        } catch (RuntimeException ex) {
-          logger.error("Unable to complete transcription for " + inputFileName, ex);
-          throw ex;
-        } finally {
-          SwingUtilities.invokeLater(() -> {
-            bar.setValue(0);
-            transcribeButton.setEnabled(true);
-          });
-        }
-      });
-    } else {
-      // For other models: use the original slicing approach
-      int zoomLevel = Math.max(1, (int)Math.floor(croppedImage.getHeight() / 800f));
-      logger.debug("Using zoom level: " + zoomLevel);
-
-      ProgressUpdateUtility progressUpdateUtility = new ProgressUpdateUtility(zoomLevel);
-      int cutOverlapPx = (croppedImage.getHeight() / (zoomLevel * 6));
-      BufferedImage[] images = CutImageUtil.splitImageIntoSections(croppedImage, zoomLevel, cutOverlapPx, true).sections;
-
-      Consumer<Float> listener = progress -> SwingUtilities.invokeLater(() ->
-          bar.setValue((int) (progress * 100)));
-      progressUpdateUtility.setListener(listener);
-
-      SimpleTranscriberAgent approximationAgent = new SimpleTranscriberAgent(croppedImage, hints.language(), hints.story(), 1, hints.gptModel());
-
-      transcribeButton.setEnabled(false);
-      executor.execute(() -> {
-        try {
-          ProcessingResult<String> approx = approximationAgent.transcribe(null);
-          SwingUtilities.invokeLater(() -> bar.setValue(DUMMY_PROGRESS + 5));
-          logger.info("Approximated result: " + approx.content());
-
-          JoinedTranscriber transcriber = new JoinedTranscriber(images, hints.language(), hints.story(), approx.content(), hints.gptModel());
-          transcriber.setProgressUpdateUtility(progressUpdateUtility);
-          transcriber.transcribeImages(result -> {
-            LineUtil lineUtil = new LineUtil();
-            String text = lineUtil.lineBreakAfterEvery(result.content(), LINE_BREAK_CHARS);
-
-            logger.info("-- Tokens used --");
-            logger.info("Used completion tokens: " + result.completionTokens());
-            logger.info("Used prompt tokens: " + result.promptTokens());
-            logger.info("User total tokens: " + result.totalTokens());
-
-            SwingUtilities.invokeLater(() -> {
-              if (PerspectiveImageUtil.arePointsAtTheCornersOfImage(loadedImage, points)) {
-                // When the image is not cropped, the text is transcribed from the original image, overwrite existing text.
-                textArea.setText(text);
-              } else {
-                // If user has selected text, replace that selection; otherwise, append the transcription result.
-                String selectedText = textArea.getSelectedText();
-                if (selectedText != null && !selectedText.isEmpty()) {
-                  textArea.replaceSelection(text);
-                } else {
-                  textArea.append("\n\n" + text);
-                }
-              }
-            });
-          });
-        } catch (IOException ex) {
-          logger.error("Unable to complete transcription for " + inputFileName, ex);
-          throw new RuntimeException(ex);
-        } finally {
-          SwingUtilities.invokeLater(() -> {
-            bar.setValue(0);
-            transcribeButton.setEnabled(true);
-          });
-        }
-      });
-    }
+      LineUtil lineUtil = new LineUtil();
+      String text = lineUtil.lineBreakAfterEvery(result.content(), LineUtil.LINE_BREAK_CHARS);
+
+      logger.info("-- Tokens used --");
+      logger.info("Used completion tokens: " + result.completionTokens());
+      logger.info("Used prompt tokens: " + result.promptTokens());
+      logger.info("User total tokens: " + result.totalTokens());
 
+      if (!fileName.equals(inputFileName)) {
+        logger.warn("Discarding transcription of " + fileName + ", another page is open");
+        return;
+      }
+      boolean wholePage = PerspectiveImageUtil.arePointsAtTheCornersOfImage(width, height, points);
+      if (showingDraft && wholePage && !isUnsavedChanges()) {
+        // The draft was made from the whole page and nobody has touched it, the new transcription replaces it.
+        textArea.setText(text);
+        discardDraft();
+        return;
+      }
+      if (showingDraft) {
+        // The user has edited the draft or adds to it, from now on it is their text. The draft goes when it is saved.
+        showingDraft = false;
+        updateCounterLabel();
+      }
+      if (wholePage) {
+        // When the image is not cropped, the text is transcribed from the original image, overwrite existing text.
+        textArea.setText(text);
+      } else {
+        // If user has selected text, replace that selection; otherwise, append the transcription result.
+        String selectedText = textArea.getSelectedText();
+        if (selectedText != null && !selectedText.isEmpty()) {
+          textArea.replaceSelection(text);
+        } else {
+          textArea.append("\n\n" + text);
+        }
+      }
+    }));
   }
 
   private void loadContent() {
     try {
       String content = fileHandler.loadFromFile(inputFileName);
+      showingDraft = false;
+      if (content.isEmpty()) {
+        String draft = fileHandler.loadDraft(inputFileName);
+        if (draft == null) {
+          draft = reuseOriginal();
+        }
+        if (draft != null) {
+          content = draft;
+          showingDraft = true;
+        }
+      }
       textArea.setText(content);
+      updateCounterLabel();
     } catch (IOException e) {
       logger.error("Failed to load file: {}", e.getMessage());
       JOptionPane.showMessageDialog(this, "Failed to load file: " + e.getMessage(),
@@ -371,6 +366,8 @@ public class ImageContentPanel extends JPanel {
     }
     try {
       fileHandler.saveToFile(inputFileName, content);
+      // Also when the text was made from a draft that is no longer shown as one.
+      discardDraft();
       JOptionPane.showMessageDialog(this, "File saved successfully.",
           "Success", JOptionPane.INFORMATION_MESSAGE);
     } catch (IOException ex) {
@@ -383,7 +380,8 @@ public class ImageContentPanel extends JPanel {
   private boolean isUnsavedChanges() {
     try {
       String currentContent = textArea.getText();
-      String savedContent = fileHandler.loadFromFile(inputFileName);
+      // An unchanged draft stays on disk as a draft, leaving the page loses nothing.
+      String savedContent = showingDraft ? fileHandler.loadDraft(inputFileName) : fileHandler.loadFromFile(inputFileName);
       return !currentContent.equals(savedContent);
     } catch (IOException e) {
       return true;
@@ -429,6 +427,69 @@ public class ImageContentPanel extends JPanel {
     loadImage();
     imagePanel.resetCropRectangle();
     updateDisplay();
+    speculate();
+  }
+
+  private void speculate() {
+    if (speculativeTranscriber != null) {
+      speculativeTranscriber.pageOpened(currentIndex, parallelSlices);
+    }
+  }
+
+  // Called when a draft made in the background is saved. Shown right away if its page is open and still empty.
+  private void showDraftIfOpen(String fileName) {
+    if (fileName.equals(inputFileName) && textArea.getText().isEmpty() && !isUnsavedChanges()) {
+      loadContent();
+    }
+  }
+
+  /**
+   * Saves the transcription of the earlier page this page is another shot of as the draft of this page.
+   *
+   * @return the draft, or null if the page is not a duplicate or the earlier page has not been transcribed
+   */
+  private String reuseOriginal() throws IOException {
+    if (pageScan == null || pageScan.getOriginal(currentIndex) == -1) {
+      return null;
+    }
+    String content = fileHandler.loadFromFile(FileHandler.getFileNameWithoutSuffix(paths[pageScan.getOriginal(currentIndex)]));
+    if (content.isEmpty()) {
+      return null;
+    }
+    fileHandler.saveDraft(inputFileName, content);
+    return content;
+  }
+
+  private void pageScanDone(PageScan scan) {
+    pageScan = scan;
+    if (speculativeTranscriber != null) {
+      speculativeTranscriber.setPageScan(scan);
+      speculate();
+    }
+    if (textArea.getText().isEmpty() && !isUnsavedChanges()) {
+      loadContent();
+    }
+    updateCounterLabel();
+  }
+
+  private void discardDraft() {
+    showingDraft = false;
+    updateCounterLabel();
+    try {
+      fileHandler.deleteDraft(inputFileName);
+    } catch (IOException e) {
+      logger.error("Failed to delete draft: {}", e.getMessage());
+    }
+  }
+
+  private void updateCounterLabel() {
+    String note = "";
+    if (pageScan != null && pageScan.isBlank(currentIndex)) {
+      note = " (blank)";
+    } else if (pageScan != null && pageScan.getOriginal(currentIndex) != -1) {
+      note = " (same as " + FileHandler.getFileNameWithoutSuffix(paths[pageScan.getOriginal(currentIndex)]) + ")";
+    }
+    counterLabel.setText((currentIndex + 1) + "/" + paths.length + (showingDraft ? " (draft)" : "") + note);
   }
 
   private void storeCurrentImageIndex() {
@@ -436,19 +497,26 @@ public class ImageContentPanel extends JPanel {
     prefs.putInt(getPrefKeyLastImageIndex(), currentIndex);
   }
 
-  // Modified loadImage: reads the image from disk into originalImage,
-  // then applies any stored rotation before assigning to loadedImage.
+  // Takes the page from the prefetcher, which has usually decoded and rotated it in the background already,
+  // and starts prefetching the pages around it.
   private void loadImage() {
     try {
-      originalImage = ImageIO.read(paths[currentIndex].toFile());
-      Preferences prefs = Preferences.userNodeForPackage(ImageContentPanel.class);
-      int rotation = prefs.getInt(getRotationPrefKey(), 0);
-      loadedImage = RotateImageUtil.applyRotation(originalImage, rotation);
+      page = prefetcher.getPage(currentIndex);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
 
+  /**
+   * Stops prefetching pages and releases the decoded ones. Called when the panel is replaced.
+   */
+  public void dispose() {
+    if (speculativeTranscriber != null) {
+      speculativeTranscriber.close();
+    }
+    prefetcher.close();
+  }
+
 
   private void updateDisplay() {
     if (paths.length == 0 || currentIndex < 0 || currentIndex >= paths.length) {
@@ -458,44 +526,36 @@ public class ImageContentPanel extends JPanel {
     int labelHeight = imageLabel.getHeight();
     if (labelWidth <= 0 || labelHeight <= 0) return;
 
-    counterLabel.setText((currentIndex + 1) + "/" + paths.length);
+    updateCounterLabel();
 
-    int imgWidth = loadedImage.getWidth();
-    int imgHeight = loadedImage.getHeight();
-    double scale = Math.min((double) labelWidth / imgWidth, (double) labelHeight / imgHeight);
-    int newWidth = (int) (imgWidth * scale);
-    int newHeight = (int) (imgHeight * scale);
+    // Neighbouring pages are prefetched at this size, so flipping to them needs no scaling.
+    try {
+      page = prefetcher.fitPreview(currentIndex, page, labelWidth, labelHeight);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
 
-    Image scaledImg = resizeImage(loadedImage, newWidth, newHeight);
+    Image scaledImg = page.preview();
     imageLabel.setIcon(new ImageIcon(scaledImg));
     imageLabel.revalidate();
     imageLabel.repaint();
 
     prevButton.setEnabled(currentIndex > 0);
     nextButton.setEnabled(currentIndex < paths.length - 1);
-    imagePanel.refreshIcon(loadedImage.getWidth(), loadedImage.getHeight());
-  }
-
-  private BufferedImage resizeImage(BufferedImage originalImage, int targetWidth, int targetHeight) {
-    BufferedImage resizedImage = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_ARGB);
-    Graphics2D g2d = resizedImage.createGraphics();
-    g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-    g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-    g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-    g2d.drawImage(originalImage, 0, 0, targetWidth, targetHeight, null);
-    g2d.dispose();
-    return resizedImage;
+    imagePanel.refreshIcon(page.width(), page.height());
   }
 
   // Called when the Rotate button is pressed.
   // Increments the rotation (modulo 4), saves it into preferences,
   // applies it on the in-memory image, and updates the display.
   private void rotateImage() {
-    Preferences prefs = Preferences.userNodeForPackage(ImageContentPanel.class);
-    int currentRotation = prefs.getInt(getRotationPrefKey(), 0);
-    int newRotation = (currentRotation + 1) % 4;
-    prefs.putInt(getRotationPrefKey(), newRotation);
-    loadedImage = RotateImageUtil.applyRotation(originalImage, newRotation);
+    int newRotation = (fileHandler.getStoredRotation(paths[currentIndex]) + 1) % 4;
+    fileHandler.storeRotation(paths[currentIndex], newRotation);
+    page = prefetcher.rotate(currentIndex, page, newRotation);
+    if (showingDraft) {
+      // The draft was made from the page as it was turned before.
+      discardDraft();
+    }
     updateDisplay();
   }
 }
\ No newline at end of file
@@ -29,6 +29,8 @@ public class Main {
     logger.debug("Properties file: {}", path);
     logger.debug("Properties loaded: {}", properties);
 
+    Settings.configureAll(properties);
+
     SwingUtilities.invokeAndWait(() -> new MainFrame(properties));
   }
 }
\ No newline at end of file
@@ -9,6 +9,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 
 public class MainFrame extends JFrame {
   public static final int MAX_WIDTH = 1600;
@@ -35,6 +36,10 @@ public class MainFrame extends JFrame {
     cardLayout = new CardLayout();
     contentContainer = new JPanel(cardLayout);
 
+    PrefetchSettings prefetchSettings = PrefetchSettings.fromProperties(properties);
+    SpeculationSettings speculationSettings = SpeculationSettings.fromProperties(properties);
+    PageScanSettings pageScanSettings = PageScanSettings.fromProperties(properties);
+
     // Create the settings panel with a callback that creates a new ImageContentPanel
     settingsPanel = new SettingsPanel(
         new TranscriptionHints(
@@ -52,8 +57,13 @@ public class MainFrame extends JFrame {
             settingsPanel.getStory(),
             settingsPanel.getGptModel()
         );
+        // Look for blank pages and duplicates in the background, the first page opens right away.
+        CompletableFuture<PageScan> pageScan = pageScanSettings.enabled()
+            ? PageScan.start(imagePaths, pageScanSettings)
+            : null;
         // Create a new image panel
-        ImageContentPanel imagePanel = new ImageContentPanel(hints, imagePaths, outputFolder, this::switchPanelToSettingPanel);
+        ImageContentPanel imagePanel = new ImageContentPanel(hints, imagePaths, outputFolder, prefetchSettings,
+            speculationSettings, pageScan, this::switchPanelToSettingPanel);
         // Switch to the new image panel
         switchPanelToImagePanel(imagePanel);
       } catch (IOException e) {
@@ -106,7 +116,8 @@ public class MainFrame extends JFrame {
   public void switchPanelToImagePanel(ImageContentPanel panel) {
     // Remove any existing ImageContentPanel
     for (Component comp : contentContainer.getComponents()) {
-      if (comp instanceof ImageContentPanel) {
+      if (comp instanceof ImageContentPanel imageContentPanel) {
+        imageContentPanel.dispose();
         contentContainer.remove(comp);
         break;
       }
@@ -0,0 +1,338 @@
+package com.github.joonasvali.bookreaderai;
+
+import com.github.joonasvali.bookreaderai.imageutil.ImageDecodeUtil;
+import com.github.joonasvali.bookreaderai.imageutil.RotateImageUtil;
+import org.slf4j.Logger;
+
+import javax.imageio.ImageIO;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.ToIntFunction;
+
+/**
+ * Decodes, rotates and scales the pages of a folder ahead of time, so that flipping to a neighbouring page does not
+ * wait for its image to be read from disk.
+ * <p>
+ * Pages are decoded at a reduced resolution that still covers the preview size, which is all the panel shows. The
+ * full resolution image is only read when the page is transcribed, see {@link #readFullImage(int)}.
+ * <p>
+ * Opening a page with {@link #getPage(int)} schedules the pages within {@link PrefetchSettings#pages()} of it on a
+ * background thread, the following pages before the preceding ones. Decoded pages are kept until they take more
+ * memory than the budget allows, then the pages farthest from the open page are dropped first.
+ */
+public class PagePrefetcher {
+  private static final Logger logger = org.slf4j.LoggerFactory.getLogger(PagePrefetcher.class);
+
+  private final Path[] paths;
+  private final ToIntFunction<Path> rotations;
+  private final int pages;
+  private final long budgetBytes;
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(
+      Thread.ofPlatform().name("page-prefetch").daemon().factory());
+
+  private final Map<Integer, CompletableFuture<Page>> entries = new HashMap<>();
+  private int currentIndex = -1;
+  private int previewWidth;
+  private int previewHeight;
+
+  /**
+   * A decoded page.
+   *
+   * @param decoded     the image as read from disk, at a reduced resolution
+   * @param subsampling the factor the resolution was reduced by
+   * @param rotation    the number of 90° clockwise rotations applied to the decoded image
+   * @param image       the rotated image, at a reduced resolution
+   * @param width       width of the rotated image at full resolution
+   * @param height      height of the rotated image at full resolution
+   * @param preview     the rotated image scaled to fit the preview size known when it was made, may be null
+   */
+  public record Page(BufferedImage decoded, int subsampling, int rotation, BufferedImage image, int width, int height,
+                     BufferedImage preview) {
+
+    /**
+     * @return true if the preview is the page scaled to fit the given area
+     */
+    public boolean hasPreview(int areaWidth, int areaHeight) {
+      if (preview == null) {
+        return false;
+      }
+      Dimension size = fitSize(width, height, areaWidth, areaHeight);
+      return preview.getWidth() == size.width && preview.getHeight() == size.height;
+    }
+
+    /**
+     * @return true if the decoded resolution is enough for a preview of the given size
+     */
+    boolean covers(Dimension size) {
+      return subsampling == 1 || (image.getWidth() >= size.width && image.getHeight() >= size.height);
+    }
+
+    long sizeInBytes() {
+      long size = sizeInBytes(decoded);
+      if (image != decoded) {
+        size += sizeInBytes(image);
+      }
+      if (preview != null) {
+        size += sizeInBytes(preview);
+      }
+      return size;
+    }
+
+    private static long sizeInBytes(BufferedImage image) {
+      DataBuffer buffer = image.getRaster().getDataBuffer();
+      return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+  }
+
+  /**
+   * @param paths     the pages in the order they are flipped through
+   * @param rotations gives the rotation the user has chosen for a page
+   */
+  public PagePrefetcher(Path[] paths, ToIntFunction<Path> rotations, PrefetchSettings settings) {
+    this.paths = paths;
+    this.rotations = rotations;
+    this.pages = Math.max(0, settings.pages());
+    this.budgetBytes = Math.min(settings.cacheMegabytes() * 1024 * 1024, Runtime.getRuntime().maxMemory() / 2);
+  }
+
+  /**
+   * Returns the page, decoding it on the calling thread unless it has been prefetched, and starts prefetching its
+   * neighbours.
+   *
+   * @throws IOException if the image cannot be read or decoded
+   */
+  public Page getPage(int index) throws IOException {
+    CompletableFuture<Page> future;
+    synchronized (this) {
+      currentIndex = index;
+      future = entries.get(index);
+      for (int distance = 1; distance <= pages; distance++) {
+        prefetch(index + distance);
+        prefetch(index - distance);
+      }
+    }
+
+    Page page = null;
+    if (future != null) {
+      try {
+        page = future.join();
+      } catch (CancellationException e) {
+        // Dropped as out of reach just before the page was opened again, decoded below.
+      } catch (CompletionException e) {
+        synchronized (this) {
+          entries.remove(index, future);
+        }
+        if (e.getCause() instanceof UncheckedIOException uncheckedIOException) {
+          throw uncheckedIOException.getCause();
+        }
+        throw e;
+      }
+    }
+    if (page == null) {
+      page = load(index);
+      synchronized (this) {
+        entries.put(index, CompletableFuture.completedFuture(page));
+      }
+    }
+
+    int rotation = rotations.applyAsInt(paths[index]);
+    if (page.rotation() != rotation) {
+      page = rotate(index, page, rotation);
+    }
+    evict();
+    return page;
+  }
+
+  /**
+   * Rotates a page from its decoded image and replaces the cached page with it.
+   *
+   * @param rotation the number of 90° clockwise rotations to apply to the decoded image
+   */
+  public Page rotate(int index, Page page, int rotation) {
+    boolean quarterTurn = page.rotation() % 2 != 0;
+    Page rotated = prepare(page.decoded(), page.subsampling(), rotation,
+        quarterTurn ? page.height() : page.width(), quarterTurn ? page.width() : page.height());
+    synchronized (this) {
+      entries.put(index, CompletableFuture.completedFuture(rotated));
+    }
+    return rotated;
+  }
+
+  /**
+   * Sets the area the pages are scaled to fit, normally the size of the image label, and returns the page with a
+   * preview of that size. A page decoded for a smaller area is decoded again at a higher resolution.
+   *
+   * @throws IOException if the page has to be decoded again and cannot be read
+   */
+  public Page fitPreview(int index, Page page, int areaWidth, int areaHeight) throws IOException {
+    synchronized (this) {
+      previewWidth = areaWidth;
+      previewHeight = areaHeight;
+    }
+    if (page.hasPreview(areaWidth, areaHeight)) {
+      return page;
+    }
+    Dimension size = fitSize(page.width(), page.height(), areaWidth, areaHeight);
+    Page updated = page.covers(size)
+        ? new Page(page.decoded(), page.subsampling(), page.rotation(), page.image(), page.width(), page.height(),
+        scale(page.image(), size))
+        : load(index);
+    synchronized (this) {
+      entries.put(index, CompletableFuture.completedFuture(updated));
+    }
+    evict();
+    return updated;
+  }
+
+  /**
+   * Reads the page at full resolution and applies the rotation the user has chosen. The image is not cached.
+   *
+   * @throws IOException if the image cannot be read or decoded
+   */
+  public BufferedImage readFullImage(int index) throws IOException {
+    BufferedImage image = ImageIO.read(paths[index].toFile());
+    if (image == null) {
+      throw new IOException("Unable to decode image " + paths[index]);
+    }
+    return RotateImageUtil.applyRotation(image, rotations.applyAsInt(paths[index]));
+  }
+
+  /**
+   * Stops prefetching and drops the cached pages.
+   */
+  public void close() {
+    executor.shutdownNow();
+    synchronized (this) {
+      entries.clear();
+    }
+  }
+
+  private static BufferedImage scale(BufferedImage image, Dimension size) {
+    BufferedImage resizedImage = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g2d = resizedImage.createGraphics();
+    g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+    g2d.drawImage(image, 0, 0, size.width, size.height, null);
+    g2d.dispose();
+    return resizedImage;
+  }
+
+  /**
+   * @return the largest size that fits the area and keeps the aspect ratio of the given size
+   */
+  static Dimension fitSize(int width, int height, int areaWidth, int areaHeight) {
+    double scale = Math.min((double) areaWidth / width, (double) areaHeight / height);
+    return new Dimension(Math.max(1, (int) (width * scale)), Math.max(1, (int) (height * scale)));
+  }
+
+  synchronized boolean isCached(int index) {
+    CompletableFuture<Page> future = entries.get(index);
+    return future != null && future.isDone() && !future.isCompletedExceptionally();
+  }
+
+  private void prefetch(int index) {
+    if (index < 0 || index >= paths.length || entries.containsKey(index)) {
+      return;
+    }
+    CompletableFuture<Page> future = new CompletableFuture<>();
+    entries.put(index, future);
+    executor.execute(() -> {
+      if (!isWanted(index)) {
+        // The user has moved on before the page was reached.
+        synchronized (this) {
+          entries.remove(index, future);
+        }
+        future.cancel(false);
+        return;
+      }
+      try {
+        future.complete(load(index));
+        evict();
+      } catch (IOException e) {
+        logger.warn("Unable to prefetch " + paths[index], e);
+        future.completeExceptionally(new UncheckedIOException(e));
+      } catch (RuntimeException e) {
+        logger.warn("Unable to prefetch " + paths[index], e);
+        future.completeExceptionally(e);
+      }
+    });
+  }
+
+  private synchronized boolean isWanted(int index) {
+    return Math.abs(index - currentIndex) <= pages;
+  }
+
+  private Page load(int index) throws IOException {
+    int rotation = rotations.applyAsInt(paths[index]);
+    Dimension area = getPreviewArea();
+    // The area is given for the rotated image, the decoder works on the image as it is stored.
+    boolean quarterTurn = rotation % 2 != 0;
+    ImageDecodeUtil.SubsampledImage decoded = ImageDecodeUtil.readSubsampled(paths[index],
+        quarterTurn ? area.height : area.width, quarterTurn ? area.width : area.height);
+    return prepare(decoded.image(), decoded.subsampling(), rotation, decoded.sourceWidth(), decoded.sourceHeight());
+  }
+
+  /**
+   * @param sourceWidth  width of the image as stored, at full resolution
+   * @param sourceHeight height of the image as stored, at full resolution
+   */
+  private Page prepare(BufferedImage decoded, int subsampling, int rotation, int sourceWidth, int sourceHeight) {
+    BufferedImage image = RotateImageUtil.applyRotation(decoded, rotation);
+    boolean quarterTurn = rotation % 2 != 0;
+    int width = quarterTurn ? sourceHeight : sourceWidth;
+    int height = quarterTurn ? sourceWidth : sourceHeight;
+    Dimension area = getPreviewArea();
+    Dimension size = fitSize(width, height, area.width, area.height);
+    Page page = new Page(decoded, subsampling, rotation, image, width, height, null);
+    return page.covers(size) ? new Page(decoded, subsampling, rotation, image, width, height, scale(image, size)) : page;
+  }
+
+  /**
+   * @return the area previews are made for, the largest window size until the label has been laid out
+   */
+  private synchronized Dimension getPreviewArea() {
+    if (previewWidth <= 0 || previewHeight <= 0) {
+      return new Dimension(MainFrame.MAX_WIDTH, MainFrame.MAX_HEIGHT);
+    }
+    return new Dimension(previewWidth, previewHeight);
+  }
+
+  /**
+   * Drops decoded pages, farthest from the open page first, until the rest fit the budget. The open page is kept
+   * even if it alone is over the budget.
+   */
+  private synchronized void evict() {
+    List<Integer> cached = new ArrayList<>();
+    long total = 0;
+    for (Map.Entry<Integer, CompletableFuture<Page>> entry : entries.entrySet()) {
+      CompletableFuture<Page> future = entry.getValue();
+      if (future.isDone() && !future.isCompletedExceptionally()) {
+        cached.add(entry.getKey());
+        total += future.join().sizeInBytes();
+      }
+    }
+    cached.sort((a, b) -> Integer.compare(Math.abs(b - currentIndex), Math.abs(a - currentIndex)));
+    for (Integer index : cached) {
+      if (total <= budgetBytes || index == currentIndex) {
+        break;
+      }
+      total -= entries.remove(index).join().sizeInBytes();
+    }
+  }
+}
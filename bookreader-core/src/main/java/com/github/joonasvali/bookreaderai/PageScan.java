@@ -0,0 +1,126 @@
+package com.github.joonasvali.bookreaderai;
+
+import com.github.joonasvali.bookreaderai.imageutil.PageFingerprint;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+/**
+ * Blank pages and repeated shots of the same page in a folder, found from the {@link PageFingerprint} of every page
+ * before any of them is sent to the model.
+ * <p>
+ * A page repeats an earlier one when their hashes are within {@link PageScanSettings#duplicateDistance()} bits and
+ * they carry about as much ink. Its transcription can be taken from the earlier page, the first shot of the page
+ * in the folder. Blank pages are never duplicates, there is nothing to reuse.
+ */
+public class PageScan {
+  private static final Logger logger = org.slf4j.LoggerFactory.getLogger(PageScan.class);
+
+  /**
+   * Relative difference in ink coverage two shots of the same page may have.
+   */
+  private static final double MAX_INK_DIFFERENCE = 0.25;
+
+  private final boolean[] blank;
+  private final int[] originals;
+
+  /**
+   * @param fingerprints the fingerprints of the pages in folder order, null for pages that could not be read
+   */
+  PageScan(PageFingerprint[] fingerprints, PageScanSettings settings) {
+    blank = new boolean[fingerprints.length];
+    originals = new int[fingerprints.length];
+    Arrays.fill(originals, -1);
+    for (int i = 0; i < fingerprints.length; i++) {
+      PageFingerprint fingerprint = fingerprints[i];
+      if (fingerprint == null) {
+        continue;
+      }
+      blank[i] = fingerprint.inkCoverage() <= settings.blankInkCoverage();
+      if (blank[i]) {
+        continue;
+      }
+      for (int j = 0; j < i; j++) {
+        if (originals[j] == -1 && !blank[j] && fingerprints[j] != null
+            && isSamePage(fingerprint, fingerprints[j], settings.duplicateDistance())) {
+          originals[i] = j;
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Fingerprints the pages on all cores and compares them. Pages that cannot be read are left out.
+   */
+  public static PageScan scan(Path[] paths, PageScanSettings settings) {
+    long start = System.currentTimeMillis();
+    PageFingerprint[] fingerprints = IntStream.range(0, paths.length).parallel()
+        .mapToObj(index -> read(paths[index]))
+        .toArray(PageFingerprint[]::new);
+    PageScan scan = new PageScan(fingerprints, settings);
+    logger.info("Scanned {} pages in {} ms: {} blank, {} duplicates", paths.length,
+        System.currentTimeMillis() - start, scan.getBlankCount(), scan.getDuplicateCount());
+    return scan;
+  }
+
+  /**
+   * Runs {@link #scan(Path[], PageScanSettings)} on a background thread.
+   */
+  public static CompletableFuture<PageScan> start(Path[] paths, PageScanSettings settings) {
+    CompletableFuture<PageScan> future = new CompletableFuture<>();
+    Thread.ofPlatform().name("page-scan").daemon().start(() -> {
+      try {
+        future.complete(scan(paths, settings));
+      } catch (RuntimeException e) {
+        logger.warn("Unable to scan pages", e);
+        future.completeExceptionally(e);
+      }
+    });
+    return future;
+  }
+
+  public boolean isBlank(int index) {
+    return blank[index];
+  }
+
+  /**
+   * @return the index of the earlier page this page is another shot of, or -1 if it is not a duplicate
+   */
+  public int getOriginal(int index) {
+    return originals[index];
+  }
+
+  public int getBlankCount() {
+    int count = 0;
+    for (boolean b : blank) {
+      if (b) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  public int getDuplicateCount() {
+    return (int) Arrays.stream(originals).filter(original -> original != -1).count();
+  }
+
+  private static boolean isSamePage(PageFingerprint a, PageFingerprint b, int maxDistance) {
+    double inkDifference = Math.abs(a.inkCoverage() - b.inkCoverage());
+    return a.distance(b) <= maxDistance
+        && inkDifference <= MAX_INK_DIFFERENCE * Math.max(a.inkCoverage(), b.inkCoverage());
+  }
+
+  private static PageFingerprint read(Path path) {
+    try {
+      return PageFingerprint.read(path);
+    } catch (IOException | RuntimeException e) {
+      logger.warn("Unable to scan " + path, e);
+      return null;
+    }
+  }
+}
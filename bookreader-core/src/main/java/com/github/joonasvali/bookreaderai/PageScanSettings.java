@@ -0,0 +1,35 @@
+package com.github.joonasvali.bookreaderai;
+
+import java.util.Properties;
+
+/**
+ * The pass over a folder that finds blank pages and repeated shots of the same page before any of them is
+ * transcribed.
+ *
+ * @param enabled           whether the folder is scanned at all
+ * @param blankInkCoverage  share of the page that may be covered by ink for it to still count as blank
+ * @param duplicateDistance bits the hashes of two pages may differ in for them to count as the same page, out of
+ *                          256
+ */
+public record PageScanSettings(boolean enabled, double blankInkCoverage, int duplicateDistance) {
+
+  public static final String ENABLED_KEY = "scan.enabled";
+  public static final String BLANK_INK_COVERAGE_KEY = "scan.blankInkCoverage";
+  public static final String DUPLICATE_DISTANCE_KEY = "scan.duplicateDistance";
+
+  public static PageScanSettings defaults() {
+    return new PageScanSettings(true, 0.002, 24);
+  }
+
+  /**
+   * Reads the settings from the given properties, falling back to {@link #defaults()} for every missing key.
+   */
+  public static PageScanSettings fromProperties(Properties properties) {
+    PageScanSettings defaults = defaults();
+    return new PageScanSettings(
+        Boolean.parseBoolean(properties.getProperty(ENABLED_KEY, String.valueOf(defaults.enabled())).trim()),
+        Double.parseDouble(properties.getProperty(BLANK_INK_COVERAGE_KEY, String.valueOf(defaults.blankInkCoverage())).trim()),
+        Integer.parseInt(properties.getProperty(DUPLICATE_DISTANCE_KEY, String.valueOf(defaults.duplicateDistance())).trim())
+    );
+  }
+}
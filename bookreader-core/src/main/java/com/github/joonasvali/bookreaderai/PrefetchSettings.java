@@ -0,0 +1,30 @@
+package com.github.joonasvali.bookreaderai;
+
+import java.util.Properties;
+
+/**
+ * How many pages around the open one are decoded in the background, and how much memory they may take.
+ *
+ * @param pages          number of pages before and after the open page to prefetch, 0 to only keep the open page
+ * @param cacheMegabytes upper bound of the decoded pixels held in memory; the JVM heap may lower it further
+ */
+public record PrefetchSettings(int pages, long cacheMegabytes) {
+
+  public static final String PAGES_KEY = "prefetch.pages";
+  public static final String CACHE_MEGABYTES_KEY = "prefetch.cacheMegabytes";
+
+  public static PrefetchSettings defaults() {
+    return new PrefetchSettings(2, 768);
+  }
+
+  /**
+   * Reads the settings from the given properties, falling back to {@link #defaults()} for every missing key.
+   */
+  public static PrefetchSettings fromProperties(Properties properties) {
+    PrefetchSettings defaults = defaults();
+    return new PrefetchSettings(
+        Integer.parseInt(properties.getProperty(PAGES_KEY, String.valueOf(defaults.pages())).trim()),
+        Long.parseLong(properties.getProperty(CACHE_MEGABYTES_KEY, String.valueOf(defaults.cacheMegabytes())).trim())
+    );
+  }
+}
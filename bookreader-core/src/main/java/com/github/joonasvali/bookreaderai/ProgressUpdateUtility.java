@@ -41,7 +41,7 @@ public class ProgressUpdateUtility {
     listeners.remove(listener);
   }
 
-  public void setTranscribeTaskComplete(int index, boolean isComplete) {
+  public synchronized void setTranscribeTaskComplete(int index, boolean isComplete) {
     tasksCompleted[index] = isComplete;
     updateProgress();
   }
@@ -52,7 +52,7 @@ public class ProgressUpdateUtility {
     notifyListeners();
   }
 
-  public void setFinalTaskComplete() {
+  public synchronized void setFinalTaskComplete() {
     finalTaskComplete = 1;
     updateProgress();
   }
@@ -0,0 +1,31 @@
+package com.github.joonasvali.bookreaderai;
+
+import com.github.joonasvali.bookreaderai.metrics.Metrics;
+import com.github.joonasvali.bookreaderai.openai.HttpTransport;
+import com.github.joonasvali.bookreaderai.openai.RateLimiter;
+import com.github.joonasvali.bookreaderai.openai.ResponseCache;
+import com.github.joonasvali.bookreaderai.transcribe.AdaptiveSampler;
+import com.github.joonasvali.bookreaderai.transcribe.PageScheduler;
+import com.github.joonasvali.bookreaderai.transcribe.SliceJoiner;
+
+import java.util.Properties;
+
+/**
+ * Startup configuration of the shared services, so that every entry point sets them up the same way.
+ */
+public class Settings {
+
+  /**
+   * Replaces every shared service with one built from the given properties. Meant to be called once on startup,
+   * before any page is transcribed.
+   */
+  public static void configureAll(Properties properties) {
+    HttpTransport.configure(properties);
+    ResponseCache.configure(properties);
+    RateLimiter.configure(properties);
+    AdaptiveSampler.configure(properties);
+    SliceJoiner.configure(properties);
+    PageScheduler.configure(properties);
+    Metrics.configure(properties);
+  }
+}
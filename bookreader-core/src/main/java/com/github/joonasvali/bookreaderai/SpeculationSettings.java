@@ -0,0 +1,33 @@
+package com.github.joonasvali.bookreaderai;
+
+import java.util.Properties;
+
+/**
+ * Background transcription of the pages after the open one, so that their drafts are ready when the user gets there.
+ *
+ * @param enabled     whether upcoming pages are transcribed in the background at all
+ * @param pages       number of pages after the open one to transcribe
+ * @param tokenBudget tokens the background transcriptions may spend in one session, 0 for no limit
+ */
+public record SpeculationSettings(boolean enabled, int pages, long tokenBudget) {
+
+  public static final String ENABLED_KEY = "speculation.enabled";
+  public static final String PAGES_KEY = "speculation.pages";
+  public static final String TOKEN_BUDGET_KEY = "speculation.tokenBudget";
+
+  public static SpeculationSettings defaults() {
+    return new SpeculationSettings(false, 2, 200_000);
+  }
+
+  /**
+   * Reads the settings from the given properties, falling back to {@link #defaults()} for every missing key.
+   */
+  public static SpeculationSettings fromProperties(Properties properties) {
+    SpeculationSettings defaults = defaults();
+    return new SpeculationSettings(
+        Boolean.parseBoolean(properties.getProperty(ENABLED_KEY, String.valueOf(defaults.enabled())).trim()),
+        Integer.parseInt(properties.getProperty(PAGES_KEY, String.valueOf(defaults.pages())).trim()),
+        Long.parseLong(properties.getProperty(TOKEN_BUDGET_KEY, String.valueOf(defaults.tokenBudget())).trim())
+    );
+  }
+}
@@ -0,0 +1,219 @@
+package com.github.joonasvali.bookreaderai;
+
+import com.github.joonasvali.bookreaderai.openai.ProcessingResult;
+import com.github.joonasvali.bookreaderai.textutil.LineUtil;
+import com.github.joonasvali.bookreaderai.transcribe.PageScheduler;
+import com.github.joonasvali.bookreaderai.transcribe.Transcriber;
+import org.slf4j.Logger;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Transcribes the pages after the open one in the background while the user reviews it, one page at a time, and
+ * saves the results as drafts with {@link FileHandler#saveDraft(String, String)}.
+ * <p>
+ * Pages are transcribed whole, as they are when the user opens them without touching the crop. Pages that already
+ * have a transcription or a draft are skipped. The calls share the rate limits of the rest of the application, and
+ * stop once the token budget of the session is spent. Their stages run with background priority, so a page the user
+ * transcribes goes first.
+ * <p>
+ * With a {@link PageScan}, blank pages are skipped and a page that is another shot of an earlier page gets the
+ * transcription or draft of that page as its draft, without a transcription of its own.
+ */
+public class SpeculativeTranscriber {
+  private static final Logger logger = org.slf4j.LoggerFactory.getLogger(SpeculativeTranscriber.class);
+
+  private final Path[] paths;
+  private final FileHandler fileHandler;
+  private final PagePrefetcher prefetcher;
+  private final TranscriptionHints hints;
+  private final SpeculationSettings settings;
+  private final Consumer<String> draftListener;
+
+  private final Deque<Integer> queue = new ArrayDeque<>();
+  private CompletableFuture<ProcessingResult<String>> running;
+  private int runningIndex = -1;
+  private int openIndex = -1;
+  private boolean parallelSlices;
+  private long spentTokens;
+  private boolean closed;
+  private PageScan pageScan;
+
+  /**
+   * @param prefetcher    reads the pages at full resolution with the rotation the user has chosen
+   * @param draftListener receives the name of a page, without suffix, when its draft has been saved; called on a
+   *                      background thread, or on the thread opening a page when a duplicate reuses a draft
+   */
+  public SpeculativeTranscriber(Path[] paths, FileHandler fileHandler, PagePrefetcher prefetcher, TranscriptionHints hints,
+                                SpeculationSettings settings, Consumer<String> draftListener) {
+    this.paths = paths;
+    this.fileHandler = fileHandler;
+    this.prefetcher = prefetcher;
+    this.hints = hints;
+    this.settings = settings;
+    this.draftListener = draftListener;
+  }
+
+  /**
+   * Queues the pages after the opened one. A page that is being transcribed keeps going if it is still the open
+   * page or ahead of it, otherwise it is cancelled.
+   */
+  public synchronized void pageOpened(int index, boolean parallelSlices) {
+    if (!settings.enabled() || closed) {
+      return;
+    }
+    this.openIndex = index;
+    this.parallelSlices = parallelSlices;
+
+    queue.clear();
+    for (int i = index + 1; i <= index + settings.pages() && i < paths.length; i++) {
+      if (i != runningIndex) {
+        queue.add(i);
+      }
+    }
+    if (running != null && (runningIndex < openIndex || runningIndex > openIndex + settings.pages())) {
+      running.cancel(true);
+    }
+    startNext();
+  }
+
+  /**
+   * Cancels the transcription in progress and stops queueing pages.
+   */
+  public synchronized void close() {
+    closed = true;
+    queue.clear();
+    if (running != null) {
+      running.cancel(true);
+    }
+  }
+
+  /**
+   * @param pageScan the blank pages and duplicates of the folder, applies to the pages queued from now on
+   */
+  public synchronized void setPageScan(PageScan pageScan) {
+    this.pageScan = pageScan;
+  }
+
+  public synchronized long getSpentTokens() {
+    return spentTokens;
+  }
+
+  private synchronized void startNext() {
+    while (running == null && !closed && !queue.isEmpty()) {
+      if (settings.tokenBudget() > 0 && spentTokens >= settings.tokenBudget()) {
+        logger.info("Token budget of {} spent, no more pages are transcribed in the background", settings.tokenBudget());
+        queue.clear();
+        return;
+      }
+      int index = queue.poll();
+      String name = FileHandler.getFileNameWithoutSuffix(paths[index]);
+      if (hasTranscription(name)) {
+        continue;
+      }
+      if (pageScan != null && pageScan.isBlank(index)) {
+        logger.info("Skipping {}, blank page", name);
+      } else if (pageScan == null || pageScan.getOriginal(index) == -1 || !reuseOriginal(name, pageScan.getOriginal(index))) {
+        start(index, name);
+      }
+    }
+  }
+
+  private void start(int index, String name) {
+    logger.info("Transcribing {} in the background", name);
+    Transcriber transcriber = new Transcriber(hints, PageScheduler.Priority.BACKGROUND);
+    transcriber.setParallelSlices(parallelSlices);
+    transcriber.setPageName(name);
+    CompletableFuture<ProcessingResult<String>> transcription = transcriber.transcribe(() -> readPage(index), null,
+        false, null);
+    running = transcription;
+    runningIndex = index;
+    transcription.whenComplete((result, throwable) -> finish(transcription, name, result, throwable));
+  }
+
+  private void finish(CompletableFuture<ProcessingResult<String>> transcription, String name,
+                      ProcessingResult<String> result, Throwable throwable) {
+    boolean saved = false;
+    synchronized (this) {
+      if (running == transcription) {
+        running = null;
+        runningIndex = -1;
+      }
+      if (throwable == null) {
+        spentTokens += result.totalTokens();
+        saved = !closed && saveDraft(name, result.content());
+      } else if (!(throwable instanceof CancellationException) && !(throwable.getCause() instanceof CancellationException)) {
+        logger.warn("Unable to transcribe " + name + " in the background", throwable);
+      }
+    }
+    if (saved) {
+      draftListener.accept(name);
+    }
+    // After the listener, so that drafts are reported in page order even when the next page finishes right away.
+    startNext();
+  }
+
+  private boolean saveDraft(String name, String content) {
+    // The user may have transcribed the page while the draft was in progress.
+    if (hasTranscription(name)) {
+      return false;
+    }
+    try {
+      fileHandler.saveDraft(name, new LineUtil().lineBreakAfterEvery(content, LineUtil.LINE_BREAK_CHARS));
+      return true;
+    } catch (IOException e) {
+      logger.error("Unable to save draft of " + name, e);
+      return false;
+    }
+  }
+
+  /**
+   * Saves the transcription or the draft of the page the duplicate repeats as the draft of the duplicate.
+   *
+   * @return false if the original page has neither yet
+   */
+  private boolean reuseOriginal(String name, int original) {
+    String originalName = FileHandler.getFileNameWithoutSuffix(paths[original]);
+    try {
+      String content = fileHandler.loadFromFile(originalName);
+      if (content.isEmpty()) {
+        content = fileHandler.loadDraft(originalName);
+      }
+      if (content == null) {
+        return false;
+      }
+      fileHandler.saveDraft(name, content);
+    } catch (IOException e) {
+      logger.warn("Unable to reuse the transcription of " + originalName + " for " + name, e);
+      return false;
+    }
+    logger.info("Reused the transcription of {} for {}", originalName, name);
+    draftListener.accept(name);
+    return true;
+  }
+
+  private boolean hasTranscription(String name) {
+    try {
+      return !fileHandler.loadFromFile(name).isEmpty() || fileHandler.loadDraft(name) != null;
+    } catch (IOException e) {
+      logger.warn("Unable to check the transcription of " + name, e);
+      return true;
+    }
+  }
+
+  private BufferedImage readPage(int index) {
+    try {
+      return prefetcher.readFullImage(index);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
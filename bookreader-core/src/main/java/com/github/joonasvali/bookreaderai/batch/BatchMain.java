@@ -0,0 +1,89 @@
+package com.github.joonasvali.bookreaderai.batch;
+
+import com.github.joonasvali.bookreaderai.MainFrame;
+import com.github.joonasvali.bookreaderai.PageScan;
+import com.github.joonasvali.bookreaderai.PageScanSettings;
+import com.github.joonasvali.bookreaderai.Settings;
+import com.github.joonasvali.bookreaderai.TranscriptionHints;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Headless entry point, transcribes all images of a folder into its transcription output folder.
+ * <p>
+ * Usage: {@code BatchMain <input folder> [properties file]}
+ */
+public class BatchMain {
+  private static final Logger logger = org.slf4j.LoggerFactory.getLogger(BatchMain.class);
+
+  public static final String THREADS_KEY = "batch.threads";
+  public static final String GPT_MODEL_KEY = "batch.gptModel";
+  public static final String OVERWRITE_KEY = "batch.overwrite";
+  public static final String PARALLEL_SLICES_KEY = "batch.parallelSlices";
+  public static final String JOURNAL_KEY = "batch.journal";
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    System.setProperty("java.awt.headless", "true");
+
+    if (args.length < 1) {
+      logger.error("Usage: BatchMain <input folder> [properties file]");
+      System.exit(1);
+    }
+    Path inputFolder = Path.of(args[0]).toAbsolutePath();
+    if (!Files.isDirectory(inputFolder)) {
+      logger.error("Input folder not found: {}", inputFolder);
+      System.exit(1);
+    }
+
+    Properties properties = new Properties();
+    Path path = args.length > 1 ? Path.of(args[1]).toAbsolutePath() : Path.of("clipsnap.properties").toAbsolutePath();
+    if (Files.notExists(path)) {
+      logger.error("Properties file not found: {}", path);
+      System.exit(1);
+    }
+    try (var in = Files.newInputStream(path)) {
+      properties.load(in);
+    }
+    logger.debug("Properties file: {}", path);
+
+    Settings.configureAll(properties);
+
+    String language = properties.getProperty("default.hint.language");
+    TranscriptionHints hints = new TranscriptionHints(
+        language == null || language.trim().isEmpty() ? null : language,
+        properties.getProperty("default.hint.story"),
+        properties.getProperty(GPT_MODEL_KEY, "GPT-4.1")
+    );
+    int threads = Integer.parseInt(properties.getProperty(THREADS_KEY, "4"));
+
+    Path[] imagePaths = MainFrame.sortByName(MainFrame.listInputFolderContent(inputFolder));
+    Path outputFolder = inputFolder.resolve(MainFrame.TRANSCRIPTION_OUTPUT_FOLDER);
+    logger.info("Transcribing {} images from {} with {} workers", imagePaths.length, inputFolder, threads);
+
+    BatchTranscriber batchTranscriber = new BatchTranscriber(hints, outputFolder, threads);
+    batchTranscriber.setOverwrite(Boolean.parseBoolean(properties.getProperty(OVERWRITE_KEY, "false")));
+    batchTranscriber.setParallelSlices(Boolean.parseBoolean(properties.getProperty(PARALLEL_SLICES_KEY, "false")));
+    batchTranscriber.setJournalEnabled(Boolean.parseBoolean(properties.getProperty(JOURNAL_KEY, "true")));
+    PageScanSettings pageScanSettings = PageScanSettings.fromProperties(properties);
+    if (pageScanSettings.enabled()) {
+      batchTranscriber.setPageScan(PageScan.scan(imagePaths, pageScanSettings));
+    }
+
+    long start = System.currentTimeMillis();
+    BatchTranscriber.BatchResult result = batchTranscriber.transcribe(imagePaths);
+    long elapsedSeconds = (System.currentTimeMillis() - start) / 1000;
+
+    logger.info("Batch complete in {}s: {} transcribed, {} reused from duplicates, {} skipped, {} failed",
+        elapsedSeconds, result.transcribed(), result.reused(), result.skipped(), result.failed());
+    logger.info("-- Tokens used --");
+    logger.info("Used completion tokens: " + result.completionTokens());
+    logger.info("Used prompt tokens: " + result.promptTokens());
+    logger.info("User total tokens: " + result.totalTokens());
+
+    System.exit(result.failed() > 0 ? 2 : 0);
+  }
+}
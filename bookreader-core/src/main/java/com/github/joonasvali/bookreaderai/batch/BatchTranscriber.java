@@ -0,0 +1,260 @@
+package com.github.joonasvali.bookreaderai.batch;
+
+import com.github.joonasvali.bookreaderai.FileHandler;
+import com.github.joonasvali.bookreaderai.PageScan;
+import com.github.joonasvali.bookreaderai.TranscriptionHints;
+import com.github.joonasvali.bookreaderai.imageutil.RotateImageUtil;
+import com.github.joonasvali.bookreaderai.openai.ProcessingResult;
+import com.github.joonasvali.bookreaderai.textutil.LineUtil;
+import com.github.joonasvali.bookreaderai.transcribe.JobJournal;
+import com.github.joonasvali.bookreaderai.transcribe.PageTranscriber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transcribes every page of a folder without user interaction, using a bounded pool of workers.
+ * Each page is transcribed as a whole (no crop), with the rotation the user may have stored for it in the UI,
+ * and the result is written through {@link FileHandler} exactly like the "Save" button would.
+ * <p>
+ * The finished stages of every page are kept in a {@link JobJournal} in the output folder. A run that is started
+ * again after the process died continues each page from the stage it reached.
+ * <p>
+ * With a {@link PageScan} of the folder, blank pages are skipped and pages that are another shot of an earlier page
+ * get the transcription of that page instead of being transcribed again.
+ */
+public class BatchTranscriber {
+  private static final Logger logger = LoggerFactory.getLogger(BatchTranscriber.class);
+
+  private final TranscriptionHints hints;
+  private final FileHandler fileHandler;
+  private final int threads;
+  private boolean overwrite;
+  private boolean parallelSlices;
+  private boolean journalEnabled = true;
+  private PageScan pageScan;
+
+  /**
+   * @param reused pages that got the transcription of an earlier shot of the same page
+   */
+  public record BatchResult(int transcribed, int reused, int skipped, int failed, long promptTokens, long completionTokens,
+                            long totalTokens) {
+  }
+
+  public BatchTranscriber(TranscriptionHints hints, Path outputFolder, int threads) {
+    this.hints = hints;
+    this.fileHandler = new FileHandler(outputFolder);
+    this.threads = threads;
+  }
+
+  /**
+   * @param overwrite if false, pages that already have a transcription in the output folder are skipped
+   */
+  public void setOverwrite(boolean overwrite) {
+    this.overwrite = overwrite;
+  }
+
+  public void setParallelSlices(boolean parallelSlices) {
+    this.parallelSlices = parallelSlices;
+  }
+
+  /**
+   * @param journalEnabled if false, the run is not journaled and does not resume an earlier one
+   */
+  public void setJournalEnabled(boolean journalEnabled) {
+    this.journalEnabled = journalEnabled;
+  }
+
+  /**
+   * @param pageScan the blank pages and duplicates of the pages to transcribe, null to transcribe every page
+   */
+  public void setPageScan(PageScan pageScan) {
+    this.pageScan = pageScan;
+  }
+
+  public BatchResult transcribe(Path[] imagePaths) throws InterruptedException, IOException {
+    JobJournal journal = journalEnabled ? JobJournal.open(fileHandler.getOutputFolder()) : null;
+    try {
+      BatchResult result = transcribe(imagePaths, journal);
+      if (journal != null && result.failed() == 0) {
+        journal.runFinished();
+      }
+      return result;
+    } finally {
+      if (journal != null) {
+        journal.close();
+      }
+    }
+  }
+
+  private BatchResult transcribe(Path[] imagePaths, JobJournal journal) throws InterruptedException {
+    AtomicInteger transcribed = new AtomicInteger();
+    AtomicInteger reused = new AtomicInteger();
+    AtomicInteger skipped = new AtomicInteger();
+    AtomicInteger failed = new AtomicInteger();
+    AtomicLong promptTokens = new AtomicLong();
+    AtomicLong completionTokens = new AtomicLong();
+    AtomicLong totalTokens = new AtomicLong();
+
+    if (journal != null) {
+      journal.runStarted(imagePaths.length);
+    }
+    // A page waits for its stages most of the time, virtual threads let batch.threads go far beyond the core count.
+    ExecutorService executor = Executors.newFixedThreadPool(threads,
+        Thread.ofVirtual().name("batch-page-", 0).factory());
+    try {
+      Future<?>[] futures = new Future<?>[imagePaths.length];
+      // Duplicates wait for the page they repeat. They are queued after all other pages, so that every page they
+      // wait for has already been taken by a worker.
+      for (boolean duplicates : new boolean[]{false, true}) {
+        for (int i = 0; i < imagePaths.length; i++) {
+          int original = pageScan == null ? -1 : pageScan.getOriginal(i);
+          if ((original != -1) != duplicates) {
+            continue;
+          }
+          int index = i;
+          Path imagePath = imagePaths[i];
+          futures[i] = executor.submit(() -> {
+            if (!overwrite && Files.exists(fileHandler.getOutputFilePath(imagePath))) {
+              logger.info("Skipping {}, already transcribed", imagePath.getFileName());
+              skipped.incrementAndGet();
+              return;
+            }
+            if (pageScan != null && pageScan.isBlank(index)) {
+              logger.info("Skipping {}, blank page", imagePath.getFileName());
+              skipped.incrementAndGet();
+              return;
+            }
+            JobJournal.PageJob job = journal == null ? null : journal.page(FileHandler.getFileNameWithoutSuffix(imagePath),
+                getConfiguration(imagePath));
+            if (job != null && job.isSaved()) {
+              // Only happens when overwriting, the run that is resumed has already overwritten the page.
+              logger.info("Skipping {}, already transcribed by the resumed run", imagePath.getFileName());
+              skipped.incrementAndGet();
+              return;
+            }
+            try {
+              if (original != -1 && reuse(imagePath, imagePaths[original], futures[original], job)) {
+                int done = reused.incrementAndGet();
+                logger.info("Reused the transcription of {} for {} ({}/{})", imagePaths[original].getFileName(),
+                    imagePath.getFileName(), done + transcribed.get() + skipped.get() + failed.get(), imagePaths.length);
+                return;
+              }
+              ProcessingResult<String> result = transcribePage(imagePath, job);
+              promptTokens.addAndGet(result.promptTokens());
+              completionTokens.addAndGet(result.completionTokens());
+              totalTokens.addAndGet(result.totalTokens());
+              int done = transcribed.incrementAndGet();
+              logger.info("Transcribed {} ({}/{})", imagePath.getFileName(),
+                  done + reused.get() + skipped.get() + failed.get(), imagePaths.length);
+            } catch (Exception e) {
+              if (job != null) {
+                job.failed(e);
+              }
+              failed.incrementAndGet();
+              logger.error("Unable to complete transcription for " + imagePath, e);
+            }
+          });
+        }
+      }
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          logger.error("Batch task failed", e.getCause());
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    return new BatchResult(transcribed.get(), reused.get(), skipped.get(), failed.get(),
+        promptTokens.get(), completionTokens.get(), totalTokens.get());
+  }
+
+  /**
+   * Waits for the page the duplicate repeats and saves its transcription for the duplicate as well.
+   *
+   * @return false if the original page has no transcription to reuse, for example because it failed
+   */
+  private boolean reuse(Path imagePath, Path originalPath, Future<?> original, JobJournal.PageJob job)
+      throws IOException, InterruptedException {
+    try {
+      original.get();
+    } catch (ExecutionException e) {
+      // Logged by the task of the original page.
+    }
+    String content = fileHandler.loadFromFile(FileHandler.getFileNameWithoutSuffix(originalPath));
+    if (content.isEmpty()) {
+      return false;
+    }
+    fileHandler.saveToFile(FileHandler.getFileNameWithoutSuffix(imagePath), content);
+    if (job != null) {
+      job.saved();
+    }
+    return true;
+  }
+
+  private ProcessingResult<String> transcribePage(Path imagePath, JobJournal.PageJob job) throws IOException {
+    String pageName = FileHandler.getFileNameWithoutSuffix(imagePath);
+    ProcessingResult<String> joined = job == null ? null : job.getJoined();
+    if (joined != null) {
+      // The text was joined but the process died before it was saved.
+      save(pageName, joined.content(), job);
+      return new ProcessingResult<>(joined.content(), 0, 0, 0);
+    }
+
+    BufferedImage image = ImageIO.read(imagePath.toFile());
+    if (image == null) {
+      throw new IOException("Unable to decode image " + imagePath);
+    }
+    int rotation = fileHandler.getStoredRotation(imagePath);
+    BufferedImage rotated = RotateImageUtil.applyRotation(image, rotation);
+
+    PageTranscriber pageTranscriber = new PageTranscriber(hints);
+    pageTranscriber.setParallelSlices(parallelSlices);
+    pageTranscriber.setPageName(pageName);
+    pageTranscriber.setJournal(job);
+    ProcessingResult<String> result = pageTranscriber.transcribe(rotated, null);
+
+    save(pageName, result.content(), job);
+    return result;
+  }
+
+  private void save(String pageName, String content, JobJournal.PageJob job) throws IOException {
+    String text = new LineUtil().lineBreakAfterEvery(content, LineUtil.LINE_BREAK_CHARS);
+    fileHandler.saveToFile(pageName, text);
+    if (job != null) {
+      job.saved();
+    }
+  }
+
+  /**
+   * Everything the transcription of the page depends on besides its name. Stages an earlier run journaled with a
+   * different configuration are not reused.
+   */
+  private String getConfiguration(Path imagePath) {
+    int rotation = fileHandler.getStoredRotation(imagePath);
+    String file;
+    try {
+      file = Files.size(imagePath) + "@" + Files.getLastModifiedTime(imagePath).toMillis();
+    } catch (IOException e) {
+      file = "unknown";
+    }
+    return hints.gptModel() + ";" + rotation + ";" + (parallelSlices ? "parallel" : "sequential") + ";"
+        + PageTranscriber.SLICING + ";" + file;
+  }
+}
@@ -1,7 +1,11 @@
 package com.github.joonasvali.bookreaderai.imageutil;
 
+import com.github.joonasvali.bookreaderai.metrics.jfr.ImageTransformEvent;
+
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
 
 public class CutImageUtil {
 
@@ -21,6 +25,9 @@ public class CutImageUtil {
       throw new IllegalArgumentException("Exactly four points are required.");
     }
 
+    ImageTransformEvent event = new ImageTransformEvent();
+    event.begin();
+
     // Create the polygon from the provided points.
     Polygon polygon = new Polygon();
     for (Point p : points) {
@@ -55,6 +62,7 @@ public class CutImageUtil {
     g2dResult.drawImage(croppedImage, 0, 0, null);
     g2dResult.dispose();
 
+    event.commit("cutImage", image, result);
     return result;
   }
 
@@ -81,6 +89,8 @@ public class CutImageUtil {
    * @return A SplitImageResult containing the split image sections and a flag indicating if a bright overlay was used.
    */
   public static SplitImageResult splitImageIntoSections(BufferedImage image, int verticalPieces, int overlapPx, boolean colorTopOverlap) {
+    ImageTransformEvent event = new ImageTransformEvent();
+    event.begin();
     int width = image.getWidth();
     int height = image.getHeight();
 
@@ -132,9 +142,164 @@ public class CutImageUtil {
       results[i] = section;
     }
 
+    event.commit("splitImageIntoSections", image, results[0]);
     return new SplitImageResult(results, useBrightOverlay && colorTopOverlap);
   }
 
+  /**
+   * Splits the image into slices that are cut in the whitespace between text lines, found from the horizontal ink
+   * profile of the image. Since no line is cut in half, the slices do not overlap. Blank bands above the first line
+   * and below the last line of a slice are left out, so slices cut at a blank band do not contain it.
+   * <p>
+   * The number of slices is the larger of the content height divided by sliceHeightPx and the line count divided
+   * by maxLinesPerSlice.
+   *
+   * @param image            The source image.
+   * @param sliceHeightPx    The height of content a slice should have at least before the page is cut.
+   * @param maxLinesPerSlice The number of text lines after which a slice is cut even if it is not high enough.
+   * @return The slices, or null if the image has no text lines to cut between, for example when it is blank or a
+   * picture. {@link #splitImageIntoSections(BufferedImage, int, int, boolean)} can be used instead then.
+   */
+  public static SplitImageResult splitImageAtLineGaps(BufferedImage image, int sliceHeightPx, int maxLinesPerSlice) {
+    ImageTransformEvent event = new ImageTransformEvent();
+    event.begin();
+
+    List<int[]> lines = findTextLines(image);
+    if (lines.isEmpty()) {
+      return null;
+    }
+    int contentTop = lines.getFirst()[0];
+    int contentBottom = lines.getLast()[1];
+    int contentHeight = contentBottom - contentTop;
+    for (int[] line : lines) {
+      // A "line" this high is a picture or a shadow, there is nothing to cut between.
+      if (line[1] - line[0] > sliceHeightPx) {
+        return null;
+      }
+    }
+
+    int pieces = Math.max(contentHeight / sliceHeightPx, (lines.size() + maxLinesPerSlice - 1) / maxLinesPerSlice);
+    pieces = Math.max(1, Math.min(pieces, lines.size()));
+
+    // Index of the first line of every slice.
+    int[] firstLines = new int[pieces + 1];
+    firstLines[pieces] = lines.size();
+    for (int i = 1; i < pieces; i++) {
+      int ideal = contentTop + i * contentHeight / pieces;
+      firstLines[i] = chooseCut(lines, ideal, contentHeight / pieces / 4, firstLines[i - 1] + 1, lines.size() - (pieces - i));
+    }
+
+    int width = image.getWidth();
+    BufferedImage[] results = new BufferedImage[pieces];
+    for (int i = 0; i < pieces; i++) {
+      int first = firstLines[i];
+      int last = firstLines[i + 1] - 1;
+      int gapAbove = first == 0 ? lines.get(first)[0] : lines.get(first)[0] - lines.get(first - 1)[1];
+      int gapBelow = last == lines.size() - 1 ? image.getHeight() - lines.get(last)[1] : lines.get(last + 1)[0] - lines.get(last)[1];
+      int margin = Math.max(1, (lines.get(last)[1] - lines.get(first)[0]) / (last - first + 1) / 2);
+      int y = lines.get(first)[0] - Math.min(margin, gapAbove / 2);
+      int bottom = lines.get(last)[1] + Math.min(margin, gapBelow / 2);
+
+      BufferedImage section = new BufferedImage(width, bottom - y, BufferedImage.TYPE_INT_RGB);
+      Graphics2D g = section.createGraphics();
+      g.drawImage(image.getSubimage(0, y, width, bottom - y), 0, 0, null);
+      g.dispose();
+      results[i] = section;
+    }
+
+    event.commit("splitImageAtLineGaps", image, results[0]);
+    return new SplitImageResult(results, false);
+  }
+
+  /**
+   * @return the index of the line that starts the slice after the cut: the one after the gap closest to the ideal
+   * cut position, unless there is a blank band at least twice as wide as that gap within tolerance of it
+   */
+  private static int chooseCut(List<int[]> lines, int ideal, int tolerance, int from, int to) {
+    int widest = -1;
+    int closest = from;
+    int closestDistance = Integer.MAX_VALUE;
+    for (int i = from; i <= to; i++) {
+      int distance = Math.abs((lines.get(i)[0] + lines.get(i - 1)[1]) / 2 - ideal);
+      if (distance <= tolerance && (widest == -1 || gap(lines, i) > gap(lines, widest))) {
+        widest = i;
+      }
+      if (distance < closestDistance) {
+        closest = i;
+        closestDistance = distance;
+      }
+    }
+    return widest != -1 && gap(lines, widest) >= 2 * gap(lines, closest) ? widest : closest;
+  }
+
+  private static int gap(List<int[]> lines, int line) {
+    return lines.get(line)[0] - lines.get(line - 1)[1];
+  }
+
+  /**
+   * Finds the text lines of the image from its horizontal ink profile, the number of ink pixels on every row.
+   * Ink is told apart from the paper with {@link InkThreshold}. A few columns at both edges are ignored, as they
+   * often hold the shadow or the edge of the page.
+   *
+   * @return the first row and the row after the last one of every line, top to bottom; empty if the image has no
+   * ink that stands out from the paper
+   */
+  static List<int[]> findTextLines(BufferedImage image) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int edge = width / 20;
+    int step = Math.max(1, (width - 2 * edge) / 1000);
+    int columns = (width - 2 * edge + step - 1) / step;
+
+    byte[] brightness = new byte[columns * height];
+    int[] histogram = new int[256];
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++) {
+      image.getRGB(0, y, width, 1, row, 0, width);
+      for (int c = 0; c < columns; c++) {
+        int rgb = row[edge + c * step];
+        int value = InkThreshold.brightness(rgb);
+        brightness[y * columns + c] = (byte) value;
+        histogram[value]++;
+      }
+    }
+
+    List<int[]> lines = new ArrayList<>();
+    InkThreshold inkThreshold = InkThreshold.of(histogram);
+    if (inkThreshold == null) {
+      return lines;
+    }
+
+    // Rows with a few stray pixels of dust or noise still count as blank.
+    int noise = Math.max(1, columns / 500);
+    int minGap = Math.max(2, height / 300);
+    int lineStart = -1;
+    int lineEnd = -1;
+    for (int y = 0; y < height; y++) {
+      int ink = 0;
+      for (int c = 0; c < columns; c++) {
+        if (inkThreshold.isInk(brightness[y * columns + c] & 0xFF)) {
+          ink++;
+        }
+      }
+      if (ink <= noise) {
+        continue;
+      }
+      if (lineStart != -1 && y - lineEnd >= minGap) {
+        lines.add(new int[]{lineStart, lineEnd});
+        lineStart = -1;
+      }
+      if (lineStart == -1) {
+        lineStart = y;
+      }
+      lineEnd = y + 1;
+    }
+    if (lineStart != -1) {
+      lines.add(new int[]{lineStart, lineEnd});
+    }
+    return lines;
+  }
+
   /**
    * Computes the average brightness of the given image.
    * For each pixel, brightness is computed as:
@@ -0,0 +1,71 @@
+package com.github.joonasvali.bookreaderai.imageutil;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+public class ImageDecodeUtil {
+
+  /**
+   * Decodes the image at the lowest resolution that is still at least the size of the image scaled to fit the
+   * given area. Only every n-th pixel of every n-th row is kept while decoding, so a phone photo shown at screen
+   * size never exists in memory at full size.
+   *
+   * @throws IOException if the image cannot be read or no reader supports its format
+   */
+  public static SubsampledImage readSubsampled(Path path, int areaWidth, int areaHeight) throws IOException {
+    try (ImageInputStream in = ImageIO.createImageInputStream(path.toFile())) {
+      ImageReader reader = createReader(in, path);
+      try {
+        reader.setInput(in, true, true);
+        int width = reader.getWidth(0);
+        int height = reader.getHeight(0);
+        int subsampling = getSubsampling(width, height, areaWidth, areaHeight);
+
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        return new SubsampledImage(reader.read(0, param), width, height, subsampling);
+      } finally {
+        reader.dispose();
+      }
+    }
+  }
+
+  /**
+   * @return the largest factor the image can be subsampled by without getting smaller than the image scaled to fit
+   * the given area
+   */
+  public static int getSubsampling(int width, int height, int areaWidth, int areaHeight) {
+    if (areaWidth <= 0 || areaHeight <= 0) {
+      return 1;
+    }
+    return Math.max(1, (int) Math.max((double) width / areaWidth, (double) height / areaHeight));
+  }
+
+  private static ImageReader createReader(ImageInputStream in, Path path) throws IOException {
+    if (in == null) {
+      throw new IOException("Unable to open image " + path);
+    }
+    Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+    if (!readers.hasNext()) {
+      throw new IOException("Unable to decode image " + path);
+    }
+    return readers.next();
+  }
+
+  /**
+   * An image decoded at a reduced resolution.
+   *
+   * @param image        the decoded pixels
+   * @param sourceWidth  width of the image at full resolution
+   * @param sourceHeight height of the image at full resolution
+   * @param subsampling  the factor the image was reduced by in both directions
+   */
+  public record SubsampledImage(BufferedImage image, int sourceWidth, int sourceHeight, int subsampling) {
+  }
+}
@@ -1,5 +1,7 @@
 package com.github.joonasvali.bookreaderai.imageutil;
 
+import com.github.joonasvali.bookreaderai.metrics.jfr.ImageTransformEvent;
+
 import java.awt.*;
 import java.awt.image.BufferedImage;
 
@@ -20,8 +22,11 @@ public class ImageResizer {
   }
 
   public BufferedImage resizeImageToLimits(BufferedImage input) {
-    BufferedImage resized = resizeImageToMaxLimits(input);
-    return resizeImageToMinLimits(resized);
+    ImageTransformEvent event = new ImageTransformEvent();
+    event.begin();
+    BufferedImage resized = resizeImageToMinLimits(resizeImageToMaxLimits(input));
+    event.commit("resizeImageToLimits", input, resized);
+    return resized;
   }
 
   /**
@@ -0,0 +1,69 @@
+package com.github.joonasvali.bookreaderai.imageutil;
+
+/**
+ * Tells ink apart from the paper by brightness, with Otsu's threshold: the one that best separates the pixels into
+ * two classes. The less common class is the ink, so light text on dark paper works as well.
+ *
+ * @param threshold the brightest value of the darker class
+ * @param darkInk   true if the darker class is the ink
+ */
+record InkThreshold(int threshold, boolean darkInk) {
+
+  /**
+   * Difference in brightness the ink and the paper need to have at least, below it the image is taken to be blank.
+   */
+  static final int MIN_INK_CONTRAST = 40;
+
+  /**
+   * @param histogram number of pixels of every brightness, 0-255
+   * @return the threshold, or null if no ink stands out from the paper
+   */
+  static InkThreshold of(int[] histogram) {
+    long total = 0;
+    double sum = 0;
+    for (int i = 0; i < 256; i++) {
+      total += histogram[i];
+      sum += (double) i * histogram[i];
+    }
+    double sumBelow = 0;
+    long below = 0;
+    double bestVariance = -1;
+    int threshold = 0;
+    long darkPixels = 0;
+    double meanBelow = 0;
+    double meanAbove = 0;
+    for (int t = 0; t < 256; t++) {
+      below += histogram[t];
+      sumBelow += (double) t * histogram[t];
+      long above = total - below;
+      if (below == 0 || above == 0) {
+        continue;
+      }
+      double m0 = sumBelow / below;
+      double m1 = (sum - sumBelow) / above;
+      double variance = (double) below * above * (m0 - m1) * (m0 - m1);
+      if (variance > bestVariance) {
+        bestVariance = variance;
+        threshold = t;
+        darkPixels = below;
+        meanBelow = m0;
+        meanAbove = m1;
+      }
+    }
+    if (bestVariance < 0 || meanAbove - meanBelow < MIN_INK_CONTRAST) {
+      return null;
+    }
+    return new InkThreshold(threshold, darkPixels * 2 <= total);
+  }
+
+  boolean isInk(int brightness) {
+    return (brightness <= threshold) == darkInk;
+  }
+
+  /**
+   * @return the brightness of the pixel, 0.2126 * R + 0.7152 * G + 0.0722 * B
+   */
+  static int brightness(int rgb) {
+    return (int) (0.2126 * ((rgb >> 16) & 0xFF) + 0.7152 * ((rgb >> 8) & 0xFF) + 0.0722 * (rgb & 0xFF));
+  }
+}
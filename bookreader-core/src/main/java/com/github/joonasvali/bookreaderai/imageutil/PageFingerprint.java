@@ -0,0 +1,108 @@
+package com.github.joonasvali.bookreaderai.imageutil;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A small summary of a page that tells blank pages and repeated shots of the same page apart without sending them
+ * to the model.
+ * <p>
+ * The hash is a difference hash: the page is reduced to a grid of 17 x 16 average brightnesses, and every bit tells
+ * whether a cell is clearly darker than the one to its right. Cells of plain paper next to each other leave their
+ * bit unset instead of one set by noise, so two shots of the same page differ in a few bits, even with other
+ * lighting or compression, while different pages differ wherever their text does.
+ *
+ * @param hash        the 256 bits of the difference hash
+ * @param inkCoverage the share of the page covered by ink, see {@link InkThreshold}; 0 if no ink stands out
+ */
+public record PageFingerprint(long[] hash, double inkCoverage) {
+
+  /**
+   * Size of the area the page is decoded for, the fingerprint needs no more detail than this.
+   */
+  public static final int DECODE_SIZE = 256;
+
+  private static final int GRID_WIDTH = 17;
+  private static final int GRID_HEIGHT = 16;
+  /**
+   * Difference in average brightness of two cells for the left one to count as darker.
+   */
+  private static final int MIN_CELL_DIFFERENCE = 3;
+
+  /**
+   * Decodes the page at a reduced resolution and computes its fingerprint.
+   *
+   * @throws IOException if the image cannot be read or decoded
+   */
+  public static PageFingerprint read(Path path) throws IOException {
+    return of(ImageDecodeUtil.readSubsampled(path, DECODE_SIZE, DECODE_SIZE).image());
+  }
+
+  public static PageFingerprint of(BufferedImage image) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int edge = width / 20;
+    long[] cellSums = new long[GRID_WIDTH * GRID_HEIGHT];
+    int[] cellCounts = new int[GRID_WIDTH * GRID_HEIGHT];
+    int[] histogram = new int[256];
+    byte[] brightness = new byte[width * height];
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++) {
+      image.getRGB(0, y, width, 1, row, 0, width);
+      int cellRow = y * GRID_HEIGHT / height * GRID_WIDTH;
+      for (int x = 0; x < width; x++) {
+        int value = InkThreshold.brightness(row[x]);
+        brightness[y * width + x] = (byte) value;
+        int cell = cellRow + x * GRID_WIDTH / width;
+        cellSums[cell] += value;
+        cellCounts[cell]++;
+        // The edges often hold the shadow or the edge of the page, not ink.
+        if (x >= edge && x < width - edge) {
+          histogram[value]++;
+        }
+      }
+    }
+
+    long[] hash = new long[(GRID_WIDTH - 1) * GRID_HEIGHT / 64];
+    int bit = 0;
+    for (int r = 0; r < GRID_HEIGHT; r++) {
+      for (int c = 0; c < GRID_WIDTH - 1; c++, bit++) {
+        int cell = r * GRID_WIDTH + c;
+        // Compared as averages, cells at the edges may have one pixel column less than the rest.
+        long left = cellSums[cell] * cellCounts[cell + 1];
+        long right = cellSums[cell + 1] * cellCounts[cell];
+        if (right - left > (long) MIN_CELL_DIFFERENCE * cellCounts[cell] * cellCounts[cell + 1]) {
+          hash[bit / 64] |= 1L << (bit % 64);
+        }
+      }
+    }
+
+    InkThreshold inkThreshold = InkThreshold.of(histogram);
+    if (inkThreshold == null) {
+      return new PageFingerprint(hash, 0);
+    }
+    long ink = 0;
+    long total = 0;
+    for (int y = 0; y < height; y++) {
+      for (int x = edge; x < width - edge; x++) {
+        if (inkThreshold.isInk(brightness[y * width + x] & 0xFF)) {
+          ink++;
+        }
+        total++;
+      }
+    }
+    return new PageFingerprint(hash, (double) ink / total);
+  }
+
+  /**
+   * @return the number of bits the hashes of the two pages differ in, 0 to 256
+   */
+  public int distance(PageFingerprint other) {
+    int distance = 0;
+    for (int i = 0; i < hash.length; i++) {
+      distance += Long.bitCount(hash[i] ^ other.hash[i]);
+    }
+    return distance;
+  }
+}
@@ -1,17 +1,45 @@
 package com.github.joonasvali.bookreaderai.imageutil;
 
+import com.github.joonasvali.bookreaderai.metrics.jfr.ImageTransformEvent;
+
+import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.stream.IntStream;
 
 public class PerspectiveImageUtil {
 
+  // Below this many destination pixels the warp is not worth splitting across threads.
+  private static final int PARALLEL_THRESHOLD_PIXELS = 256 * 256;
+  private static final int ROWS_PER_TASK = 32;
+
   public static BufferedImage normalizeImageToRectangle(BufferedImage image, Point[] points) {
+    return normalizeImageToRectangle(image, points, false);
+  }
+
+  /**
+   * Warps the quadrilateral marked by the points into a rectangle. Pixels that map outside the source image
+   * are black.
+   *
+   * @param image    the source image
+   * @param points   the four corners of the area, in any order
+   * @param bilinear if true, each pixel is interpolated from its four closest source pixels, otherwise the
+   *                 closest source pixel is copied
+   */
+  public static BufferedImage normalizeImageToRectangle(BufferedImage image, Point[] points, boolean bilinear) {
     if (points == null || points.length != 4) {
       throw new IllegalArgumentException("Exactly 4 points are required.");
     }
+    ImageTransformEvent event = new ImageTransformEvent();
+    event.begin();
     Point[] pts = reorderPoints(points);
 
     // Compute destination width: maximum of the top and bottom edge lengths.
@@ -37,24 +65,51 @@ public class PerspectiveImageUtil {
     // To easily sample from the source image, compute the inverse transform.
     double[][] Hinv = invert3x3Matrix(H);
 
-    BufferedImage destImage = new BufferedImage(destWidth, destHeight, image.getType());
+    PixelSource source = PixelSource.of(image);
+    BufferedImage destImage = new BufferedImage(destWidth, destHeight,
+        image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+    int[] destPixels = ((DataBufferInt) destImage.getRaster().getDataBuffer()).getData();
+
+    if ((long) destWidth * destHeight < PARALLEL_THRESHOLD_PIXELS) {
+      warpRows(source, Hinv, destPixels, destWidth, 0, destHeight, bilinear);
+    } else {
+      // Rows are independent of each other, so bands of rows are warped on the common fork-join pool.
+      int tasks = (destHeight + ROWS_PER_TASK - 1) / ROWS_PER_TASK;
+      IntStream.range(0, tasks).parallel().forEach(task -> {
+        int fromRow = task * ROWS_PER_TASK;
+        warpRows(source, Hinv, destPixels, destWidth, fromRow, Math.min(destHeight, fromRow + ROWS_PER_TASK), bilinear);
+      });
+    }
+
+    event.commit(bilinear ? "normalizeImageToRectangle (bilinear)" : "normalizeImageToRectangle", image, destImage);
+    return destImage;
+  }
 
-    // Map every pixel (x,y) in the destination image back to the source image.
-    for (int y = 0; y < destHeight; y++) {
+  /**
+   * Maps every destination pixel of the given rows back to the source image. Along a row, the homogeneous source
+   * coordinates change by a constant step, so each pixel costs three additions and one division instead of
+   * a full matrix multiplication.
+   */
+  private static void warpRows(PixelSource source, double[][] Hinv, int[] destPixels, int destWidth,
+                               int fromRow, int toRow, boolean bilinear) {
+    double stepX = Hinv[0][0];
+    double stepY = Hinv[1][0];
+    double stepW = Hinv[2][0];
+    for (int y = fromRow; y < toRow; y++) {
+      double srcX = Hinv[0][1] * y + Hinv[0][2];
+      double srcY = Hinv[1][1] * y + Hinv[1][2];
+      double srcW = Hinv[2][1] * y + Hinv[2][2];
+      int offset = y * destWidth;
       for (int x = 0; x < destWidth; x++) {
-        double[] srcPt = applyTransform(Hinv, x, y);
-        int srcX = (int) Math.round(srcPt[0]);
-        int srcY = (int) Math.round(srcPt[1]);
-        // If the computed source pixel is within bounds, copy its color; otherwise, paint black.
-        if (srcX >= 0 && srcX < image.getWidth() && srcY >= 0 && srcY < image.getHeight()) {
-          destImage.setRGB(x, y, image.getRGB(srcX, srcY));
-        } else {
-          destImage.setRGB(x, y, 0); // black pixel
-        }
+        double w = 1.0 / srcW;
+        double sx = srcX * w;
+        double sy = srcY * w;
+        destPixels[offset + x] = bilinear ? source.sampleBilinear(sx, sy) : source.sampleNearest(sx, sy);
+        srcX += stepX;
+        srcY += stepY;
+        srcW += stepW;
       }
     }
-
-    return destImage;
   }
 
   // Computes the 3x3 perspective transform matrix (homography) that maps
@@ -185,15 +240,6 @@ public class PerspectiveImageUtil {
     return inv;
   }
 
-  // Applies a 3x3 transformation matrix H to a point (x, y)
-  // and returns the transformed coordinates.
-  private static double[] applyTransform(double[][] H, double x, double y) {
-    double denominator = H[2][0] * x + H[2][1] * y + H[2][2];
-    double newX = (H[0][0] * x + H[0][1] * y + H[0][2]) / denominator;
-    double newY = (H[1][0] * x + H[1][1] * y + H[1][2]) / denominator;
-    return new double[]{newX, newY};
-  }
-
   /**
    * Reorders an array of four points into the following order:
    * 1. Top-left
@@ -253,9 +299,14 @@ public class PerspectiveImageUtil {
   }
 
   public static boolean arePointsAtTheCornersOfImage(BufferedImage image, Point[] points) {
-    int width = image.getWidth();
-    int height = image.getHeight();
+    return arePointsAtTheCornersOfImage(image.getWidth(), image.getHeight(), points);
+  }
 
+  /**
+   * @param width  width of the image the points are on
+   * @param height height of the image the points are on
+   */
+  public static boolean arePointsAtTheCornersOfImage(int width, int height, Point[] points) {
     // There must be exactly 4 points
     if (points == null || points.length != 4) {
       return false;
@@ -283,4 +334,156 @@ public class PerspectiveImageUtil {
     // If every corner was provided exactly once, the set will be empty.
     return expectedCorners.isEmpty();
   }
-}
\ No newline at end of file
+
+  /**
+   * Reads ARGB pixels straight from the data buffer of the common image types, without going through
+   * {@link BufferedImage#getRGB(int, int)} and its color model for every pixel.
+   */
+  private abstract static class PixelSource {
+    protected final int width;
+    protected final int height;
+
+    private PixelSource(int width, int height) {
+      this.width = width;
+      this.height = height;
+    }
+
+    static PixelSource of(BufferedImage image) {
+      switch (image.getType()) {
+        case BufferedImage.TYPE_INT_RGB:
+        case BufferedImage.TYPE_INT_ARGB:
+          return new IntPixelSource(image);
+        case BufferedImage.TYPE_3BYTE_BGR:
+        case BufferedImage.TYPE_4BYTE_ABGR:
+          return new BytePixelSource(image);
+        default:
+          // Other layouts are converted once, which is still cheaper than a getRGB call per pixel.
+          BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(),
+              image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+          Graphics2D g2d = converted.createGraphics();
+          g2d.drawImage(image, 0, 0, null);
+          g2d.dispose();
+          return new IntPixelSource(converted);
+      }
+    }
+
+    /**
+     * @return the ARGB value of the pixel at the given position, which must be inside the image
+     */
+    abstract int argb(int x, int y);
+
+    int sampleNearest(double sx, double sy) {
+      int x = (int) Math.floor(sx + 0.5);
+      int y = (int) Math.floor(sy + 0.5);
+      if (x < 0 || x >= width || y < 0 || y >= height) {
+        return 0;
+      }
+      return argb(x, y);
+    }
+
+    int sampleBilinear(double sx, double sy) {
+      // Same coverage as nearest sampling, pixels closer to the image than half a pixel are clamped to its edge.
+      if (sx < -0.5 || sx >= width - 0.5 || sy < -0.5 || sy >= height - 0.5) {
+        return 0;
+      }
+      int x0 = (int) Math.floor(sx);
+      int y0 = (int) Math.floor(sy);
+      // Fixed point weights with 8 fractional bits.
+      int fx = (int) ((sx - x0) * 256);
+      int fy = (int) ((sy - y0) * 256);
+      int x1 = Math.min(x0 + 1, width - 1);
+      int y1 = Math.min(y0 + 1, height - 1);
+      x0 = Math.max(x0, 0);
+      y0 = Math.max(y0, 0);
+
+      int w00 = (256 - fx) * (256 - fy);
+      int w10 = fx * (256 - fy);
+      int w01 = (256 - fx) * fy;
+      int w11 = fx * fy;
+
+      int p00 = argb(x0, y0);
+      int p10 = argb(x1, y0);
+      int p01 = argb(x0, y1);
+      int p11 = argb(x1, y1);
+
+      // The weights add up to 65536, so each channel is shifted back down by 16 bits.
+      return interpolate(p00, p10, p01, p11, w00, w10, w01, w11, 24) << 24
+          | interpolate(p00, p10, p01, p11, w00, w10, w01, w11, 16) << 16
+          | interpolate(p00, p10, p01, p11, w00, w10, w01, w11, 8) << 8
+          | interpolate(p00, p10, p01, p11, w00, w10, w01, w11, 0);
+    }
+
+    private static int interpolate(int p00, int p10, int p01, int p11, int w00, int w10, int w01, int w11, int shift) {
+      return (((p00 >>> shift) & 0xFF) * w00
+          + ((p10 >>> shift) & 0xFF) * w10
+          + ((p01 >>> shift) & 0xFF) * w01
+          + ((p11 >>> shift) & 0xFF) * w11
+          + 32768) >>> 16;
+    }
+  }
+
+  private static final class IntPixelSource extends PixelSource {
+    private final int[] data;
+    private final int offset;
+    private final int scanlineStride;
+    private final int alphaMask;
+
+    private IntPixelSource(BufferedImage image) {
+      super(image.getWidth(), image.getHeight());
+      WritableRaster raster = image.getRaster();
+      SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+      DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+      this.data = buffer.getData();
+      this.scanlineStride = sampleModel.getScanlineStride();
+      this.offset = buffer.getOffset()
+          - raster.getSampleModelTranslateY() * scanlineStride
+          - raster.getSampleModelTranslateX();
+      // Opaque images have no alpha bits in their pixels.
+      this.alphaMask = image.getType() == BufferedImage.TYPE_INT_RGB ? 0xFF000000 : 0;
+    }
+
+    @Override
+    int argb(int x, int y) {
+      return data[offset + y * scanlineStride + x] | alphaMask;
+    }
+  }
+
+  private static final class BytePixelSource extends PixelSource {
+    private final byte[] data;
+    private final int offset;
+    private final int scanlineStride;
+    private final int pixelStride;
+    private final int red;
+    private final int green;
+    private final int blue;
+    private final int alpha;
+
+    private BytePixelSource(BufferedImage image) {
+      super(image.getWidth(), image.getHeight());
+      WritableRaster raster = image.getRaster();
+      PixelInterleavedSampleModel sampleModel = (PixelInterleavedSampleModel) raster.getSampleModel();
+      DataBufferByte buffer = (DataBufferByte) raster.getDataBuffer();
+      this.data = buffer.getData();
+      this.scanlineStride = sampleModel.getScanlineStride();
+      this.pixelStride = sampleModel.getPixelStride();
+      this.offset = buffer.getOffset()
+          - raster.getSampleModelTranslateY() * scanlineStride
+          - raster.getSampleModelTranslateX() * pixelStride;
+      int[] bandOffsets = sampleModel.getBandOffsets();
+      this.red = bandOffsets[0];
+      this.green = bandOffsets[1];
+      this.blue = bandOffsets[2];
+      this.alpha = bandOffsets.length > 3 ? bandOffsets[3] : -1;
+    }
+
+    @Override
+    int argb(int x, int y) {
+      int index = offset + y * scanlineStride + x * pixelStride;
+      int a = alpha < 0 ? 0xFF : data[index + alpha] & 0xFF;
+      return a << 24
+          | (data[index + red] & 0xFF) << 16
+          | (data[index + green] & 0xFF) << 8
+          | (data[index + blue] & 0xFF);
+    }
+  }
+}
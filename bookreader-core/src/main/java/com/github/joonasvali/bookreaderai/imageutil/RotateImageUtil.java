@@ -1,5 +1,7 @@
 package com.github.joonasvali.bookreaderai.imageutil;
 
+import com.github.joonasvali.bookreaderai.metrics.jfr.ImageTransformEvent;
+
 import java.awt.*;
 import java.awt.image.BufferedImage;
 
@@ -27,10 +29,13 @@ public class RotateImageUtil {
    *            (the original image is not modified)
    */
   public static BufferedImage applyRotation(BufferedImage img, int rotationCount) {
+    ImageTransformEvent event = new ImageTransformEvent();
+    event.begin();
     BufferedImage result = img;
     for (int i = 0; i < rotationCount % 4; i++) {
       result = RotateImageUtil.rotate90(result);
     }
+    event.commit("applyRotation", img, result);
     return result;
   }
 }
@@ -0,0 +1,80 @@
+package com.github.joonasvali.bookreaderai.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations in nanoseconds, in the spirit of HdrHistogram.
+ * <p>
+ * Values are counted in log-linear buckets: every power of two is split into 16 buckets, so a percentile is off by
+ * at most 1/16 of its value while the whole range of a long fits into fewer than a thousand counters. Recording is
+ * a single atomic increment, cheap enough for every stage of every page.
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  // Index of Long.MAX_VALUE plus one.
+  private static final int BUCKETS = indexOf(Long.MAX_VALUE) + 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  public void record(long nanos) {
+    long value = Math.max(0, nanos);
+    counts.incrementAndGet(indexOf(value));
+    count.increment();
+    sum.add(value);
+    max.accumulateAndGet(value, Math::max);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getSum() {
+    return sum.sum();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Returns the value below which the given fraction of the recorded values fall, rounded up to the end of its
+   * bucket, or zero if nothing has been recorded.
+   *
+   * @param fraction between 0 and 1, for example 0.99
+   */
+  public long getValueAtPercentile(double fraction) {
+    long total = getCount();
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(fraction * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(highestValueOf(i), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  static int indexOf(long value) {
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int shift = Math.max(0, exponent - SUB_BUCKET_BITS);
+    return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+  }
+
+  static long highestValueOf(int index) {
+    int shift = Math.max(0, (index >> SUB_BUCKET_BITS) - 1);
+    long subBucket = index - ((long) shift << SUB_BUCKET_BITS);
+    long next = (subBucket + 1) << shift;
+    // The last bucket ends at Long.MAX_VALUE, its end would overflow.
+    return next <= 0 ? Long.MAX_VALUE : next - 1;
+  }
+}
@@ -0,0 +1,234 @@
+package com.github.joonasvali.bookreaderai.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide registry of the metrics needed to capacity-plan transcription runs: a latency histogram per pipeline
+ * stage, counters of requests, retries and tokens, and a gauge of the HTTP requests in flight.
+ * <p>
+ * Metrics are always collected. {@link #configure(Properties)} optionally exports them in the Prometheus text format,
+ * as a snapshot file that is rewritten periodically and on exit, and from {@code /metrics} on a local port.
+ */
+public class Metrics {
+  private static final Logger logger = LoggerFactory.getLogger(Metrics.class);
+
+  public static final String STAGE_PAGE = "page";
+  public static final String STAGE_CROP = "crop";
+  public static final String STAGE_SLICE = "slice";
+  public static final String STAGE_RESIZE = "resize";
+  public static final String STAGE_JPEG_ENCODE = "jpeg_encode";
+  public static final String STAGE_HTTP = "http_round_trip";
+  public static final String STAGE_TEXT_RESTORE = "text_restore";
+  public static final String STAGE_CONTENT_JOINER = "content_joiner";
+
+  public static final String PAGES = "bookreader_pages_total";
+  public static final String PAGES_FAILED = "bookreader_pages_failed_total";
+  public static final String HTTP_REQUESTS = "bookreader_http_requests_total";
+  public static final String HTTP_RETRIES = "bookreader_http_retries_total";
+  public static final String HTTP_RATE_LIMITED = "bookreader_http_rate_limited_total";
+  public static final String PROMPT_TOKENS = "bookreader_prompt_tokens_total";
+  public static final String COMPLETION_TOKENS = "bookreader_completion_tokens_total";
+  public static final String LOCAL_JOINS = "bookreader_local_joins_total";
+
+  private static final String STAGE_SECONDS = "bookreader_stage_seconds";
+  private static final String HTTP_IN_FLIGHT = "bookreader_http_requests_in_flight";
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+  private static Metrics instance;
+
+  private final ConcurrentMap<String, LatencyHistogram> stages = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+  private final AtomicLong inFlight = new AtomicLong();
+
+  private ScheduledExecutorService snapshotWriter;
+  private HttpServer server;
+
+  /**
+   * Replaces the shared registry with an empty one that exports its metrics as the given properties say.
+   */
+  public static synchronized void configure(Properties properties) {
+    MetricsSettings settings = MetricsSettings.fromProperties(properties);
+    logger.debug("Metrics settings: {}", settings);
+    if (instance != null) {
+      instance.stopExport();
+    }
+    instance = new Metrics();
+    instance.startExport(settings);
+  }
+
+  public static synchronized Metrics getInstance() {
+    if (instance == null) {
+      instance = new Metrics();
+    }
+    return instance;
+  }
+
+  /**
+   * Starts timing a stage, the time is recorded when the returned stopwatch is closed.
+   */
+  public Stopwatch start(String stage) {
+    return new Stopwatch(getStage(stage));
+  }
+
+  public void record(String stage, long nanos) {
+    getStage(stage).record(nanos);
+  }
+
+  public void increment(String counter) {
+    add(counter, 1);
+  }
+
+  public void add(String counter, long amount) {
+    counters.computeIfAbsent(counter, name -> new LongAdder()).add(amount);
+  }
+
+  /**
+   * Counts an HTTP request as in flight until the returned stopwatch is closed, which also records its round trip.
+   */
+  public Stopwatch startRequest() {
+    increment(HTTP_REQUESTS);
+    inFlight.incrementAndGet();
+    return new Stopwatch(getStage(STAGE_HTTP)) {
+      @Override
+      public void close() {
+        super.close();
+        inFlight.decrementAndGet();
+      }
+    };
+  }
+
+  public LatencyHistogram getStage(String stage) {
+    return stages.computeIfAbsent(stage, name -> new LatencyHistogram());
+  }
+
+  public long getCounter(String counter) {
+    LongAdder adder = counters.get(counter);
+    return adder == null ? 0 : adder.sum();
+  }
+
+  public long getInFlightRequests() {
+    return inFlight.get();
+  }
+
+  /**
+   * Renders all metrics in the Prometheus text exposition format. Stage latencies are summaries in seconds.
+   */
+  public String toPrometheusText() {
+    StringBuilder text = new StringBuilder();
+    text.append("# HELP ").append(STAGE_SECONDS).append(" Time spent in a stage of the transcription pipeline\n");
+    text.append("# TYPE ").append(STAGE_SECONDS).append(" summary\n");
+    for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(stages).entrySet()) {
+      String stage = entry.getKey();
+      LatencyHistogram histogram = entry.getValue();
+      for (double quantile : QUANTILES) {
+        text.append(STAGE_SECONDS).append("{stage=\"").append(stage).append("\",quantile=\"").append(quantile).append("\"} ")
+            .append(seconds(histogram.getValueAtPercentile(quantile))).append('\n');
+      }
+      text.append(STAGE_SECONDS).append("_sum{stage=\"").append(stage).append("\"} ").append(seconds(histogram.getSum())).append('\n');
+      text.append(STAGE_SECONDS).append("_count{stage=\"").append(stage).append("\"} ").append(histogram.getCount()).append('\n');
+    }
+    for (Map.Entry<String, LongAdder> entry : new TreeMap<>(counters).entrySet()) {
+      text.append("# TYPE ").append(entry.getKey()).append(" counter\n");
+      text.append(entry.getKey()).append(' ').append(entry.getValue().sum()).append('\n');
+    }
+    text.append("# TYPE ").append(HTTP_IN_FLIGHT).append(" gauge\n");
+    text.append(HTTP_IN_FLIGHT).append(' ').append(inFlight.get()).append('\n');
+    return text.toString();
+  }
+
+  private static String seconds(long nanos) {
+    return String.valueOf(nanos / 1e9);
+  }
+
+  private void startExport(MetricsSettings settings) {
+    if (settings.snapshotFile() != null) {
+      Path file = Path.of(settings.snapshotFile()).toAbsolutePath();
+      snapshotWriter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "metrics-snapshot");
+        thread.setDaemon(true);
+        return thread;
+      });
+      snapshotWriter.scheduleAtFixedRate(() -> writeSnapshot(file),
+          settings.snapshotIntervalSeconds(), settings.snapshotIntervalSeconds(), TimeUnit.SECONDS);
+      // The last snapshot holds the totals of the whole run.
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> writeSnapshot(file), "metrics-final-snapshot"));
+      logger.info("Writing metrics to {} every {}s", file, settings.snapshotIntervalSeconds());
+    }
+    if (settings.prometheusPort() > 0) {
+      try {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), settings.prometheusPort()), 0);
+        server.createContext("/metrics", exchange -> {
+          try (exchange) {
+            byte[] body = toPrometheusText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+              out.write(body);
+            }
+          }
+        });
+        server.start();
+        logger.info("Serving metrics at http://localhost:{}/metrics", settings.prometheusPort());
+      } catch (IOException e) {
+        logger.warn("Unable to serve metrics on port " + settings.prometheusPort() + ", continuing without it", e);
+      }
+    }
+  }
+
+  private void writeSnapshot(Path file) {
+    try {
+      Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+      Files.writeString(temp, toPrometheusText());
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      logger.warn("Unable to write metrics snapshot to " + file, e);
+    }
+  }
+
+  private void stopExport() {
+    if (snapshotWriter != null) {
+      snapshotWriter.shutdownNow();
+    }
+    if (server != null) {
+      server.stop(0);
+    }
+  }
+
+  /**
+   * Measures the time until it is closed, meant for try-with-resources.
+   */
+  public static class Stopwatch implements AutoCloseable {
+    private final LatencyHistogram histogram;
+    private final long start = System.nanoTime();
+
+    private Stopwatch(LatencyHistogram histogram) {
+      this.histogram = histogram;
+    }
+
+    @Override
+    public void close() {
+      histogram.record(System.nanoTime() - start);
+    }
+  }
+}
@@ -0,0 +1,35 @@
+package com.github.joonasvali.bookreaderai.metrics;
+
+import java.util.Properties;
+
+/**
+ * Where the collected metrics are exported to. Metrics are always collected, exporting them is opt-in.
+ *
+ * @param snapshotFile            file the Prometheus text of all metrics is written to periodically and on exit,
+ *                                null to not write one
+ * @param snapshotIntervalSeconds how often the snapshot file is rewritten
+ * @param prometheusPort          local port serving the metrics at {@code /metrics}, 0 to not serve them
+ */
+public record MetricsSettings(String snapshotFile, long snapshotIntervalSeconds, int prometheusPort) {
+
+  public static final String SNAPSHOT_FILE_KEY = "metrics.snapshotFile";
+  public static final String SNAPSHOT_INTERVAL_SECONDS_KEY = "metrics.snapshotIntervalSeconds";
+  public static final String PROMETHEUS_PORT_KEY = "metrics.prometheusPort";
+
+  public static MetricsSettings defaults() {
+    return new MetricsSettings(null, 60, 0);
+  }
+
+  /**
+   * Reads the settings from the given properties, falling back to {@link #defaults()} for every missing key.
+   */
+  public static MetricsSettings fromProperties(Properties properties) {
+    MetricsSettings defaults = defaults();
+    String snapshotFile = properties.getProperty(SNAPSHOT_FILE_KEY);
+    return new MetricsSettings(
+        snapshotFile == null || snapshotFile.isBlank() ? defaults.snapshotFile() : snapshotFile.trim(),
+        Long.parseLong(properties.getProperty(SNAPSHOT_INTERVAL_SECONDS_KEY, String.valueOf(defaults.snapshotIntervalSeconds())).trim()),
+        Integer.parseInt(properties.getProperty(PROMETHEUS_PORT_KEY, String.valueOf(defaults.prometheusPort())).trim())
+    );
+  }
+}
@@ -0,0 +1,31 @@
+package com.github.joonasvali.bookreaderai.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One chat completion call of an agent, such as the content joiner.
+ */
+@Name("bookreader.ChatCompletion")
+@Label("Chat Completion")
+@Category({"BookReader", "OpenAI"})
+@StackTrace(false)
+public class ChatCompletionEvent extends Event {
+  @Label("Agent")
+  public String agent;
+
+  @Label("Model")
+  public String model;
+
+  @Label("Payload Size")
+  public long payloadChars;
+
+  @Label("Prompt Tokens")
+  public long promptTokens;
+
+  @Label("Completion Tokens")
+  public long completionTokens;
+}
@@ -0,0 +1,48 @@
+package com.github.joonasvali.bookreaderai.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One image request of {@code ImageAnalysis.process}, from resizing the image to parsing the answer.
+ */
+@Name("bookreader.ImageAnalysis")
+@Label("Image Analysis")
+@Category({"BookReader", "OpenAI"})
+@Description("Image request: resize, JPEG encoding, HTTP call with retries and parsing of the answer")
+@StackTrace(false)
+public class ImageAnalysisEvent extends Event {
+  @Label("Model")
+  public String model;
+
+  @Label("Answers")
+  public int answers;
+
+  @Label("Width")
+  public int width;
+
+  @Label("Height")
+  public int height;
+
+  @Label("Payload Size")
+  @DataAmount(DataAmount.BYTES)
+  public long payloadBytes;
+
+  @Label("Cached")
+  @Description("The answer came from the response cache")
+  public boolean cached;
+
+  @Label("Retries")
+  public int retries;
+
+  @Label("Prompt Tokens")
+  public long promptTokens;
+
+  @Label("Completion Tokens")
+  public long completionTokens;
+}
@@ -0,0 +1,52 @@
+package com.github.joonasvali.bookreaderai.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * One of the image transforms of the imageutil package.
+ */
+@Name("bookreader.ImageTransform")
+@Label("Image Transform")
+@Category({"BookReader", "Image"})
+@StackTrace(false)
+public class ImageTransformEvent extends Event {
+  @Label("Operation")
+  public String operation;
+
+  @Label("Image Type")
+  public int imageType;
+
+  @Label("Source Width")
+  public int sourceWidth;
+
+  @Label("Source Height")
+  public int sourceHeight;
+
+  @Label("Target Width")
+  public int targetWidth;
+
+  @Label("Target Height")
+  public int targetHeight;
+
+  /**
+   * Ends the event and commits it with the sizes of the images, unless recording it is disabled.
+   */
+  public void commit(String operation, BufferedImage source, BufferedImage target) {
+    end();
+    if (shouldCommit()) {
+      this.operation = operation;
+      this.imageType = source.getType();
+      this.sourceWidth = source.getWidth();
+      this.sourceHeight = source.getHeight();
+      this.targetWidth = target.getWidth();
+      this.targetHeight = target.getHeight();
+      commit();
+    }
+  }
+}
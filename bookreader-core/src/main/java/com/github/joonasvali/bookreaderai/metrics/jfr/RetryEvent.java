@@ -0,0 +1,28 @@
+package com.github.joonasvali.bookreaderai.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * An operation run with retries by an agent, covering all of its attempts and the waits between them.
+ */
+@Name("bookreader.Retry")
+@Label("Retry")
+@Category({"BookReader", "OpenAI"})
+@StackTrace(false)
+public class RetryEvent extends Event {
+  @Label("Agent")
+  public String agent;
+
+  @Label("Attempts")
+  public int attempts;
+
+  @Label("Max Retries")
+  public int maxRetries;
+
+  @Label("Succeeded")
+  public boolean succeeded;
+}
@@ -0,0 +1,25 @@
+package com.github.joonasvali.bookreaderai.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Restoration of one text out of several transcriptions of it.
+ */
+@Name("bookreader.TextRestore")
+@Label("Text Restore")
+@Category({"BookReader", "Text"})
+@StackTrace(false)
+public class TextRestoreEvent extends Event {
+  @Label("Samples")
+  public int samples;
+
+  @Label("Input Length")
+  public long inputChars;
+
+  @Label("Output Length")
+  public long outputChars;
+}
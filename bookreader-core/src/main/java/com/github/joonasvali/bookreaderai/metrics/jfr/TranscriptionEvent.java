@@ -0,0 +1,41 @@
+package com.github.joonasvali.bookreaderai.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Transcription of a page or of one of its slices by a {@code SimpleTranscriberAgent}: the image request and the
+ * restoration of its samples.
+ */
+@Name("bookreader.Transcription")
+@Label("Transcription")
+@Category({"BookReader", "Transcription"})
+@Description("Image request of a page or slice and the restoration of its samples")
+@StackTrace(false)
+public class TranscriptionEvent extends Event {
+  @Label("Page")
+  public String page;
+
+  @Label("Slice Index")
+  @Description("Index of the slice on the page, -1 for the whole page")
+  public int sliceIndex;
+
+  @Label("Model")
+  public String model;
+
+  @Label("Samples")
+  public int samples;
+
+  @Label("Prompt Tokens")
+  public long promptTokens;
+
+  @Label("Completion Tokens")
+  public long completionTokens;
+
+  @Label("Result Length")
+  public long resultChars;
+}
@@ -0,0 +1,127 @@
+package com.github.joonasvali.bookreaderai.openai;
+
+import com.github.joonasvali.bookreaderai.Constants;
+import com.openai.client.OpenAIClient;
+import com.openai.client.OpenAIClientImpl;
+import com.openai.core.ClientOptions;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide HTTP transport shared by the image path ({@link ImageAnalysis}) and the chat path
+ * ({@link com.github.joonasvali.bookreaderai.transcribe.AgentBase}).
+ * <p>
+ * Both paths go through the same {@link OkHttpClient}, so TLS sessions, keep-alive connections and
+ * dispatcher threads are reused between slices, samples and joiner calls instead of being created per call.
+ */
+public class HttpTransport {
+  private static final Logger logger = LoggerFactory.getLogger(HttpTransport.class);
+
+  private static HttpTransport instance;
+
+  private final TransportSettings settings;
+  private final OkHttpClient okHttpClient;
+  private OpenAIClient openAIClient;
+
+  private HttpTransport(TransportSettings settings) {
+    this.settings = settings;
+
+    Dispatcher dispatcher = new Dispatcher();
+    dispatcher.setMaxRequests(settings.maxRequests());
+    dispatcher.setMaxRequestsPerHost(settings.maxRequestsPerHost());
+
+    OkHttpClient.Builder builder = new OkHttpClient.Builder()
+        .dispatcher(dispatcher)
+        .connectionPool(new ConnectionPool(settings.maxIdleConnections(), settings.keepAliveSeconds(), TimeUnit.SECONDS))
+        .connectTimeout(settings.timeoutSeconds(), TimeUnit.SECONDS)
+        .writeTimeout(settings.timeoutSeconds(), TimeUnit.SECONDS)
+        .readTimeout(settings.timeoutSeconds(), TimeUnit.SECONDS);
+
+    if (settings.http2()) {
+      builder.protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1));
+    } else {
+      builder.protocols(List.of(Protocol.HTTP_1_1));
+    }
+    this.okHttpClient = builder.build();
+  }
+
+  /**
+   * Replaces the shared transport with one built from the given properties.
+   */
+  public static synchronized void configure(Properties properties) {
+    TransportSettings settings = TransportSettings.fromProperties(properties);
+    logger.debug("HTTP transport settings: {}", settings);
+    if (instance != null) {
+      instance.shutdown();
+    }
+    instance = new HttpTransport(settings);
+  }
+
+  public static synchronized HttpTransport getInstance() {
+    if (instance == null) {
+      instance = new HttpTransport(TransportSettings.defaults());
+    }
+    return instance;
+  }
+
+  public TransportSettings getSettings() {
+    return settings;
+  }
+
+  public OkHttpClient getOkHttpClient() {
+    return okHttpClient;
+  }
+
+  /**
+   * Returns the URL of the chat completions endpoint under the configured API root.
+   */
+  public String getCompletionsUrl() {
+    return stripTrailingSlash(settings.baseUrl()) + "/chat/completions";
+  }
+
+  /**
+   * Returns the OpenAI SDK client, which sends its requests through the shared {@link OkHttpClient}.
+   * The client is created on first use, so the API key is only required once a call is actually made.
+   */
+  public synchronized OpenAIClient getOpenAIClient() {
+    if (openAIClient == null) {
+      ClientOptions options = ClientOptions.builder()
+          .httpClient(new OpenAIHttpClientAdapter(okHttpClient, stripTrailingSlash(settings.baseUrl())))
+          .baseUrl(stripTrailingSlash(settings.baseUrl()))
+          .apiKey(System.getenv(Constants.OPENAI_API_KEY_ENV_VARIABLE))
+          // Retries are paced by the RateLimiter instead of the SDK's own backoff.
+          .maxRetries(0)
+          .build();
+      openAIClient = new OpenAIClientImpl(options);
+    }
+    return openAIClient;
+  }
+
+  /**
+   * Makes an SDK call whose requests are registered with the given scope, so that cancelling the scope aborts
+   * them. The requests have to be sent on the calling thread, as the synchronous SDK calls do.
+   *
+   * @param requestScope the scope to register the requests with, may be null
+   */
+  public <T> T callInScope(RequestScope requestScope, Supplier<T> call) {
+    return OpenAIHttpClientAdapter.callInScope(requestScope, call);
+  }
+
+  private static String stripTrailingSlash(String url) {
+    return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+  }
+
+  private void shutdown() {
+    okHttpClient.dispatcher().executorService().shutdown();
+    okHttpClient.connectionPool().evictAll();
+  }
+}
@@ -2,7 +2,10 @@ package com.github.joonasvali.bookreaderai.openai;
 
 import com.github.joonasvali.bookreaderai.Constants;
 import com.github.joonasvali.bookreaderai.imageutil.ImageResizer;
+import com.github.joonasvali.bookreaderai.metrics.Metrics;
+import com.github.joonasvali.bookreaderai.metrics.jfr.ImageAnalysisEvent;
 import com.github.joonasvali.bookreaderai.util.ModelUtils;
+import okhttp3.Call;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -19,9 +22,10 @@ import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Base64;
-import java.util.concurrent.TimeUnit;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
 
 /*
  * The official OpenAI API client does not allow sending images, so this is a temporary workaround
@@ -34,10 +38,10 @@ import java.util.concurrent.TimeUnit;
  */
 public class ImageAnalysis {
   private static final Logger logger = LoggerFactory.getLogger(ImageAnalysis.class);
-  public static final String COMPLETIONS_URL = "https://api.openai.com/v1/chat/completions";
 
   private final String prompt;
   private final String model;
+  private RequestScope requestScope;
 
   public ImageAnalysis(String prompt) {
     this.prompt = prompt;
@@ -49,7 +53,14 @@ public class ImageAnalysis {
     this.model = model;
   }
 
-  private static String convertBufferedImageToBase64(BufferedImage image, String format) throws IOException {
+  /**
+   * @param requestScope the scope the requests of this analysis are registered with, so that they can be cancelled
+   */
+  public void setRequestScope(RequestScope requestScope) {
+    this.requestScope = requestScope;
+  }
+
+  static byte[] convertBufferedImage(BufferedImage image, String format) throws IOException {
     BufferedImage imageToWrite = image;
 
     // If writing as JPEG and image has alpha channel, convert to RGB
@@ -70,13 +81,18 @@ public class ImageAnalysis {
         throw new IOException("No appropriate writer found for format: " + format);
       }
       outputStream.flush();
-      byte[] imageBytes = outputStream.toByteArray();
-      return Base64.getEncoder().encodeToString(imageBytes);
+      return outputStream.toByteArray();
     }
   }
 
 
   public ProcessingResult<String> process(BufferedImage bufferedImage) throws IOException {
+    return processSingle(bufferedImage, 0);
+  }
+
+  private ProcessingResult<String> processSingle(BufferedImage bufferedImage, int batch) throws IOException {
+    ImageAnalysisEvent event = new ImageAnalysisEvent();
+    event.begin();
 
     BufferedImage imageToProcess;
 
@@ -86,22 +102,28 @@ public class ImageAnalysis {
       imageToProcess = bufferedImage;
     } else {
       ImageResizer imageResizer = ImageResizer.getStandardOpenAIImageResizer();
-      imageToProcess = imageResizer.resizeImageToLimits(bufferedImage);
+      try (Metrics.Stopwatch ignored = Metrics.getInstance().start(Metrics.STAGE_RESIZE)) {
+        imageToProcess = imageResizer.resizeImageToLimits(bufferedImage);
+      }
     }
 
-    String base64Image = convertBufferedImageToBase64(imageToProcess, "jpg");
+    byte[] jpeg;
+    try (Metrics.Stopwatch ignored = Metrics.getInstance().start(Metrics.STAGE_JPEG_ENCODE)) {
+      jpeg = convertBufferedImage(imageToProcess, "jpg");
+    }
 
     if (logger.isDebugEnabled()) {
       Path tempPath = System.getProperty("java.io.tmpdir") != null ? Path.of(System.getProperty("java.io.tmpdir")) : Path.of(".");
-      Path file = tempPath.resolve("image-" + base64Image.hashCode() + ".jpg");
+      Path file = tempPath.resolve("image-" + Arrays.hashCode(jpeg) + ".jpg");
       logger.debug("Writing image to " + file);
-      ImageIO.write(imageToProcess, "jpg", file.toFile());
+      Files.write(file, jpeg);
     }
 
-    JSONObject jsonBody = createJsonPayload(base64Image, 1);
-    String result = sendRequestToOpenAI(jsonBody);
+    long estimatedTokens = RateLimiter.estimateImageRequestTokens(imageToProcess.getWidth(), imageToProcess.getHeight(), prompt, 1);
+    String result = sendCachedRequest(jpeg, 1, batch, estimatedTokens, event);
 
     if (result.startsWith("Error")) {
+      commitEvent(event, imageToProcess, 1, 0, 0);
       throw new RuntimeException(result);
     }
 
@@ -113,12 +135,22 @@ public class ImageAnalysis {
     int totalTokens = usage.getInt("total_tokens");
     int promptTokens = usage.getInt("prompt_tokens");
     int completionTokens = usage.getInt("completion_tokens");
+    recordTokens(promptTokens, completionTokens);
+    commitEvent(event, imageToProcess, 1, promptTokens, completionTokens);
     return new ProcessingResult<>(message.getString("content"), totalTokens, promptTokens, completionTokens);
   }
 
   public ProcessingResult<String[]> process(BufferedImage bufferedImage, int answers) throws IOException {
+    return process(bufferedImage, answers, 0);
+  }
+
+  /**
+   * @param batch how many requests for answers to the same image came before this one, 0 for the first. A later
+   *              batch is cached apart from the earlier ones, so that it gets answers of its own.
+   */
+  public ProcessingResult<String[]> process(BufferedImage bufferedImage, int answers, int batch) throws IOException {
     if (answers == 1) {
-      ProcessingResult<String> result = process(bufferedImage);
+      ProcessingResult<String> result = processSingle(bufferedImage, batch);
       return new ProcessingResult<>(new String[]{result.content()},
           result.totalTokens(),
           result.promptTokens(),
@@ -126,6 +158,9 @@ public class ImageAnalysis {
       );
     }
 
+    ImageAnalysisEvent event = new ImageAnalysisEvent();
+    event.begin();
+
     BufferedImage imageToProcess;
 
     // For models that require whole image processing, don't scale the image down
@@ -134,22 +169,28 @@ public class ImageAnalysis {
       imageToProcess = bufferedImage;
     } else {
       ImageResizer imageResizer = ImageResizer.getStandardOpenAIImageResizer();
-      imageToProcess = imageResizer.resizeImageToLimits(bufferedImage);
+      try (Metrics.Stopwatch ignored = Metrics.getInstance().start(Metrics.STAGE_RESIZE)) {
+        imageToProcess = imageResizer.resizeImageToLimits(bufferedImage);
+      }
     }
 
-    String base64Image = convertBufferedImageToBase64(imageToProcess, "jpg");
+    byte[] jpeg;
+    try (Metrics.Stopwatch ignored = Metrics.getInstance().start(Metrics.STAGE_JPEG_ENCODE)) {
+      jpeg = convertBufferedImage(imageToProcess, "jpg");
+    }
 
     if (logger.isDebugEnabled()) {
       Path tempPath = System.getProperty("java.io.tmpdir") != null ? Path.of(System.getProperty("java.io.tmpdir")) : Path.of(".");
-      Path file = tempPath.resolve("image-" + base64Image.hashCode() + ".jpg");
+      Path file = tempPath.resolve("image-" + Arrays.hashCode(jpeg) + ".jpg");
       logger.debug("Writing image to " + file);
-      ImageIO.write(imageToProcess, "jpg", file.toFile());
+      Files.write(file, jpeg);
     }
 
-    JSONObject jsonBody = createJsonPayload(base64Image, answers);
-    String result = sendRequestToOpenAI(jsonBody);
+    long estimatedTokens = RateLimiter.estimateImageRequestTokens(imageToProcess.getWidth(), imageToProcess.getHeight(), prompt, answers);
+    String result = sendCachedRequest(jpeg, answers, batch, estimatedTokens, event);
 
     if (result.startsWith("Error")) {
+      commitEvent(event, imageToProcess, answers, 0, 0);
       throw new RuntimeException(result);
     }
 
@@ -166,6 +207,8 @@ public class ImageAnalysis {
       int totalTokens = usage.getInt("total_tokens");
       int promptTokens = usage.getInt("prompt_tokens");
       int completionTokens = usage.getInt("completion_tokens");
+      recordTokens(promptTokens, completionTokens);
+      commitEvent(event, imageToProcess, answers, promptTokens, completionTokens);
       return new ProcessingResult<>(results, totalTokens, promptTokens, completionTokens);
     } catch (Exception e) {
       logger.debug("Exceptional result: " + result);
@@ -173,6 +216,67 @@ public class ImageAnalysis {
     }
   }
 
+  private static void recordTokens(long promptTokens, long completionTokens) {
+    Metrics metrics = Metrics.getInstance();
+    metrics.add(Metrics.PROMPT_TOKENS, promptTokens);
+    metrics.add(Metrics.COMPLETION_TOKENS, completionTokens);
+  }
+
+  private void commitEvent(ImageAnalysisEvent event, BufferedImage image, int answers, long promptTokens, long completionTokens) {
+    event.end();
+    if (event.shouldCommit()) {
+      event.model = model;
+      event.answers = answers;
+      event.width = image.getWidth();
+      event.height = image.getHeight();
+      event.promptTokens = promptTokens;
+      event.completionTokens = completionTokens;
+      event.commit();
+    }
+  }
+
+  /**
+   * Sends the request unless an identical one has been answered before. A cached answer reports zero token usage,
+   * since nothing was spent on it.
+   *
+   * @param batch see {@link #process(BufferedImage, int, int)}
+   * @param event receives the size of the request and the number of retries
+   */
+  private String sendCachedRequest(byte[] jpeg, int n, int batch, long estimatedTokens, ImageAnalysisEvent event)
+      throws IOException {
+    ResponseCache cache = ResponseCache.getInstance();
+    if (cache == null) {
+      return sendRequestToOpenAI(createRequestBody(jpeg, n), estimatedTokens, requestScope, event);
+    }
+
+    String key = ResponseCache.createKey(model, prompt, jpeg, n, batch);
+    String cached = cache.get(key);
+    if (cached != null) {
+      logger.info("Using cached response " + key);
+      event.cached = true;
+      JSONObject jsonObject = new JSONObject(cached);
+      jsonObject.put("usage", new JSONObject()
+          .put("total_tokens", 0)
+          .put("prompt_tokens", 0)
+          .put("completion_tokens", 0));
+      return jsonObject.toString();
+    }
+
+    String result = sendRequestToOpenAI(createRequestBody(jpeg, n), estimatedTokens, requestScope, event);
+    if (!result.startsWith("Error")) {
+      cache.put(key, result);
+    }
+    return result;
+  }
+
+  /**
+   * Request body of {@link #createJsonPayload(String, int)} that encodes the image while it is being sent,
+   * instead of building the whole payload as a string first.
+   */
+  private RequestBody createRequestBody(byte[] jpeg, int n) {
+    return ImageRequestBody.create(base64Image -> createJsonPayload(base64Image, n), jpeg);
+  }
+
   public JSONObject createJsonPayload(String base64Image, int n) {
     JSONObject jsonBody = new JSONObject();
 
@@ -208,41 +312,91 @@ public class ImageAnalysis {
     return jsonBody;
   }
 
+  /**
+   * Sends the request without a token estimate, only the requests-per-minute budget is applied to it.
+   */
   public static String sendRequestToOpenAI(JSONObject jsonBody) throws IOException {
-    return sendRequestToOpenAI(jsonBody, 0);
+    return sendRequestToOpenAI(jsonBody, 0L);
   }
 
-  public static String sendRequestToOpenAI(JSONObject jsonBody, int retry) throws IOException {
-    OkHttpClient client = new OkHttpClient.Builder()
-        .connectTimeout(1200, TimeUnit.SECONDS)
-        .writeTimeout(1200, TimeUnit.SECONDS)
-        .readTimeout(1200, TimeUnit.SECONDS)
-        .build();
+  /**
+   * Sends the request once the {@link RateLimiter} admits it. Rate limited and failed calls are retried with
+   * the limiter's backoff, up to the configured number of retries.
+   *
+   * @param estimatedTokens tokens the request is expected to consume, see {@link RateLimiter#estimateImageRequestTokens}
+   */
+  public static String sendRequestToOpenAI(JSONObject jsonBody, long estimatedTokens) throws IOException {
+    return sendRequestToOpenAI(RequestBody.create(jsonBody.toString(), MediaType.parse("application/json")), estimatedTokens, null, null);
+  }
 
-    RequestBody requestBody = RequestBody.create(jsonBody.toString(), MediaType.parse("application/json"));
+  /**
+   * @param requestScope the scope to register the call with, may be null
+   * @param event        receives the size of the request and the number of retries, may be null
+   * @throws CancellationException if the scope is cancelled before or while the request is sent
+   */
+  private static String sendRequestToOpenAI(RequestBody requestBody, long estimatedTokens, RequestScope requestScope,
+                                            ImageAnalysisEvent event) throws IOException {
+    HttpTransport transport = HttpTransport.getInstance();
+    OkHttpClient client = transport.getOkHttpClient();
+    RateLimiter rateLimiter = RateLimiter.getInstance();
+    Metrics metrics = Metrics.getInstance();
 
     Request request = new Request.Builder()
-        .url(COMPLETIONS_URL)
+        .url(transport.getCompletionsUrl())
         .header("Authorization", "Bearer " + System.getenv(Constants.OPENAI_API_KEY_ENV_VARIABLE))
         .header("Content-Type", "application/json")
         .post(requestBody)
         .build();
 
-    try (Response response = client.newCall(request).execute()) {
-      if (response.isSuccessful() && response.body() != null) {
-        return response.body().string();
-      } else {
-        if (response.code() == 429) {
-          if (retry < 5) {
-            Thread.sleep((retry + 1) * 3000L);
-            return sendRequestToOpenAI(jsonBody, retry + 1);
+    int maxRetries = rateLimiter.getSettings().maxRetries();
+    if (event != null) {
+      event.payloadBytes = requestBody.contentLength();
+    }
+    try {
+      for (int retry = 0; ; retry++) {
+        if (event != null) {
+          event.retries = retry;
+        }
+        if (requestScope != null) {
+          requestScope.throwIfCancelled();
+        }
+        rateLimiter.acquire(estimatedTokens);
+        Call call = client.newCall(request);
+        if (requestScope != null) {
+          requestScope.register(call);
+        }
+        try (Metrics.Stopwatch ignored = metrics.startRequest(); Response response = call.execute()) {
+          rateLimiter.update(response::header);
+          if (response.isSuccessful() && response.body() != null) {
+            return response.body().string();
+          }
+          if (response.code() == 429) {
+            metrics.increment(Metrics.HTTP_RATE_LIMITED);
+          }
+          if (!isRetryable(response.code()) || retry >= maxRetries) {
+            return "Error: " + response.code() + " - " + response.message();
+          }
+          metrics.increment(Metrics.HTTP_RETRIES);
+          long backoff = rateLimiter.backoffMillis(retry, response::header);
+          logger.warn("Request failed with {}, retrying in {} ms", response.code(), backoff);
+        } catch (IOException e) {
+          if (call.isCanceled()) {
+            throw new CancellationException("Request cancelled");
+          }
+          throw e;
+        } finally {
+          if (requestScope != null) {
+            requestScope.unregister(call);
           }
         }
-        return "Error: " + response.code() + " - " + response.message();
       }
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
     }
     return "Error: Unable to complete request";
   }
+
+  private static boolean isRetryable(int code) {
+    return code == 429 || code >= 500;
+  }
 }
@@ -0,0 +1,87 @@
+package com.github.joonasvali.bookreaderai.openai;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import org.json.JSONObject;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * JSON request body that carries a JPEG as a base64 data URL without ever holding the encoded image in memory.
+ * <p>
+ * The JSON around the image is rendered once with a placeholder in place of the image. When the body is written,
+ * the JPEG bytes are base64 encoded straight into the socket between the parts before and after the placeholder.
+ * The body can be written any number of times, so a retried call sends the same bytes again.
+ */
+class ImageRequestBody extends RequestBody {
+  private static final MediaType JSON = MediaType.parse("application/json");
+
+  private final byte[] prefix;
+  private final byte[] jpeg;
+  private final byte[] suffix;
+
+  private ImageRequestBody(byte[] prefix, byte[] jpeg, byte[] suffix) {
+    this.prefix = prefix;
+    this.jpeg = jpeg;
+    this.suffix = suffix;
+  }
+
+  /**
+   * @param payload renders the request JSON, with the given value as the base64 part of the image data URL
+   * @param jpeg    the image to send
+   */
+  static ImageRequestBody create(Function<String, JSONObject> payload, byte[] jpeg) {
+    String placeholder = "image-" + UUID.randomUUID();
+    String json = payload.apply(placeholder).toString();
+    int index = json.indexOf(placeholder);
+    if (index < 0 || json.indexOf(placeholder, index + 1) >= 0) {
+      throw new IllegalStateException("Payload must contain the image placeholder exactly once");
+    }
+    return new ImageRequestBody(
+        json.substring(0, index).getBytes(StandardCharsets.UTF_8),
+        jpeg,
+        json.substring(index + placeholder.length()).getBytes(StandardCharsets.UTF_8)
+    );
+  }
+
+  @Override
+  public MediaType contentType() {
+    return JSON;
+  }
+
+  @Override
+  public long contentLength() {
+    return prefix.length + base64Length(jpeg.length) + suffix.length;
+  }
+
+  @Override
+  public void writeTo(BufferedSink sink) throws IOException {
+    sink.write(prefix);
+    // Closing the encoder writes the final padding, but must not close the sink itself.
+    try (OutputStream encoder = Base64.getEncoder().wrap(new FilterOutputStream(sink.outputStream()) {
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+      }
+
+      @Override
+      public void close() throws IOException {
+        flush();
+      }
+    })) {
+      encoder.write(jpeg);
+    }
+    sink.write(suffix);
+  }
+
+  static long base64Length(long length) {
+    return (length + 2) / 3 * 4;
+  }
+}
@@ -0,0 +1,223 @@
+package com.github.joonasvali.bookreaderai.openai;
+
+import com.github.joonasvali.bookreaderai.metrics.Metrics;
+import com.openai.core.RequestOptions;
+import com.openai.core.http.HttpClient;
+import com.openai.core.http.HttpRequest;
+import com.openai.core.http.HttpRequestBody;
+import com.openai.core.http.HttpResponse;
+import com.openai.core.http.Headers;
+import com.openai.errors.OpenAIIoException;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.BufferedSink;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Lets the OpenAI SDK send its requests through our shared {@link OkHttpClient}.
+ * <p>
+ * The SDK's own OkHttp client builds a private connection pool and dispatcher per SDK client instance.
+ * This adapter only translates requests and responses, the connections stay owned by {@link HttpTransport}.
+ * The rate limit headers of every response are passed on to the {@link RateLimiter}, and every call is timed in
+ * {@link Metrics}. Calls sent within {@link #callInScope(RequestScope, Supplier)} are registered with its scope.
+ */
+class OpenAIHttpClientAdapter implements HttpClient {
+  private static final ThreadLocal<RequestScope> CURRENT_SCOPE = new ThreadLocal<>();
+
+  private final OkHttpClient okHttpClient;
+  private final String baseUrl;
+
+  /**
+   * @param okHttpClient the shared client to send the requests with
+   * @param baseUrl      the API root, used for requests that only carry path segments
+   */
+  OpenAIHttpClientAdapter(OkHttpClient okHttpClient, String baseUrl) {
+    this.okHttpClient = okHttpClient;
+    this.baseUrl = baseUrl;
+  }
+
+  /**
+   * Registers the calls the current thread sends while making the given call with the scope.
+   */
+  static <T> T callInScope(RequestScope requestScope, Supplier<T> call) {
+    RequestScope previous = CURRENT_SCOPE.get();
+    CURRENT_SCOPE.set(requestScope);
+    try {
+      return call.get();
+    } finally {
+      if (previous == null) {
+        CURRENT_SCOPE.remove();
+      } else {
+        CURRENT_SCOPE.set(previous);
+      }
+    }
+  }
+
+  @Override
+  public HttpResponse execute(HttpRequest request, RequestOptions requestOptions) {
+    RequestScope requestScope = CURRENT_SCOPE.get();
+    Call call = newCall(request, requestOptions, requestScope);
+    try (Metrics.Stopwatch ignored = Metrics.getInstance().startRequest()) {
+      return toResponse(call.execute());
+    } catch (IOException e) {
+      throw new OpenAIIoException("Request failed", e);
+    } finally {
+      unregister(call, requestScope);
+      closeBody(request);
+    }
+  }
+
+  @Override
+  public CompletableFuture<HttpResponse> executeAsync(HttpRequest request, RequestOptions requestOptions) {
+    CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+    RequestScope requestScope = CURRENT_SCOPE.get();
+    Call call = newCall(request, requestOptions, requestScope);
+    Metrics.Stopwatch stopwatch = Metrics.getInstance().startRequest();
+    future.whenComplete((response, throwable) -> {
+      stopwatch.close();
+      unregister(call, requestScope);
+      closeBody(request);
+      if (future.isCancelled()) {
+        call.cancel();
+      }
+    });
+    call.enqueue(new Callback() {
+      @Override
+      public void onFailure(Call call, IOException e) {
+        future.completeExceptionally(new OpenAIIoException("Request failed", e));
+      }
+
+      @Override
+      public void onResponse(Call call, Response response) {
+        future.complete(toResponse(response));
+      }
+    });
+    return future;
+  }
+
+  @Override
+  public void close() {
+    // The underlying client is shared and outlives any single SDK client.
+  }
+
+  private Call newCall(HttpRequest request, RequestOptions requestOptions, RequestScope requestScope) {
+    Call call = okHttpClient.newCall(toRequest(request));
+    if (requestOptions.getTimeout() != null) {
+      call.timeout().timeout(requestOptions.getTimeout().toMillis(), TimeUnit.MILLISECONDS);
+    }
+    if (requestScope != null) {
+      requestScope.register(call);
+    }
+    return call;
+  }
+
+  private static void unregister(Call call, RequestScope requestScope) {
+    if (requestScope != null) {
+      requestScope.unregister(call);
+    }
+  }
+
+  private Request toRequest(HttpRequest request) {
+    HttpUrl.Builder url = HttpUrl.get(request.url() != null ? request.url() : baseUrl).newBuilder();
+    for (String segment : request.pathSegments()) {
+      url.addPathSegment(segment);
+    }
+    for (String key : request.queryParams().keys()) {
+      for (String value : request.queryParams().values(key)) {
+        url.addQueryParameter(key, value);
+      }
+    }
+
+    Request.Builder builder = new Request.Builder().url(url.build());
+    for (String name : request.headers().names()) {
+      for (String value : request.headers().values(name)) {
+        builder.addHeader(name, value);
+      }
+    }
+
+    RequestBody body = request.body() != null ? toRequestBody(request.body()) : null;
+    if (body == null && requiresBody(request.method().name())) {
+      body = RequestBody.create(new byte[0], null);
+    }
+    return builder.method(request.method().name(), body).build();
+  }
+
+  private static boolean requiresBody(String method) {
+    return method.equals("POST") || method.equals("PUT") || method.equals("PATCH");
+  }
+
+  private static RequestBody toRequestBody(HttpRequestBody body) {
+    MediaType mediaType = body.contentType() != null ? MediaType.parse(body.contentType()) : null;
+    return new RequestBody() {
+      @Override
+      public MediaType contentType() {
+        return mediaType;
+      }
+
+      @Override
+      public long contentLength() {
+        return body.contentLength();
+      }
+
+      @Override
+      public boolean isOneShot() {
+        return !body.repeatable();
+      }
+
+      @Override
+      public void writeTo(BufferedSink sink) {
+        body.writeTo(sink.outputStream());
+      }
+    };
+  }
+
+  private static HttpResponse toResponse(Response response) {
+    RateLimiter.getInstance().update(response::header);
+    if (response.code() == 429) {
+      Metrics.getInstance().increment(Metrics.HTTP_RATE_LIMITED);
+    }
+    Headers.Builder headers = Headers.builder();
+    for (String name : response.headers().names()) {
+      headers.put(name, response.headers(name));
+    }
+    Headers builtHeaders = headers.build();
+    return new HttpResponse() {
+      @Override
+      public int statusCode() {
+        return response.code();
+      }
+
+      @Override
+      public Headers headers() {
+        return builtHeaders;
+      }
+
+      @Override
+      public InputStream body() {
+        return response.body().byteStream();
+      }
+
+      @Override
+      public void close() {
+        response.close();
+      }
+    };
+  }
+
+  private static void closeBody(HttpRequest request) {
+    if (request.body() != null) {
+      request.body().close();
+    }
+  }
+}
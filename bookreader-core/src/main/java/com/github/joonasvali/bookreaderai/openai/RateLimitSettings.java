@@ -0,0 +1,41 @@
+package com.github.joonasvali.bookreaderai.openai;
+
+import java.util.Properties;
+
+/**
+ * Initial budgets of the {@link RateLimiter}. The limits reported by the API in the {@code x-ratelimit-limit-*}
+ * headers replace the configured ones as soon as the first response arrives.
+ *
+ * @param requestsPerMinute  requests admitted per minute
+ * @param tokensPerMinute    estimated tokens admitted per minute
+ * @param maxRetries         how many times a rate limited or failed image request is retried
+ * @param baseBackoffMillis  backoff of the first retry, doubled with every further retry
+ * @param maxBackoffMillis   upper bound of a single backoff
+ */
+public record RateLimitSettings(int requestsPerMinute, long tokensPerMinute, int maxRetries,
+                                long baseBackoffMillis, long maxBackoffMillis) {
+
+  public static final String REQUESTS_PER_MINUTE_KEY = "ratelimit.requestsPerMinute";
+  public static final String TOKENS_PER_MINUTE_KEY = "ratelimit.tokensPerMinute";
+  public static final String MAX_RETRIES_KEY = "ratelimit.maxRetries";
+  public static final String BASE_BACKOFF_MILLIS_KEY = "ratelimit.baseBackoffMillis";
+  public static final String MAX_BACKOFF_MILLIS_KEY = "ratelimit.maxBackoffMillis";
+
+  public static RateLimitSettings defaults() {
+    return new RateLimitSettings(500, 30000, 5, 1000, 60000);
+  }
+
+  /**
+   * Reads the settings from the given properties, falling back to {@link #defaults()} for every missing key.
+   */
+  public static RateLimitSettings fromProperties(Properties properties) {
+    RateLimitSettings defaults = defaults();
+    return new RateLimitSettings(
+        Integer.parseInt(properties.getProperty(REQUESTS_PER_MINUTE_KEY, String.valueOf(defaults.requestsPerMinute())).trim()),
+        Long.parseLong(properties.getProperty(TOKENS_PER_MINUTE_KEY, String.valueOf(defaults.tokensPerMinute())).trim()),
+        Integer.parseInt(properties.getProperty(MAX_RETRIES_KEY, String.valueOf(defaults.maxRetries())).trim()),
+        Long.parseLong(properties.getProperty(BASE_BACKOFF_MILLIS_KEY, String.valueOf(defaults.baseBackoffMillis())).trim()),
+        Long.parseLong(properties.getProperty(MAX_BACKOFF_MILLIS_KEY, String.valueOf(defaults.maxBackoffMillis())).trim())
+    );
+  }
+}
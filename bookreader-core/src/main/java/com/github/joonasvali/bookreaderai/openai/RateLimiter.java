@@ -0,0 +1,297 @@
+package com.github.joonasvali.bookreaderai.openai;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Process-wide scheduler that keeps all OpenAI calls within the requests-per-minute and tokens-per-minute budgets.
+ * <p>
+ * Both budgets are token buckets that refill continuously over a minute. A call reserves its request and its
+ * estimated tokens before it is sent and waits until the buckets have refilled enough to cover the reservation.
+ * Reservations are taken in arrival order, so parallel workers queue up behind each other instead of all firing
+ * at once and all getting a 429.
+ * <p>
+ * The buckets follow what the API reports: the {@code x-ratelimit-*} headers of every response replace the
+ * configured limits and cap the remaining budget, and a {@code Retry-After} header pauses every caller.
+ */
+public class RateLimiter {
+  private static final Logger logger = LoggerFactory.getLogger(RateLimiter.class);
+
+  private static final long MINUTE_MILLIS = 60_000;
+  // Tokens expected per answer, the actual length of an answer is not known before it arrives.
+  private static final int ESTIMATED_COMPLETION_TOKENS = 1000;
+  private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+
+  private static RateLimiter instance;
+
+  private final RateLimitSettings settings;
+  private final Bucket requests;
+  private final Bucket tokens;
+  private long pausedUntil;
+
+  public RateLimiter(RateLimitSettings settings) {
+    this.settings = settings;
+    long now = System.currentTimeMillis();
+    this.requests = new Bucket(settings.requestsPerMinute(), now);
+    this.tokens = new Bucket(settings.tokensPerMinute(), now);
+  }
+
+  /**
+   * Replaces the shared rate limiter with one built from the given properties.
+   */
+  public static synchronized void configure(Properties properties) {
+    RateLimitSettings settings = RateLimitSettings.fromProperties(properties);
+    logger.debug("Rate limit settings: {}", settings);
+    instance = new RateLimiter(settings);
+  }
+
+  public static synchronized RateLimiter getInstance() {
+    if (instance == null) {
+      instance = new RateLimiter(RateLimitSettings.defaults());
+    }
+    return instance;
+  }
+
+  public RateLimitSettings getSettings() {
+    return settings;
+  }
+
+  /**
+   * Blocks until one request using the given number of tokens fits into the budgets.
+   *
+   * @param estimatedTokens tokens the request is expected to consume, prompt and answers included
+   */
+  public void acquire(long estimatedTokens) throws InterruptedException {
+    long waitMillis = reserve(estimatedTokens, System.currentTimeMillis());
+    if (waitMillis > 0) {
+      logger.debug("Waiting {} ms for rate limit budget", waitMillis);
+      Thread.sleep(waitMillis);
+    }
+  }
+
+  /**
+   * Takes the request and the tokens out of the buckets, letting them go negative, and returns how long the caller
+   * has to wait until the debt has been refilled.
+   */
+  synchronized long reserve(long estimatedTokens, long now) {
+    requests.refill(now);
+    tokens.refill(now);
+
+    // A call larger than the whole budget would never fit, let it through once the bucket is full.
+    requests.take(1);
+    tokens.take(Math.min(estimatedTokens, tokens.capacity));
+
+    long waitMillis = Math.max(requests.millisUntilPaid(), tokens.millisUntilPaid());
+    return Math.max(waitMillis, pausedUntil - now);
+  }
+
+  /**
+   * Adjusts the budgets to what the API reported in a response.
+   *
+   * @param headers looks up a response header by name, returning null if the header is missing
+   */
+  public void update(Function<String, String> headers) {
+    update(headers, System.currentTimeMillis());
+  }
+
+  synchronized void update(Function<String, String> headers, long now) {
+    requests.refill(now);
+    tokens.refill(now);
+
+    Long requestLimit = parseLong(headers.apply("x-ratelimit-limit-requests"));
+    if (requestLimit != null && requestLimit > 0) {
+      requests.capacity = requestLimit;
+    }
+    Long tokenLimit = parseLong(headers.apply("x-ratelimit-limit-tokens"));
+    if (tokenLimit != null && tokenLimit > 0) {
+      tokens.capacity = tokenLimit;
+    }
+
+    Long remainingRequests = parseLong(headers.apply("x-ratelimit-remaining-requests"));
+    if (remainingRequests != null) {
+      requests.level = Math.min(requests.level, remainingRequests);
+    }
+    Long remainingTokens = parseLong(headers.apply("x-ratelimit-remaining-tokens"));
+    if (remainingTokens != null) {
+      tokens.level = Math.min(tokens.level, remainingTokens);
+    }
+
+    if (remainingRequests != null && remainingRequests <= 0) {
+      pauseUntil(now + parseDurationMillis(headers.apply("x-ratelimit-reset-requests")), now);
+    }
+    if (remainingTokens != null && remainingTokens <= 0) {
+      pauseUntil(now + parseDurationMillis(headers.apply("x-ratelimit-reset-tokens")), now);
+    }
+  }
+
+  /**
+   * Returns how long to wait before the given retry. The server's {@code Retry-After} wins if there is one,
+   * otherwise the backoff doubles with every retry and a random part of it is dropped so that parallel workers
+   * do not retry in lockstep. Either way, every caller waits out the pause, not only the one that was rejected.
+   *
+   * @param retry   zero for the first retry
+   * @param headers looks up a header of the rejected response, returning null if the header is missing
+   */
+  public long backoffMillis(int retry, Function<String, String> headers) {
+    long now = System.currentTimeMillis();
+    long retryAfter = parseRetryAfterMillis(headers);
+    long backoff;
+    if (retryAfter > 0) {
+      backoff = retryAfter;
+    } else {
+      long exponential = settings.baseBackoffMillis() << Math.min(retry, 30);
+      long capped = Math.min(settings.maxBackoffMillis(), exponential);
+      backoff = capped / 2 + ThreadLocalRandom.current().nextLong(capped / 2 + 1);
+    }
+    synchronized (this) {
+      pauseUntil(now + backoff, now);
+    }
+    return backoff;
+  }
+
+  private void pauseUntil(long until, long now) {
+    if (until > pausedUntil && until > now) {
+      logger.debug("Pausing requests for {} ms", until - now);
+      pausedUntil = until;
+    }
+  }
+
+  /**
+   * Estimates the tokens of an image request before it is sent, so that it can be admitted against the
+   * tokens-per-minute budget.
+   *
+   * @param width   width of the image as it is sent
+   * @param height  height of the image as it is sent
+   * @param prompt  the text part of the request
+   * @param answers how many answers are requested
+   */
+  public static long estimateImageRequestTokens(int width, int height, String prompt, int answers) {
+    return estimateImageTokens(width, height) + estimateTextTokens(prompt) + (long) answers * ESTIMATED_COMPLETION_TOKENS;
+  }
+
+  /**
+   * Estimates the tokens of a chat request with the given texts, answer included.
+   */
+  public static long estimateTextRequestTokens(String... texts) {
+    long total = ESTIMATED_COMPLETION_TOKENS;
+    for (String text : texts) {
+      total += estimateTextTokens(text);
+    }
+    return total;
+  }
+
+  /**
+   * Tokens of a high detail image: the image is fit into 2048x2048, scaled so that the short side is at most 768
+   * and then charged 170 tokens per 512x512 tile, plus a base of 85.
+   * <p>
+   * https://platform.openai.com/docs/guides/vision
+   */
+  public static long estimateImageTokens(int width, int height) {
+    double w = width;
+    double h = height;
+    double fit = Math.min(1.0, 2048.0 / Math.max(w, h));
+    w *= fit;
+    h *= fit;
+    double shortSide = Math.min(1.0, 768.0 / Math.min(w, h));
+    w *= shortSide;
+    h *= shortSide;
+    long tiles = (long) Math.ceil(w / 512) * (long) Math.ceil(h / 512);
+    return 85 + 170 * tiles;
+  }
+
+  private static long estimateTextTokens(String text) {
+    // Roughly four characters per token for latin text.
+    return text == null ? 0 : text.length() / 4 + 1;
+  }
+
+  private static long parseRetryAfterMillis(Function<String, String> headers) {
+    Long millis = parseLong(headers.apply("retry-after-ms"));
+    if (millis != null) {
+      return millis;
+    }
+    String seconds = headers.apply("Retry-After");
+    if (seconds != null) {
+      try {
+        return (long) (Double.parseDouble(seconds.trim()) * 1000);
+      } catch (NumberFormatException e) {
+        // Retry-After can also be an HTTP date, fall back to the backoff in that case.
+        logger.debug("Unsupported Retry-After value: {}", seconds);
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Parses the reset durations of the {@code x-ratelimit-reset-*} headers, such as {@code 20ms}, {@code 1s}
+   * or {@code 6m0s}.
+   *
+   * @return the duration in milliseconds, or zero if the value is missing or not understood
+   */
+  static long parseDurationMillis(String value) {
+    if (value == null) {
+      return 0;
+    }
+    Matcher matcher = DURATION_PART.matcher(value.trim());
+    double millis = 0;
+    while (matcher.find()) {
+      double amount = Double.parseDouble(matcher.group(1));
+      millis += switch (matcher.group(2)) {
+        case "h" -> amount * 3_600_000;
+        case "m" -> amount * 60_000;
+        case "s" -> amount * 1000;
+        default -> amount;
+      };
+    }
+    return (long) Math.ceil(millis);
+  }
+
+  private static Long parseLong(String value) {
+    if (value == null) {
+      return null;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Budget that refills at its capacity per minute and never holds more than its capacity.
+   */
+  private static class Bucket {
+    private long capacity;
+    private double level;
+    private long refilledAt;
+
+    private Bucket(long capacity, long now) {
+      this.capacity = capacity;
+      this.level = capacity;
+      this.refilledAt = now;
+    }
+
+    private void refill(long now) {
+      if (now > refilledAt) {
+        level = Math.min(capacity, level + (double) capacity * (now - refilledAt) / MINUTE_MILLIS);
+        refilledAt = now;
+      }
+    }
+
+    private void take(long amount) {
+      level -= amount;
+    }
+
+    private long millisUntilPaid() {
+      if (level >= 0) {
+        return 0;
+      }
+      return (long) Math.ceil(-level * MINUTE_MILLIS / capacity);
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package com.github.joonasvali.bookreaderai.openai;
+
+import okhttp3.Call;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Group of HTTP calls that belong to one piece of work, such as the transcription of a page.
+ * Cancelling the scope aborts every call of the group that is in flight and every call it starts afterwards.
+ */
+public class RequestScope {
+  private final Set<Call> calls = new HashSet<>();
+  private boolean cancelled;
+
+  /**
+   * Adds a call to the scope before it is executed. If the scope is already cancelled, the call is cancelled too.
+   */
+  public synchronized void register(Call call) {
+    if (cancelled) {
+      call.cancel();
+      return;
+    }
+    calls.add(call);
+  }
+
+  public synchronized void unregister(Call call) {
+    calls.remove(call);
+  }
+
+  public void cancel() {
+    Set<Call> inFlight;
+    synchronized (this) {
+      cancelled = true;
+      inFlight = new HashSet<>(calls);
+      calls.clear();
+    }
+    inFlight.forEach(Call::cancel);
+  }
+
+  public synchronized boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * @throws CancellationException if the scope has been cancelled
+   */
+  public void throwIfCancelled() {
+    if (isCancelled()) {
+      throw new CancellationException("Request scope cancelled");
+    }
+  }
+}
@@ -0,0 +1,294 @@
+package com.github.joonasvali.bookreaderai.openai;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of image transcription responses, addressed by a hash of everything that determines the answer:
+ * the model, the prompt, the encoded image and the number of requested answers.
+ * <p>
+ * The cache is bounded by size. When it grows over the limit, the least recently used responses are removed.
+ * The access order survives restarts through the modification time of the cache files.
+ * <p>
+ * The files are read and written under a {@link ReentrantLock} rather than a monitor, so that virtual threads
+ * waiting for the disk release their carrier thread.
+ */
+public class ResponseCache {
+  private static final Logger logger = LoggerFactory.getLogger(ResponseCache.class);
+
+  public static final String ENABLED_KEY = "cache.enabled";
+  public static final String DIRECTORY_KEY = "cache.directory";
+  public static final String MAX_MEGABYTES_KEY = "cache.maxMegabytes";
+
+  public static final long DEFAULT_MAX_MEGABYTES = 256;
+  private static final String SUFFIX = ".json";
+
+  private static ResponseCache instance;
+
+  private final Path directory;
+  private final long maxBytes;
+  // Key to file size, in access order: the first entry is the least recently used.
+  private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long totalBytes;
+  private final ReentrantLock lock = new ReentrantLock();
+
+  public ResponseCache(Path directory, long maxBytes) throws IOException {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    Files.createDirectories(directory);
+    load();
+  }
+
+  /**
+   * Replaces the shared cache with one built from the given properties, or disables it.
+   */
+  public static synchronized void configure(Properties properties) {
+    instance = null;
+    if (!Boolean.parseBoolean(properties.getProperty(ENABLED_KEY, "true"))) {
+      logger.debug("Response cache disabled");
+      return;
+    }
+    String directoryValue = properties.getProperty(DIRECTORY_KEY);
+    Path directory = directoryValue == null || directoryValue.isBlank() ? getDefaultDirectory() : Path.of(directoryValue.trim());
+    long maxMegabytes = Long.parseLong(properties.getProperty(MAX_MEGABYTES_KEY, String.valueOf(DEFAULT_MAX_MEGABYTES)).trim());
+    try {
+      instance = new ResponseCache(directory, maxMegabytes * 1024 * 1024);
+      logger.debug("Response cache: {} ({} MB)", directory, maxMegabytes);
+    } catch (IOException e) {
+      logger.warn("Unable to use response cache at " + directory + ", continuing without it", e);
+    }
+  }
+
+  /**
+   * @return the shared cache, or null if caching is disabled
+   */
+  public static synchronized ResponseCache getInstance() {
+    return instance;
+  }
+
+  public static Path getDefaultDirectory() {
+    return Path.of(System.getProperty("user.home"), ".clipsnap", "cache");
+  }
+
+  /**
+   * @return a key that changes whenever anything that affects the response changes
+   */
+  public static String createKey(String model, String prompt, String base64Image, int n) {
+    return createKey(model, prompt, base64Image, n, 0);
+  }
+
+  /**
+   * @param batch how many requests for the same answers came before this one; a later batch asks for new answers
+   *              to the same payload, so it must not be given the cached answers of an earlier one
+   */
+  public static String createKey(String model, String prompt, String base64Image, int n, int batch) {
+    MessageDigest digest = createDigest();
+    for (String part : new String[]{model, prompt, base64Image, String.valueOf(n)}) {
+      update(digest, (part == null ? "" : part).getBytes(StandardCharsets.UTF_8));
+    }
+    updateBatch(digest, batch);
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  /**
+   * Same key as {@link #createKey(String, String, String, int)} with the base64 encoding of the given JPEG,
+   * without building the encoded image in memory.
+   */
+  public static String createKey(String model, String prompt, byte[] jpeg, int n) {
+    return createKey(model, prompt, jpeg, n, 0);
+  }
+
+  /**
+   * Same key as {@link #createKey(String, String, String, int, int)} with the base64 encoding of the given JPEG.
+   */
+  public static String createKey(String model, String prompt, byte[] jpeg, int n, int batch) {
+    MessageDigest digest = createDigest();
+    update(digest, (model == null ? "" : model).getBytes(StandardCharsets.UTF_8));
+    update(digest, (prompt == null ? "" : prompt).getBytes(StandardCharsets.UTF_8));
+    updateLength(digest, ImageRequestBody.base64Length(jpeg.length));
+    try (OutputStream encoder = Base64.getEncoder().wrap(new DigestOutputStream(OutputStream.nullOutputStream(), digest))) {
+      encoder.write(jpeg);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    update(digest, String.valueOf(n).getBytes(StandardCharsets.UTF_8));
+    updateBatch(digest, batch);
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  // The first batch leaves the key as it was before batches were told apart, so that cached responses stay valid.
+  private static void updateBatch(MessageDigest digest, int batch) {
+    if (batch > 0) {
+      update(digest, ("batch " + batch).getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void update(MessageDigest digest, byte[] bytes) {
+    updateLength(digest, bytes.length);
+    digest.update(bytes);
+  }
+
+  private static void updateLength(MessageDigest digest, long length) {
+    // Length prefix, so that moving characters from one part to the next yields a different key.
+    digest.update(String.valueOf(length).getBytes(StandardCharsets.US_ASCII));
+    digest.update((byte) ':');
+  }
+
+  /**
+   * @return the cached response, or null if there is none
+   */
+  public String get(String key) {
+    lock.lock();
+    try {
+      if (entries.get(key) == null) {
+        return null;
+      }
+      Path file = getFile(key);
+      try {
+        String content = Files.readString(file, StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        return content;
+      } catch (IOException e) {
+        logger.warn("Unable to read cached response " + file, e);
+        remove(key);
+        return null;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void put(String key, String response) {
+    byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length > maxBytes) {
+      return;
+    }
+    Path file = getFile(key);
+    lock.lock();
+    try {
+      try {
+        // Write to a temporary file first, so that a crash never leaves a half written response behind.
+        Path temp = Files.createTempFile(directory, key, ".tmp");
+        Files.write(temp, bytes);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        logger.warn("Unable to cache response " + file, e);
+        return;
+      }
+      Long previous = entries.put(key, (long) bytes.length);
+      totalBytes += bytes.length - (previous == null ? 0 : previous);
+      evict();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long getTotalBytes() {
+    lock.lock();
+    try {
+      return totalBytes;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int size() {
+    lock.lock();
+    try {
+      return entries.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void load() throws IOException {
+    List<Path> files = new ArrayList<>();
+    try (Stream<Path> stream = Files.list(directory)) {
+      stream.forEach(file -> {
+        String name = file.getFileName().toString();
+        if (name.endsWith(".tmp")) {
+          deleteQuietly(file);
+        } else if (name.endsWith(SUFFIX)) {
+          files.add(file);
+        }
+      });
+    }
+    files.sort(Comparator.comparing(ResponseCache::getLastModifiedTime));
+    for (Path file : files) {
+      String name = file.getFileName().toString();
+      long size = Files.size(file);
+      entries.put(name.substring(0, name.length() - SUFFIX.length()), size);
+      totalBytes += size;
+    }
+    evict();
+  }
+
+  private void evict() {
+    Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+    while (totalBytes > maxBytes && iterator.hasNext()) {
+      Map.Entry<String, Long> eldest = iterator.next();
+      deleteQuietly(getFile(eldest.getKey()));
+      totalBytes -= eldest.getValue();
+      iterator.remove();
+    }
+  }
+
+  private void remove(String key) {
+    Long size = entries.remove(key);
+    if (size != null) {
+      totalBytes -= size;
+    }
+    deleteQuietly(getFile(key));
+  }
+
+  private Path getFile(String key) {
+    return directory.resolve(key + SUFFIX);
+  }
+
+  private static FileTime getLastModifiedTime(Path file) {
+    try {
+      return Files.getLastModifiedTime(file);
+    } catch (IOException e) {
+      return FileTime.fromMillis(0);
+    }
+  }
+
+  private static void deleteQuietly(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      logger.warn("Unable to delete " + file, e);
+    }
+  }
+}
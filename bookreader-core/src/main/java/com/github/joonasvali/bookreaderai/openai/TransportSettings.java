@@ -0,0 +1,48 @@
+package com.github.joonasvali.bookreaderai.openai;
+
+import java.util.Properties;
+
+/**
+ * Tunables of the shared HTTP transport used for all OpenAI calls.
+ *
+ * @param maxIdleConnections how many idle keep-alive connections the pool holds on to
+ * @param keepAliveSeconds   how long an idle connection is kept before it is evicted
+ * @param http2              whether HTTP/2 is negotiated, letting concurrent calls multiplex over one connection
+ * @param maxRequests        maximum number of concurrent requests over all hosts
+ * @param maxRequestsPerHost maximum number of concurrent requests to a single host
+ * @param timeoutSeconds     connect, read and write timeout of a single call
+ * @param baseUrl            root of the OpenAI API, can point to a compatible stand-in server for testing
+ */
+public record TransportSettings(int maxIdleConnections, long keepAliveSeconds, boolean http2,
+                                int maxRequests, int maxRequestsPerHost, long timeoutSeconds, String baseUrl) {
+
+  public static final String MAX_IDLE_CONNECTIONS_KEY = "http.pool.maxIdleConnections";
+  public static final String KEEP_ALIVE_SECONDS_KEY = "http.pool.keepAliveSeconds";
+  public static final String HTTP2_KEY = "http.http2";
+  public static final String MAX_REQUESTS_KEY = "http.maxRequests";
+  public static final String MAX_REQUESTS_PER_HOST_KEY = "http.maxRequestsPerHost";
+  public static final String TIMEOUT_SECONDS_KEY = "http.timeoutSeconds";
+  public static final String BASE_URL_KEY = "http.baseUrl";
+
+  public static final String DEFAULT_BASE_URL = "https://api.openai.com/v1";
+
+  public static TransportSettings defaults() {
+    return new TransportSettings(16, 300, true, 64, 16, 1200, DEFAULT_BASE_URL);
+  }
+
+  /**
+   * Reads the settings from the given properties, falling back to {@link #defaults()} for every missing key.
+   */
+  public static TransportSettings fromProperties(Properties properties) {
+    TransportSettings defaults = defaults();
+    return new TransportSettings(
+        Integer.parseInt(properties.getProperty(MAX_IDLE_CONNECTIONS_KEY, String.valueOf(defaults.maxIdleConnections())).trim()),
+        Long.parseLong(properties.getProperty(KEEP_ALIVE_SECONDS_KEY, String.valueOf(defaults.keepAliveSeconds())).trim()),
+        Boolean.parseBoolean(properties.getProperty(HTTP2_KEY, String.valueOf(defaults.http2())).trim()),
+        Integer.parseInt(properties.getProperty(MAX_REQUESTS_KEY, String.valueOf(defaults.maxRequests())).trim()),
+        Integer.parseInt(properties.getProperty(MAX_REQUESTS_PER_HOST_KEY, String.valueOf(defaults.maxRequestsPerHost())).trim()),
+        Long.parseLong(properties.getProperty(TIMEOUT_SECONDS_KEY, String.valueOf(defaults.timeoutSeconds())).trim()),
+        properties.getProperty(BASE_URL_KEY, defaults.baseUrl()).trim()
+    );
+  }
+}
@@ -1,6 +1,10 @@
 package com.github.joonasvali.bookreaderai.textutil;
 
 public class LineUtil {
+  /**
+   * Width transcriptions are wrapped to before they are saved.
+   */
+  public static final int LINE_BREAK_CHARS = 100;
 
   /**
    * Wraps the given content so that each line does not exceed maxWidth characters.
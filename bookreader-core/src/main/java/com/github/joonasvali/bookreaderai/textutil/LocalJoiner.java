@@ -0,0 +1,107 @@
+package com.github.joonasvali.bookreaderai.textutil;
+
+import com.github.joonasvali.bookreaderai.textutil.restoration.TextSentenceSplitter;
+
+/**
+ * Joins the transcriptions of the slices of a page without a model.
+ * <p>
+ * The slices are concatenated as they are and the result is compared sentence by sentence with the approximation,
+ * the transcription of the whole page. Overlapping slices are expected to be stitched by the caller beforehand.
+ * Sentences are paired in order, so a sentence that ended up in two slices, or one that a slice missed, leaves a
+ * sentence without a pair. A pair only counts when its
+ * sentences are nearly the same and about as long, so a fragment repeated inside a sentence is not taken for it.
+ * The confidence tells how well the two texts cover each other: when it is high the joined text can be used as
+ * is, when it is low the slices need to be joined by someone who can read them.
+ */
+public class LocalJoiner {
+  // Minimum score for a sentence of the slices to be taken as the counterpart of a sentence of the approximation.
+  private static final float MATCH_THRESHOLD = 0.6f;
+  // How many sentences of the slices are looked at for the counterpart of one sentence of the approximation.
+  private static final int SEARCH_WINDOW = 3;
+  // Minimum score, scaled by how much the lengths of the two sentences differ, for a pair to cover each other.
+  // The matcher scores a sentence that contains the other one about as high as an equal one.
+  private static final float MIN_PAIR_SCORE = 0.9f;
+
+  private final TextSentenceSplitter splitter = new TextSentenceSplitter();
+  private final SentencePotentialMatcher matcher = new SentencePotentialMatcher();
+
+  public static class JoinResult {
+    private final String text;
+    private final double confidence;
+
+    public JoinResult(String text, double confidence) {
+      this.text = text;
+      this.confidence = confidence;
+    }
+
+    /**
+     * @return the slices joined into one text
+     */
+    public String getText() {
+      return text;
+    }
+
+    /**
+     * @return between 0 and 1, how well the joined text and the approximation match each other
+     */
+    public double getConfidence() {
+      return confidence;
+    }
+  }
+
+  public JoinResult join(String approximation, String[] slices) {
+    String joined = OverlapStitcher.concatenate(slices);
+    if (approximation == null || approximation.isBlank() || joined.isBlank()) {
+      return new JoinResult(joined, 0);
+    }
+
+    String[] approximationSentences = splitter.getSentences(approximation);
+    String[] joinedSentences = splitter.getSentences(joined);
+    float[] pairScores = new float[joinedSentences.length];
+
+    double coveredLength = 0;
+    double approximationLength = 0;
+    int next = 0;
+    for (String sentence : approximationSentences) {
+      int length = sentence.trim().length();
+      approximationLength += length;
+
+      int best = -1;
+      float bestScore = MATCH_THRESHOLD;
+      for (int j = next; j < Math.min(joinedSentences.length, next + SEARCH_WINDOW); j++) {
+        float score = matcher.match(sentence, joinedSentences[j]).score;
+        // On a tie the earlier sentence is taken, a sentence repeated on the page has to pair with its first copy.
+        if (best == -1 ? score >= bestScore : score > bestScore) {
+          best = j;
+          bestScore = score;
+        }
+      }
+      if (best != -1) {
+        float pairScore = Math.min(1f, bestScore) * lengthRatio(sentence, joinedSentences[best]);
+        if (pairScore >= MIN_PAIR_SCORE) {
+          coveredLength += length * pairScore;
+          pairScores[best] = pairScore;
+        }
+        next = best + 1;
+      }
+    }
+
+    double pairedLength = 0;
+    double joinedLength = 0;
+    for (int j = 0; j < joinedSentences.length; j++) {
+      int length = joinedSentences[j].trim().length();
+      joinedLength += length;
+      pairedLength += length * pairScores[j];
+    }
+
+    double coverage = approximationLength == 0 ? 0 : coveredLength / approximationLength;
+    double precision = joinedLength == 0 ? 0 : pairedLength / joinedLength;
+    return new JoinResult(joined, Math.min(coverage, precision));
+  }
+
+  private static float lengthRatio(String a, String b) {
+    int lengthA = a.trim().length();
+    int lengthB = b.trim().length();
+    return Math.max(lengthA, lengthB) == 0 ? 1f : (float) Math.min(lengthA, lengthB) / Math.max(lengthA, lengthB);
+  }
+}
@@ -0,0 +1,159 @@
+package com.github.joonasvali.bookreaderai.textutil;
+
+import com.github.joonasvali.bookreaderai.textutil.restoration.TextSentenceSplitter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reconciles the transcriptions of vertically overlapping image slices.
+ * <p>
+ * Every slice after the first repeats the bottom of the previous slice (the area above the red line). When the
+ * slices are transcribed independently, that area may end up in both transcriptions. The stitcher looks for the
+ * longest run of sentences at the end of a slice that fuzzily matches the start of the next slice, keeps the more
+ * complete version of each duplicated sentence in the earlier slice and removes it from the later one.
+ */
+public class OverlapStitcher {
+  // Minimum score for two sentences to be considered the same sentence seen by two slices.
+  private static final float OVERLAP_THRESHOLD = 0.75f;
+  // Short fragments ("the", "and") would match almost anything.
+  private static final int MIN_OVERLAP_CHARS = 8;
+  private static final int MAX_OVERLAP_SENTENCES = 6;
+
+  private final TextSentenceSplitter splitter = new TextSentenceSplitter();
+  private final SentencePotentialMatcher matcher = new SentencePotentialMatcher();
+
+  public static class StitchResult {
+    private final String[] slices;
+    private final float[] boundaryScores;
+
+    public StitchResult(String[] slices, float[] boundaryScores) {
+      this.slices = slices;
+      this.boundaryScores = boundaryScores;
+    }
+
+    /**
+     * @return the slice transcriptions with duplicated overlap sentences removed from the later slice
+     */
+    public String[] getSlices() {
+      return slices;
+    }
+
+    /**
+     * @return for every boundary between slice i and i+1, the average match score of the sentences found in both,
+     * or 0 if no overlap was detected
+     */
+    public float[] getBoundaryScores() {
+      return boundaryScores;
+    }
+
+    /**
+     * @return the reconciled slices joined into one text
+     */
+    public String getJoinedText() {
+      return concatenate(slices);
+    }
+  }
+
+  /**
+   * Joins slice transcriptions into one text as they are, starting each slice on a new line.
+   */
+  public static String concatenate(String[] slices) {
+    StringBuilder joined = new StringBuilder();
+    for (String slice : slices) {
+      if (slice == null || slice.isEmpty()) {
+        continue;
+      }
+      if (!joined.isEmpty() && !Character.isWhitespace(joined.charAt(joined.length() - 1))) {
+        joined.append("\n");
+      }
+      joined.append(slice);
+    }
+    return joined.toString();
+  }
+
+  public StitchResult stitch(String[] texts) {
+    List<List<String>> sentences = new ArrayList<>();
+    for (String text : texts) {
+      sentences.add(new ArrayList<>(Arrays.asList(splitter.getSentences(text == null ? "" : text))));
+    }
+
+    float[] boundaryScores = new float[Math.max(0, texts.length - 1)];
+    for (int i = 1; i < sentences.size(); i++) {
+      List<String> previous = sentences.get(i - 1);
+      List<String> next = sentences.get(i);
+
+      Overlap overlap = findOverlap(previous, next);
+      if (overlap.length == 0) {
+        continue;
+      }
+      boundaryScores[i - 1] = overlap.score;
+
+      int offset = previous.size() - overlap.length;
+      for (int p = 0; p < overlap.length; p++) {
+        String kept = previous.get(offset + p);
+        String duplicate = next.get(p);
+        // The slice that cut the sentence in half sees less of it, keep the longer version.
+        if (duplicate.trim().length() > kept.trim().length()) {
+          previous.set(offset + p, duplicate);
+        }
+      }
+      next.subList(0, overlap.length).clear();
+    }
+
+    String[] result = new String[sentences.size()];
+    for (int i = 0; i < sentences.size(); i++) {
+      result[i] = joinSentences(sentences.get(i));
+    }
+    return new StitchResult(result, boundaryScores);
+  }
+
+  private record Overlap(int length, float score) {
+  }
+
+  /**
+   * Finds the longest k such that the last k sentences of previous pairwise match the first k sentences of next.
+   */
+  private Overlap findOverlap(List<String> previous, List<String> next) {
+    int maxLength = Math.min(MAX_OVERLAP_SENTENCES, Math.min(previous.size(), next.size()));
+    for (int k = maxLength; k > 0; k--) {
+      int offset = previous.size() - k;
+      float scoreSum = 0;
+      boolean allMatch = true;
+      for (int p = 0; p < k; p++) {
+        float score = overlapScore(previous.get(offset + p), next.get(p));
+        if (score < OVERLAP_THRESHOLD) {
+          allMatch = false;
+          break;
+        }
+        scoreSum += score;
+      }
+      if (allMatch) {
+        return new Overlap(k, scoreSum / k);
+      }
+    }
+    return new Overlap(0, 0);
+  }
+
+  private float overlapScore(String a, String b) {
+    if (Math.min(a.trim().length(), b.trim().length()) < MIN_OVERLAP_CHARS) {
+      return 0;
+    }
+    return matcher.match(a, b).score;
+  }
+
+  private static String joinSentences(List<String> sentences) {
+    StringBuilder joined = new StringBuilder();
+    for (String sentence : sentences) {
+      if (!joined.isEmpty() && !sentence.isEmpty()) {
+        char last = joined.charAt(joined.length() - 1);
+        if (last != '\n' && last != ' ') {
+          joined.append(" ");
+        }
+      }
+      joined.append(sentence);
+    }
+    return joined.toString();
+  }
+}
@@ -1,9 +1,14 @@
 package com.github.joonasvali.bookreaderai.textutil;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+/**
+ * Finds how two sentences overlap. Instances reuse their scratch buffers between calls and are not thread-safe.
+ */
 public class SentencePotentialMatcher {
+  private final Scratch scratch = new Scratch();
 
   /**
 
@@ -202,78 +207,136 @@ public class SentencePotentialMatcher {
   /**
 
    Tries to determine if 'shortStr' is (approximately) contained within 'longStr'
-   by sliding a window of length shortStr.length() over longStr. */
+   by sliding a window of length shortStr.length() over longStr. The first window
+   with a similarity of at least 0.9 is taken.
+
+   Windows are not compared one by one. A single pass over longStr tracks, for every
+   end position, the smallest edit distance of shortStr to any text ending there
+   (Sellers' algorithm with Ukkonen's cutoff). Only windows whose end passes that
+   filter are compared exactly, and that comparison gives up as soon as the
+   distance exceeds the threshold. */
   private FuzzyContainmentResult fuzzyContainment(String shortStr, String longStr) {
-    float bestSim = 0.0f;
-    int bestIndex = -1;
     int windowLen = shortStr.length();
-    for (int i = 0; i <= longStr.length() - windowLen; i++) {
-      String window = longStr.substring(i, i + windowLen);
-      double sim = levenshteinSimilarity(shortStr, window);
-      if (sim > bestSim) {
-        bestSim = (float) sim;
-        bestIndex = i;
+    int maxDistance = getMaxDistance(windowLen);
+
+    int[] column = scratch.column(windowLen + 1);
+    for (int i = 0; i <= windowLen; i++) {
+      column[i] = i;
+    }
+    // Last row of the column that is still within maxDistance, rows below it only matter once they get back into range.
+    int lastActive = Math.min(maxDistance, windowLen);
+
+    for (int end = 0; end < longStr.length(); end++) {
+      char c = longStr.charAt(end);
+      int diagonal = 0;
+      int limit = Math.min(lastActive + 1, windowLen);
+      for (int i = 1; i <= limit; i++) {
+        int above = i <= lastActive ? column[i] : maxDistance + 1;
+        int cost = shortStr.charAt(i - 1) == c ? 0 : 1;
+        column[i] = Math.min(Math.min(diagonal + cost, above + 1), column[i - 1] + 1);
+        diagonal = above;
       }
-      if (bestSim >= 0.9f) {
-        // Early exit if we already have a high similarity
-        break;
+      lastActive = limit;
+      while (lastActive > 0 && column[lastActive] > maxDistance) {
+        lastActive--;
       }
-    }
 
-    // If we found a perfect 1.0 but shortStr is truly a "sub-sentence", slightly reduce it
-    if (bestSim == 1.0f && shortStr.length() < longStr.length()) {
-      bestSim = 0.98f;
+      int start = end - windowLen + 1;
+      if (lastActive == windowLen && start >= 0) {
+        int distance = boundedLevenshteinDistance(shortStr, longStr, start, maxDistance);
+        if (distance <= maxDistance) {
+          float similarity = (float) levenshteinSimilarity(distance, windowLen);
+          // If we found a perfect 1.0 but shortStr is truly a "sub-sentence", slightly reduce it
+          if (similarity == 1.0f && shortStr.length() < longStr.length()) {
+            similarity = 0.98f;
+          }
+          return new FuzzyContainmentResult(similarity, start);
+        }
+      }
     }
+    return null;
+  }
 
-    return bestSim >= 0.9f ? new FuzzyContainmentResult(bestSim, bestIndex) : null;
+  /**
+
+   The largest edit distance between strings of the given length that still reaches a similarity of 0.9. */
+  private static int getMaxDistance(int length) {
+    int maxDistance = 0;
+    while (maxDistance < length && (float) levenshteinSimilarity(maxDistance + 1, length) >= 0.9f) {
+      maxDistance++;
+    }
+    return maxDistance;
   }
 
   /**
 
-   Computes the Levenshtein similarity between two strings (0.0 to 1.0). */
-  private double levenshteinSimilarity(String a, String b) {
-    int distance = levenshteinDistance(a, b);
-    int maxLen = Math.max(a.length(), b.length());
+   Computes the Levenshtein similarity (0.0 to 1.0) of two strings, given their distance and the length of the longer one. */
+  private static double levenshteinSimilarity(int distance, int maxLen) {
     return (maxLen == 0) ? 1.0 : 1.0 - ((double) distance / maxLen);
   }
 
   /**
 
-   Standard Levenshtein distance. */
-  private int levenshteinDistance(String a, String b) {
-    int[][] dp = new int[a.length() + 1][b.length() + 1];
-    for (int i = 0; i <= a.length(); i++) {
-      dp[i][0] = i;
-    }
-    for (int j = 0; j <= b.length(); j++) {
-      dp[0][j] = j;
+   Levenshtein distance between 'a' and the equally long window of 'text' at 'start', computed only
+   within maxDistance of the diagonal. Returns maxDistance + 1 as soon as the distance is known to be larger. */
+  private int boundedLevenshteinDistance(String a, String text, int start, int maxDistance) {
+    int length = a.length();
+    int outOfRange = maxDistance + 1;
+    int[] previous = scratch.previousRow(length + 1);
+    int[] current = scratch.currentRow(length + 1);
+    for (int j = 0; j <= length; j++) {
+      previous[j] = Math.min(j, outOfRange);
     }
-    for (int i = 1; i <= a.length(); i++) {
-      for (int j = 1; j <= b.length(); j++) {
-        int cost = (a.charAt(i - 1) == b.charAt(j - 1)) ? 0 : 1;
-        dp[i][j] = Math.min(Math.min(dp[i - 1][j] + 1, dp[i][j - 1] + 1), dp[i - 1][j - 1] + cost);
+    for (int i = 1; i <= length; i++) {
+      int from = Math.max(1, i - maxDistance);
+      int to = Math.min(length, i + maxDistance);
+      current[from - 1] = from == 1 ? Math.min(i, outOfRange) : outOfRange;
+      int rowMin = current[from - 1];
+      char c = a.charAt(i - 1);
+      for (int j = from; j <= to; j++) {
+        int cost = c == text.charAt(start + j - 1) ? 0 : 1;
+        // Cells right of the previous row's band are out of range.
+        int above = j < i + maxDistance ? previous[j] : outOfRange;
+        int value = Math.min(Math.min(previous[j - 1] + cost, above + 1), current[j - 1] + 1);
+        current[j] = Math.min(value, outOfRange);
+        rowMin = Math.min(rowMin, current[j]);
+      }
+      if (rowMin >= outOfRange) {
+        return outOfRange;
       }
+      int[] swap = previous;
+      previous = current;
+      current = swap;
     }
-    return dp[a.length()][b.length()];
+    return previous[length];
   }
 
   /**
 
    Exact longest common substring with dynamic programming. */
   private LCSResult getLongestCommonSubstring(String a, String b) {
-    int[][] dp = new int[a.length() + 1][b.length() + 1];
+    // Only the previous row is needed, so two rows are reused instead of the full matrix.
+    int[] previous = scratch.previousRow(b.length() + 1);
+    int[] current = scratch.currentRow(b.length() + 1);
+    Arrays.fill(previous, 0, b.length() + 1, 0);
+    current[0] = 0;
     int maxLen = 0, posA = 0, posB = 0;
     for (int i = 1; i <= a.length(); i++) {
       for (int j = 1; j <= b.length(); j++) {
         if (a.charAt(i - 1) == b.charAt(j - 1)) {
-          dp[i][j] = dp[i - 1][j - 1] + 1;
-          if (dp[i][j] > maxLen) {
-            maxLen = dp[i][j];
+          current[j] = previous[j - 1] + 1;
+          if (current[j] > maxLen) {
+            maxLen = current[j];
             posA = i;
             posB = j;
           }
+        } else {
+          current[j] = 0;
         }
       }
+      int[] swap = previous;
+      previous = current;
+      current = swap;
     }
     String substring = (maxLen > 0) ? a.substring(posA - maxLen, posA) : "";
     return new LCSResult(substring, posA, posB, maxLen);
@@ -338,6 +401,36 @@ public class SentencePotentialMatcher {
     }
   }
 
+  /**
+
+   Rows and columns of the dynamic programming tables, grown on demand and reused between calls. */
+  private static class Scratch {
+    private int[] column = new int[0];
+    private int[] previousRow = new int[0];
+    private int[] currentRow = new int[0];
+
+    int[] column(int length) {
+      if (column.length < length) {
+        column = new int[length];
+      }
+      return column;
+    }
+
+    int[] previousRow(int length) {
+      if (previousRow.length < length) {
+        previousRow = new int[length];
+      }
+      return previousRow;
+    }
+
+    int[] currentRow(int length) {
+      if (currentRow.length < length) {
+        currentRow = new int[length];
+      }
+      return currentRow;
+    }
+  }
+
   /**
 
    Public result type returned by match(). */
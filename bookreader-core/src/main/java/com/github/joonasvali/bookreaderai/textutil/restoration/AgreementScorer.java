@@ -0,0 +1,47 @@
+package com.github.joonasvali.bookreaderai.textutil.restoration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Measures how much independent transcriptions of the same image agree with each other.
+ * <p>
+ * The texts are aligned sentence by sentence with {@link TextAligner}. For every aligned sentence the share of
+ * texts that agree with its most common version is taken, weighted by the length of the sentence, so a differing
+ * page number counts less than a differing paragraph. Whitespace differences are ignored.
+ */
+public class AgreementScorer {
+
+  /**
+   * @return agreement between 0 and 1, where 1 means all texts say the same; 1 for fewer than two texts
+   */
+  public double score(String[] texts) {
+    if (texts == null || texts.length < 2) {
+      return 1.0;
+    }
+
+    String[][] alignedTexts = new TextAligner().alignTexts(texts).getAlignedTexts();
+    int sentences = alignedTexts[0].length;
+
+    double agreeing = 0;
+    double total = 0;
+    for (int j = 0; j < sentences; j++) {
+      Map<String, Integer> counts = new HashMap<>();
+      int longest = 0;
+      for (String[] alignedText : alignedTexts) {
+        String sentence = normalize(alignedText[j]);
+        counts.merge(sentence, 1, Integer::sum);
+        longest = Math.max(longest, sentence.length());
+      }
+      int mostCommon = counts.values().stream().max(Integer::compare).orElse(0);
+      double weight = Math.max(1, longest);
+      agreeing += weight * mostCommon / alignedTexts.length;
+      total += weight;
+    }
+    return total == 0 ? 1.0 : agreeing / total;
+  }
+
+  private String normalize(String sentence) {
+    return sentence == null ? "" : sentence.trim().replaceAll("\\s+", " ");
+  }
+}
@@ -117,103 +117,76 @@ public class TextAligner {
     return new AlignmentResult(alignedTexts, true);
   }
 
-  private int[] computeBestMapping(
-      String[] baseline, String[] candidate, SentencePotentialMatcher matcher) {
-    Map<String, DPResult> memo = new HashMap<>();
-    DPResult res = dp(0, 0, baseline, candidate, matcher, memo);
-    return res.mapping;
-  }
-
-  private static class DPResult {
-    final double totalScore;
-    final int[] mapping;  // mapping[i] = index in candidate for baseline[i], or -1 if unmatched
-
-    DPResult(double totalScore, int[] mapping) {
-      this.totalScore = totalScore;
-      this.mapping = mapping;
-    }
-  }
+  // Backpointers of the alignment table.
+  private static final byte MATCH = 0;
+  private static final byte SKIP_CANDIDATE = 1;
+  private static final byte SKIP_BASELINE = 2;
 
   /**
-
-   dp(i, j) returns the best alignment from baseline[i..] to candidate[j..].
-   We consider:
-   match baseline[i] with candidate[j] (if fuzzy match is >= MATCH_THRESHOLD)
+   Finds the alignment of baseline to candidate with the highest total match score.
+   score(i, j) is the best alignment from baseline[i..] to candidate[j..]. At each cell we consider:
+   1. match baseline[i] with candidate[j] (if fuzzy match is >= MATCH_THRESHOLD)
    2. skip candidate[j] (extra sentence in candidate)
    3. skip baseline[i] (missing sentence in candidate)
-   We use totalScore to measure alignment quality, and store the best mapping. */
-  private DPResult dp(int i, int j, String[] baseline, String[] candidate, SentencePotentialMatcher matcher, Map<String, DPResult> memo) {
+   The table is filled bottom-up keeping only two rows of scores, every cell remembers its choice, and the
+   mapping is read once by following the choices from (0, 0).
+
+   @return mapping[i] = index in candidate for baseline[i], or -1 if unmatched */
+  private int[] computeBestMapping(
+      String[] baseline, String[] candidate, SentencePotentialMatcher matcher) {
     int n = baseline.length;
     int m = candidate.length;
-    String key = i + "_" + j;
-    if (memo.containsKey(key)) {
-      return memo.get(key);
-    }
+    byte[][] choices = new byte[n][m];
+
+    // Row i + 1 and row i of the score table. Cells past the end of either text score 0.
+    double[] next = new double[m + 1];
+    double[] current = new double[m + 1];
+    for (int i = n - 1; i >= 0; i--) {
+      current[m] = 0.0;
+      for (int j = m - 1; j >= 0; j--) {
+        double bestScore = Double.NEGATIVE_INFINITY;
+        byte choice = SKIP_BASELINE;
+        boolean usedMatch = false;
+
+        MatchResult matchResult = matcher.match(baseline[i], candidate[j]);
+        if (matchResult != null && matchResult.score >= MATCH_THRESHOLD) {
+          bestScore = matchResult.score + next[j + 1];
+          choice = MATCH;
+          usedMatch = true;
+        }
 
-// If done with baseline, all are unmatched
-    if (i == n) {
-      int[] map = new int[n];
-      Arrays.fill(map, -1);
-      DPResult result = new DPResult(0.0, map);
-      memo.put(key, result);
-      return result;
-    }
-// If no more candidate sentences, all leftover baseline are unmatched
-    if (j == m) {
-      int[] map = new int[n];
-      Arrays.fill(map, -1);
-      DPResult result = new DPResult(0.0, map);
-      memo.put(key, result);
-      return result;
-    }
+        // Tie-break: prefer an actual match if scores are identical
+        double score = current[j + 1];
+        if (score > bestScore || (score == bestScore && !usedMatch)) {
+          bestScore = score;
+          choice = SKIP_CANDIDATE;
+        }
 
-    double bestScore = Double.NEGATIVE_INFINITY;
-    DPResult best = null;
-    boolean usedMatch = false;
-
-// 1) Match baseline[i] with candidate[j] if the fuzzy score >= MATCH_THRESHOLD
-    MatchResult matchResult = matcher.match(baseline[i], candidate[j]);
-    if (matchResult != null && matchResult.score >= MATCH_THRESHOLD) {
-      DPResult sub = dp(i + 1, j + 1, baseline, candidate, matcher, memo);
-      double score = matchResult.score + sub.totalScore;
-      bestScore = score;
-      int[] map = new int[n];
-      System.arraycopy(sub.mapping, 0, map, 0, n);
-      map[i] = j;
-      best = new DPResult(score, map);
-      usedMatch = true;
-    }
+        score = next[j];
+        if (score > bestScore || (score == bestScore && choice != MATCH)) {
+          bestScore = score;
+          choice = SKIP_BASELINE;
+        }
 
-// 2) Skip candidate[j] (candidate has an extra sentence)
-    {
-      DPResult sub = dp(i, j + 1, baseline, candidate, matcher, memo);
-      double score = sub.totalScore;
-      // Tie-break: prefer an actual match if scores are identical
-      if (score > bestScore || (score == bestScore && !usedMatch)) {
-        bestScore = score;
-        int[] map = new int[n];
-        System.arraycopy(sub.mapping, 0, map, 0, n);
-        best = new DPResult(score, map);
-        usedMatch = false;
+        current[j] = bestScore;
+        choices[i][j] = choice;
       }
-    }
-
-// 3) Skip baseline[i] (missing sentence in candidate)
-    {
-      DPResult sub = dp(i + 1, j, baseline, candidate, matcher, memo);
-      double score = sub.totalScore;
-      if (score > bestScore || (score == bestScore && !usedMatch)) {
-        bestScore = score;
-        int[] map = new int[n];
-        System.arraycopy(sub.mapping, 0, map, 0, n);
-        map[i] = -1;
-        best = new DPResult(score, map);
-        usedMatch = false;
+      double[] swap = next;
+      next = current;
+      current = swap;
+    }
+
+    int[] mapping = new int[n];
+    Arrays.fill(mapping, -1);
+    int i = 0;
+    int j = 0;
+    while (i < n && j < m) {
+      switch (choices[i][j]) {
+        case MATCH -> mapping[i++] = j++;
+        case SKIP_CANDIDATE -> j++;
+        default -> i++;
       }
     }
-
-    memo.put(key, best);
-    return best;
+    return mapping;
   }
 }
-
@@ -1,5 +1,6 @@
 package com.github.joonasvali.bookreaderai.textutil.restoration;
 
+import com.github.joonasvali.bookreaderai.metrics.jfr.TextRestoreEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -7,6 +8,24 @@ public class TextRestorer {
   private Logger logger = LoggerFactory.getLogger(TextRestorer.class);
 
   public String restoreText(String... texts) {
+    TextRestoreEvent event = new TextRestoreEvent();
+    event.begin();
+    String restored = restore(texts);
+    event.end();
+    if (event.shouldCommit()) {
+      if (texts != null) {
+        event.samples = texts.length;
+        for (String text : texts) {
+          event.inputChars += text == null ? 0 : text.length();
+        }
+      }
+      event.outputChars = restored.length();
+      event.commit();
+    }
+    return restored;
+  }
+
+  private String restore(String... texts) {
     TextAligner textAligner = new TextAligner();
     MajorityVoter majorityVoter = new MajorityVoter();
     StringBuilder finalVersion = new StringBuilder();
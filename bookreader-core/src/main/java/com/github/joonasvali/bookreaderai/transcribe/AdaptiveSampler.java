@@ -0,0 +1,94 @@
+package com.github.joonasvali.bookreaderai.transcribe;
+
+import com.github.joonasvali.bookreaderai.openai.ImageAnalysis;
+import com.github.joonasvali.bookreaderai.openai.ProcessingResult;
+import com.github.joonasvali.bookreaderai.textutil.restoration.AgreementScorer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * Decides how many answers an image gets. A few answers are requested first and compared with
+ * {@link AgreementScorer}; only when they disagree are more requested, up to the number the caller asked for.
+ * Clean pages get by with the first answers while damaged ones get the rest of the samples the vote needs, so a
+ * page never gets more answers than it would without adaptive sampling.
+ */
+public class AdaptiveSampler {
+  private static final Logger logger = LoggerFactory.getLogger(AdaptiveSampler.class);
+
+  private static AdaptiveSampler instance;
+
+  private final SamplingSettings settings;
+  private final AgreementScorer scorer = new AgreementScorer();
+
+  public AdaptiveSampler(SamplingSettings settings) {
+    this.settings = settings;
+  }
+
+  /**
+   * Replaces the shared sampler with one built from the given properties.
+   */
+  public static synchronized void configure(Properties properties) {
+    SamplingSettings settings = SamplingSettings.fromProperties(properties);
+    logger.debug("Sampling settings: {}", settings);
+    instance = new AdaptiveSampler(settings);
+  }
+
+  public static synchronized AdaptiveSampler getInstance() {
+    if (instance == null) {
+      instance = new AdaptiveSampler(SamplingSettings.defaults());
+    }
+    return instance;
+  }
+
+  public SamplingSettings getSettings() {
+    return settings;
+  }
+
+  /**
+   * Requests the answers for the image. Without adaptive sampling, or when a single answer is asked for, this is
+   * one request for the given number of samples.
+   *
+   * @param samples answers the caller would request without adaptive sampling, 1 if the model gives one at a time;
+   *                the image never gets more answers than this
+   * @return all answers, with the tokens of every request added up
+   */
+  public ProcessingResult<String[]> sample(ImageAnalysis imageAnalysis, BufferedImage image, int samples) throws IOException {
+    if (!settings.adaptive() || samples <= 1) {
+      return imageAnalysis.process(image, samples);
+    }
+
+    int maxSamples = Math.min(settings.maxSamples(), samples);
+    int initialSamples = Math.max(2, settings.initialSamples());
+    if (initialSamples >= maxSamples) {
+      return imageAnalysis.process(image, maxSamples);
+    }
+
+    ProcessingResult<String[]> first = imageAnalysis.process(image, initialSamples);
+    double agreement = scorer.score(first.content());
+    if (agreement >= settings.agreementThreshold()) {
+      logger.debug("Agreement {} of {} samples, no more samples needed", agreement, first.content().length);
+      return first;
+    }
+
+    int extraSamples = maxSamples - initialSamples;
+    logger.debug("Agreement {} of {} samples, requesting {} more", agreement, first.content().length, extraSamples);
+    // A batch of its own, so that the response cache does not hand the first answers back for a request of equal size.
+    ProcessingResult<String[]> extra = imageAnalysis.process(image, extraSamples, 1);
+    return merge(first, extra);
+  }
+
+  private ProcessingResult<String[]> merge(ProcessingResult<String[]> first, ProcessingResult<String[]> second) {
+    String[] content = new String[first.content().length + second.content().length];
+    System.arraycopy(first.content(), 0, content, 0, first.content().length);
+    System.arraycopy(second.content(), 0, content, first.content().length, second.content().length);
+    return new ProcessingResult<>(content,
+        first.promptTokens() + second.promptTokens(),
+        first.completionTokens() + second.completionTokens(),
+        first.totalTokens() + second.totalTokens()
+    );
+  }
+}
@@ -1,9 +1,15 @@
 package com.github.joonasvali.bookreaderai.transcribe;
 
-import com.github.joonasvali.bookreaderai.Constants;
+import com.github.joonasvali.bookreaderai.metrics.Metrics;
+import com.github.joonasvali.bookreaderai.metrics.jfr.ChatCompletionEvent;
+import com.github.joonasvali.bookreaderai.metrics.jfr.RetryEvent;
+import com.github.joonasvali.bookreaderai.openai.HttpTransport;
 import com.github.joonasvali.bookreaderai.openai.ProcessingResult;
+import com.github.joonasvali.bookreaderai.openai.RateLimiter;
+import com.github.joonasvali.bookreaderai.openai.RequestScope;
 import com.openai.client.OpenAIClient;
-import com.openai.client.okhttp.OpenAIOkHttpClient;
+import com.openai.errors.OpenAIIoException;
+import com.openai.errors.OpenAIServiceException;
 import com.openai.models.ChatCompletion;
 import com.openai.models.ChatCompletionCreateParams;
 import com.openai.models.ChatModel;
@@ -11,7 +17,10 @@ import com.openai.models.CompletionUsage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 public class AgentBase {
@@ -20,6 +29,7 @@ public class AgentBase {
   private final CompletionUsage ZERO_USAGE = CompletionUsage.builder().completionTokens(0).totalTokens(0).promptTokens(0).build();
   private final String systemPrompt;
   private final ChatModel chatModel;
+  private RequestScope requestScope;
 
 
   public AgentBase(String systemPrompt, String language, String story) {
@@ -48,6 +58,13 @@ public class AgentBase {
     return logger;
   }
 
+  /**
+   * @param requestScope the scope the calls of this agent are registered with, so that they can be cancelled
+   */
+  public void setRequestScope(RequestScope requestScope) {
+    this.requestScope = requestScope;
+  }
+
   public ProcessingResult<String> invokeWithRetry(String text, int maxRetries) {
     return new Retry<ProcessingResult<String>>(maxRetries).runWithRetry(
         () -> invoke(text)
@@ -61,9 +78,33 @@ public class AgentBase {
   }
 
   public ProcessingResult<String> invoke(String text) {
-    OpenAIClient client = OpenAIOkHttpClient.builder()
-        .apiKey(System.getenv(Constants.OPENAI_API_KEY_ENV_VARIABLE))
-        .build();
+    ChatCompletionEvent event = new ChatCompletionEvent();
+    event.begin();
+    ProcessingResult<String> result = complete(text);
+    event.end();
+    if (event.shouldCommit()) {
+      event.agent = getClass().getSimpleName();
+      event.model = chatModel.asString();
+      event.payloadChars = systemPrompt.length() + (text == null ? 0 : text.length());
+      event.promptTokens = result.promptTokens();
+      event.completionTokens = result.completionTokens();
+      event.commit();
+    }
+    return result;
+  }
+
+  private ProcessingResult<String> complete(String text) {
+    HttpTransport transport = HttpTransport.getInstance();
+    OpenAIClient client = transport.getOpenAIClient();
+    if (requestScope != null) {
+      requestScope.throwIfCancelled();
+    }
+    try {
+      RateLimiter.getInstance().acquire(RateLimiter.estimateTextRequestTokens(systemPrompt, text));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for rate limit budget", e);
+    }
 
     var builder = ChatCompletionCreateParams.builder()
         .addUserMessage(systemPrompt)
@@ -72,7 +113,15 @@ public class AgentBase {
 
 
     ChatCompletionCreateParams params = builder.build();
-    ChatCompletion chatCompletion = client.chat().completions().create(params);
+    ChatCompletion chatCompletion;
+    try {
+      chatCompletion = transport.callInScope(requestScope, () -> client.chat().completions().create(params));
+    } catch (OpenAIIoException e) {
+      if (requestScope != null && requestScope.isCancelled()) {
+        throw new CancellationException("Request cancelled");
+      }
+      throw e;
+    }
     var result = chatCompletion.choices().getFirst();
 
     var output = result.message().content().orElse("-No content-");
@@ -82,10 +131,13 @@ public class AgentBase {
       return new ProcessingResult<>(text, 0, 0, 0);
     }
 
+    CompletionUsage usage = chatCompletion.usage().orElse(ZERO_USAGE);
+    Metrics.getInstance().add(Metrics.PROMPT_TOKENS, usage.promptTokens());
+    Metrics.getInstance().add(Metrics.COMPLETION_TOKENS, usage.completionTokens());
     return new ProcessingResult<>(output,
-        chatCompletion.usage().orElse(ZERO_USAGE).promptTokens(),
-        chatCompletion.usage().orElse(ZERO_USAGE).completionTokens(),
-        chatCompletion.usage().orElse(ZERO_USAGE).totalTokens()
+        usage.promptTokens(),
+        usage.completionTokens(),
+        usage.totalTokens()
     );
   }
 
@@ -101,27 +153,57 @@ public class AgentBase {
     }
 
     public T runWithRetry(Callable<T> runnable, Predicate<T> successPredicate) {
+      RetryEvent event = new RetryEvent();
+      event.begin();
       int retries = 0;
+      Function<String, String> headers = name -> null;
       while (retries < maxRetries) {
         if (retries > 0) {
+          Metrics.getInstance().increment(Metrics.HTTP_RETRIES);
           try {
-            Thread.sleep(3000L);
+            Thread.sleep(RateLimiter.getInstance().backoffMillis(retries - 1, headers));
           } catch (InterruptedException e) {
+            // An interrupt ends the retries, as it does in the request loop of ImageAnalysis.
             Thread.currentThread().interrupt();
+            commitEvent(event, retries, false);
+            throw new CancellationException("Interrupted while waiting to retry");
           }
+          headers = name -> null;
         }
         try {
           T result = runnable.call();
           if (successPredicate.test(result)) {
+            commitEvent(event, retries + 1, true);
             return result;
           }
+        } catch (CancellationException e) {
+          commitEvent(event, retries + 1, false);
+          throw e;
+        } catch (OpenAIServiceException e) {
+          logger.warn("Failed to run with retry", e);
+          headers = name -> {
+            List<String> values = e.headers().values(name);
+            return values.isEmpty() ? null : values.getFirst();
+          };
         } catch (Exception e) {
           logger.warn("Failed to run with retry", e);
         }
         retries++;
       }
       logger.error("Failed to run with retry after {} retries", maxRetries);
+      commitEvent(event, retries, false);
       throw new RuntimeException("Unable to complete the operation after " + maxRetries + " retries");
     }
+
+    private void commitEvent(RetryEvent event, int attempts, boolean succeeded) {
+      event.end();
+      if (event.shouldCommit()) {
+        event.agent = AgentBase.this.getClass().getSimpleName();
+        event.attempts = attempts;
+        event.maxRetries = maxRetries;
+        event.succeeded = succeeded;
+        event.commit();
+      }
+    }
   }
 }
@@ -0,0 +1,316 @@
+package com.github.joonasvali.bookreaderai.transcribe;
+
+import com.github.joonasvali.bookreaderai.openai.ProcessingResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only record of the stages of a run that transcribes many pages, kept in the output folder.
+ * <p>
+ * Every finished stage of a page (the approximation, each slice, the joined text) is written as one JSON line
+ * with its result and the tokens it cost, and flushed right away. When the process dies, the next run reads the
+ * journal back and picks up every page at the stage it left, without paying for the finished stages again.
+ * <p>
+ * A page is only resumed when its configuration, see {@link #page(String, String)}, is the same as in the
+ * journal. Once a run finishes without failures the journal has served its purpose, and the next run starts a
+ * new one.
+ * <p>
+ * Pages are transcribed on virtual threads, so the journal is written under a {@link ReentrantLock} rather than a
+ * monitor, which would pin the carrier thread for as long as the disk takes.
+ */
+public class JobJournal implements Closeable {
+  private static final Logger logger = LoggerFactory.getLogger(JobJournal.class);
+
+  public static final String FILE_NAME = "journal.jsonl";
+
+  private static final String STAGE_RUN_STARTED = "run_started";
+  private static final String STAGE_RUN_FINISHED = "run_finished";
+  private static final String STAGE_PAGE_STARTED = "page_started";
+  private static final String STAGE_APPROXIMATION = "approximation";
+  private static final String STAGE_SLICE = "slice";
+  private static final String STAGE_JOINED = "joined";
+  private static final String STAGE_SAVED = "saved";
+  private static final String STAGE_FAILED = "failed";
+
+  private final Path file;
+  private final Map<String, PageJob> pages = new HashMap<>();
+  private final BufferedWriter writer;
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private JobJournal(Path file) throws IOException {
+    this.file = file;
+    String content = Files.exists(file) ? Files.readString(file, StandardCharsets.UTF_8) : "";
+    boolean finished = replay(content.lines().toList());
+    Files.createDirectories(file.getParent());
+    if (finished) {
+      logger.info("Previous run in {} finished, starting a new journal", file);
+      pages.clear();
+      this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+          StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    } else {
+      this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+          StandardOpenOption.APPEND);
+      if (!content.isEmpty() && !content.endsWith("\n")) {
+        // Keep the next entry off the line the process died writing.
+        writer.newLine();
+      }
+    }
+  }
+
+  /**
+   * Opens the journal of the output folder, reading back what an earlier run that did not finish has left in it.
+   */
+  public static JobJournal open(Path outputFolder) throws IOException {
+    return new JobJournal(outputFolder.resolve(FILE_NAME));
+  }
+
+  public Path getFile() {
+    return file;
+  }
+
+  public void runStarted(int pageCount) {
+    append(new JSONObject().put("stage", STAGE_RUN_STARTED).put("pages", pageCount));
+  }
+
+  /**
+   * Marks the run as complete, so that the next run does not resume anything from it.
+   */
+  public void runFinished() {
+    append(new JSONObject().put("stage", STAGE_RUN_FINISHED));
+  }
+
+  /**
+   * Returns the job of the page, with the stages an earlier run finished if it used the same configuration.
+   *
+   * @param configuration everything the results of the page depend on besides its name, such as the model,
+   *                      the rotation and the image file
+   */
+  public PageJob page(String pageName, String configuration) {
+    lock.lock();
+    try {
+      PageJob job = pages.get(pageName);
+      if (job == null || !job.configuration.equals(configuration)) {
+        job = new PageJob(pageName, configuration);
+        pages.put(pageName, job);
+        append(entry(job, STAGE_PAGE_STARTED).put("configuration", configuration));
+      } else if (job.hasProgress()) {
+        logger.info("Resuming {} from the journal", pageName);
+      }
+      return job;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    lock.lock();
+    try {
+      writer.close();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean replay(List<String> lines) {
+    boolean finished = false;
+    for (String line : lines) {
+      JSONObject entry;
+      try {
+        entry = new JSONObject(line);
+      } catch (JSONException e) {
+        // The process died while writing the line.
+        logger.warn("Ignoring a damaged line of the journal {}", file);
+        continue;
+      }
+      String stage = entry.optString("stage");
+      finished = STAGE_RUN_FINISHED.equals(stage);
+      if (!entry.has("page")) {
+        continue;
+      }
+      String pageName = entry.getString("page");
+      if (STAGE_PAGE_STARTED.equals(stage)) {
+        pages.put(pageName, new PageJob(pageName, entry.getString("configuration")));
+        continue;
+      }
+      PageJob job = pages.get(pageName);
+      if (job == null) {
+        continue;
+      }
+      switch (stage) {
+        case STAGE_APPROXIMATION -> job.approximation = readResult(entry);
+        case STAGE_SLICE -> job.slices.put(sliceKey(entry.getInt("slice"), entry.getInt("slices")), readResult(entry));
+        case STAGE_JOINED -> job.joined = readResult(entry);
+        case STAGE_SAVED -> job.saved = true;
+        default -> {
+        }
+      }
+    }
+    return finished;
+  }
+
+  private void append(JSONObject entry) {
+    lock.lock();
+    try {
+      writer.write(entry.toString());
+      writer.newLine();
+      writer.flush();
+    } catch (IOException e) {
+      // Losing the journal only costs the ability to resume, the transcription itself goes on.
+      logger.error("Unable to write to the journal " + file, e);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static JSONObject entry(PageJob job, String stage) {
+    return new JSONObject().put("page", job.pageName).put("stage", stage);
+  }
+
+  private static JSONObject entry(PageJob job, String stage, ProcessingResult<String> result) {
+    return entry(job, stage)
+        .put("content", result.content())
+        .put("promptTokens", result.promptTokens())
+        .put("completionTokens", result.completionTokens())
+        .put("totalTokens", result.totalTokens());
+  }
+
+  private static ProcessingResult<String> readResult(JSONObject entry) {
+    return new ProcessingResult<>(entry.optString("content"), entry.getLong("promptTokens"),
+        entry.getLong("completionTokens"), entry.getLong("totalTokens"));
+  }
+
+  private static String sliceKey(int slice, int slices) {
+    return slice + "/" + slices;
+  }
+
+  /**
+   * The stages of one page. The results read back from the journal keep the tokens they cost when they were made,
+   * callers reusing them should not count those tokens again.
+   */
+  public class PageJob {
+    private final String pageName;
+    private final String configuration;
+    private final Map<String, ProcessingResult<String>> slices = new HashMap<>();
+    private ProcessingResult<String> approximation;
+    private ProcessingResult<String> joined;
+    private boolean saved;
+
+    private PageJob(String pageName, String configuration) {
+      this.pageName = pageName;
+      this.configuration = configuration;
+    }
+
+    public String getPageName() {
+      return pageName;
+    }
+
+    /**
+     * @return the approximation of the whole page, or null if it has not been made
+     */
+    public ProcessingResult<String> getApproximation() {
+      lock.lock();
+      try {
+        return approximation;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * @param slices number of slices the page is cut into, results of a different cut do not apply
+     * @return the transcription of the slice, or null if it has not been made
+     */
+    public ProcessingResult<String> getSlice(int slice, int slices) {
+      lock.lock();
+      try {
+        return this.slices.get(sliceKey(slice, slices));
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * @return the joined text of the page before it was saved, or null if the page was not joined
+     */
+    public ProcessingResult<String> getJoined() {
+      lock.lock();
+      try {
+        return joined;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    public boolean isSaved() {
+      lock.lock();
+      try {
+        return saved;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    public void approximationDone(ProcessingResult<String> result) {
+      lock.lock();
+      try {
+        approximation = result;
+        append(entry(this, STAGE_APPROXIMATION, result));
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    public void sliceDone(int slice, int slices, ProcessingResult<String> result) {
+      lock.lock();
+      try {
+        this.slices.put(sliceKey(slice, slices), result);
+        append(entry(this, STAGE_SLICE, result).put("slice", slice).put("slices", slices));
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    public void joined(ProcessingResult<String> result) {
+      lock.lock();
+      try {
+        joined = result;
+        append(entry(this, STAGE_JOINED, result));
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    public void saved() {
+      lock.lock();
+      try {
+        saved = true;
+        append(entry(this, STAGE_SAVED));
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    public void failed(Throwable throwable) {
+      append(entry(this, STAGE_FAILED).put("error", String.valueOf(throwable)));
+    }
+
+    private boolean hasProgress() {
+      return approximation != null || !slices.isEmpty() || joined != null;
+    }
+  }
+}
@@ -0,0 +1,32 @@
+package com.github.joonasvali.bookreaderai.transcribe;
+
+import java.util.Properties;
+
+/**
+ * How the transcriptions of the slices of a page are joined.
+ *
+ * @param local         whether the slices are first joined without a model, see
+ *                      {@link com.github.joonasvali.bookreaderai.textutil.LocalJoiner}
+ * @param minConfidence confidence between 0 and 1 a local join needs to be used; below it the slices are joined by
+ *                      the content joiner model
+ */
+public record JoinSettings(boolean local, double minConfidence) {
+
+  public static final String LOCAL_KEY = "join.local";
+  public static final String MIN_CONFIDENCE_KEY = "join.minConfidence";
+
+  public static JoinSettings defaults() {
+    return new JoinSettings(true, 0.9);
+  }
+
+  /**
+   * Reads the settings from the given properties, falling back to {@link #defaults()} for every missing key.
+   */
+  public static JoinSettings fromProperties(Properties properties) {
+    JoinSettings defaults = defaults();
+    return new JoinSettings(
+        Boolean.parseBoolean(properties.getProperty(LOCAL_KEY, String.valueOf(defaults.local())).trim()),
+        Double.parseDouble(properties.getProperty(MIN_CONFIDENCE_KEY, String.valueOf(defaults.minConfidence())).trim())
+    );
+  }
+}
@@ -0,0 +1,113 @@
+package com.github.joonasvali.bookreaderai.transcribe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the stages of every page being transcribed (approximation, slices, join) on one fixed set of workers.
+ * <p>
+ * The stages of all pages wait in a single queue ordered by priority, and within a priority by arrival. A worker
+ * that becomes free takes the next stage regardless of its page, so no worker idles while any page has work, and
+ * the stages of the page the user is looking at always go before the ones of pages transcribed in the background.
+ * A stage that has started is not interrupted, the user's page gets the next free worker.
+ * <p>
+ * With no workers configured, every stage starts right away on a virtual thread of its own. Nothing waits for a
+ * worker then, so priorities do not apply; meant for batch runs with many pages in flight, which are limited by
+ * the rate limiter alone.
+ */
+public class PageScheduler {
+  private static final Logger logger = LoggerFactory.getLogger(PageScheduler.class);
+
+  public enum Priority {
+    /**
+     * The page the user is waiting for.
+     */
+    INTERACTIVE,
+    /**
+     * Pages nobody is waiting for yet, such as the ones transcribed ahead of the user or by a batch.
+     */
+    BACKGROUND
+  }
+
+  private static PageScheduler instance;
+
+  private final SchedulerSettings settings;
+  // Null when every stage gets a virtual thread of its own.
+  private final ThreadPoolExecutor pool;
+  private final AtomicLong sequence = new AtomicLong();
+
+  public PageScheduler(SchedulerSettings settings) {
+    this.settings = settings;
+    if (settings.workers() <= 0) {
+      this.pool = null;
+      return;
+    }
+    // Stages spend nearly all of their time waiting for the API, virtual threads keep the waiting cheap.
+    this.pool = new ThreadPoolExecutor(settings.workers(), settings.workers(), 0, TimeUnit.MILLISECONDS,
+        new PriorityBlockingQueue<>(), Thread.ofVirtual().name("transcription-worker-", 0).factory());
+    // Workers that already exist take every stage from the queue, so the order holds from the first stage on.
+    pool.prestartAllCoreThreads();
+  }
+
+  /**
+   * Replaces the shared scheduler with one built from the given properties.
+   */
+  public static synchronized void configure(Properties properties) {
+    SchedulerSettings settings = SchedulerSettings.fromProperties(properties);
+    logger.debug("Scheduler settings: {}", settings);
+    if (instance != null && instance.pool != null) {
+      // Stages that were already queued still run.
+      instance.pool.shutdown();
+    }
+    instance = new PageScheduler(settings);
+  }
+
+  public static synchronized PageScheduler getInstance() {
+    if (instance == null) {
+      instance = new PageScheduler(SchedulerSettings.defaults());
+    }
+    return instance;
+  }
+
+  public SchedulerSettings getSettings() {
+    return settings;
+  }
+
+  /**
+   * @return an executor that queues its tasks with the given priority
+   */
+  public Executor executor(Priority priority) {
+    if (pool == null) {
+      return task -> Thread.ofVirtual().name("transcription-stage").start(task);
+    }
+    return task -> pool.execute(new Task(task, priority, sequence.getAndIncrement()));
+  }
+
+  /**
+   * @return stages waiting for a free worker
+   */
+  public int getQueuedTasks() {
+    return pool == null ? 0 : pool.getQueue().size();
+  }
+
+  private record Task(Runnable runnable, Priority priority, long sequence) implements Runnable, Comparable<Task> {
+
+    @Override
+    public void run() {
+      runnable.run();
+    }
+
+    @Override
+    public int compareTo(Task other) {
+      int byPriority = priority.compareTo(other.priority);
+      return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package com.github.joonasvali.bookreaderai.transcribe;
+
+import com.github.joonasvali.bookreaderai.TranscriptionHints;
+import com.github.joonasvali.bookreaderai.imageutil.CutImageUtil;
+import com.github.joonasvali.bookreaderai.imageutil.PerspectiveImageUtil;
+import com.github.joonasvali.bookreaderai.metrics.Metrics;
+import com.github.joonasvali.bookreaderai.openai.ProcessingResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+/**
+ * Blocking entry point to the crop, slice, transcribe and join pipeline of {@link Transcriber}, independent of the UI.
+ */
+public class PageTranscriber {
+  private static final Logger logger = LoggerFactory.getLogger(PageTranscriber.class);
+
+  public static final int SLICE_HEIGHT_PX = 800;
+  /**
+   * Text lines a slice holds at most, so that small dense handwriting is still cut into slices of readable size.
+   */
+  public static final int SLICE_MAX_LINES = 15;
+  /**
+   * Identifies how pages are cut into slices, so that slices journaled by a run that cut pages differently are not
+   * taken for slices of this one.
+   */
+  public static final String SLICING = "line-gaps:" + SLICE_HEIGHT_PX + "x" + SLICE_MAX_LINES;
+
+  private final TranscriptionHints hints;
+  private boolean parallelSlices;
+  private String pageName;
+  private JobJournal.PageJob journal;
+
+  public PageTranscriber(TranscriptionHints hints) {
+    this.hints = hints;
+  }
+
+  public void setParallelSlices(boolean parallelSlices) {
+    this.parallelSlices = parallelSlices;
+  }
+
+  /**
+   * @param pageName name of the page, reported with the JFR events of its transcription
+   */
+  public void setPageName(String pageName) {
+    this.pageName = pageName;
+  }
+
+  /**
+   * @param journal records the finished stages of the page; stages it already holds are not run again
+   */
+  public void setJournal(JobJournal.PageJob journal) {
+    this.journal = journal;
+  }
+
+  /**
+   * Cuts the area marked by the points out of the image. If there are no points or they are at the corners of the
+   * image, the image itself is returned.
+   *
+   * @param normalizePerspective if true, the area is warped into a rectangle, otherwise its bounding box is cut out
+   */
+  public static BufferedImage cropPage(BufferedImage image, Point[] points, boolean normalizePerspective) {
+    if (points == null || PerspectiveImageUtil.arePointsAtTheCornersOfImage(image, points)) {
+      return image;
+    }
+    try (Metrics.Stopwatch ignored = Metrics.getInstance().start(Metrics.STAGE_CROP)) {
+      if (normalizePerspective) {
+        logger.info("Bounds: Using normalized perspective");
+        return PerspectiveImageUtil.normalizeImageToRectangle(image, points);
+      } else {
+        logger.info("Bounds: Using cropped image");
+        return CutImageUtil.cutImage(image, points);
+      }
+    }
+  }
+
+  /**
+   * Transcribes an already cropped page and waits for the result. See {@link Transcriber} for the pipeline.
+   *
+   * @param croppedImage     the page to transcribe
+   * @param progressListener receives the progress of the slice transcriptions from 0 to 1, may be null
+   */
+  public ProcessingResult<String> transcribe(BufferedImage croppedImage, Consumer<Float> progressListener) throws IOException {
+    Transcriber transcriber = new Transcriber(hints);
+    transcriber.setParallelSlices(parallelSlices);
+    transcriber.setPageName(pageName);
+    transcriber.setJournal(journal);
+    try {
+      return transcriber.transcribe(croppedImage, progressListener).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof UncheckedIOException uncheckedIOException) {
+        throw uncheckedIOException.getCause();
+      }
+      if (e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      throw e;
+    }
+  }
+}
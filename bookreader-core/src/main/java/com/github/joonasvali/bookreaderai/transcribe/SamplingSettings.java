@@ -0,0 +1,38 @@
+package com.github.joonasvali.bookreaderai.transcribe;
+
+import java.util.Properties;
+
+/**
+ * How many answers are requested for an image when the model can give several at once.
+ *
+ * @param adaptive           whether the first answers are checked for agreement before more are requested; when
+ *                           off every image gets the fixed number of samples of its agent
+ * @param initialSamples     answers requested first, at least 2 so that they can be compared
+ * @param maxSamples         answers an image may get in total, never more than its agent would request without
+ *                           adaptive sampling
+ * @param agreementThreshold agreement between 0 and 1 the first answers need to be accepted without more samples
+ */
+public record SamplingSettings(boolean adaptive, int initialSamples, int maxSamples, double agreementThreshold) {
+
+  public static final String ADAPTIVE_KEY = "sampling.adaptive";
+  public static final String INITIAL_SAMPLES_KEY = "sampling.initialSamples";
+  public static final String MAX_SAMPLES_KEY = "sampling.maxSamples";
+  public static final String AGREEMENT_THRESHOLD_KEY = "sampling.agreementThreshold";
+
+  public static SamplingSettings defaults() {
+    return new SamplingSettings(true, 2, 5, 0.9);
+  }
+
+  /**
+   * Reads the settings from the given properties, falling back to {@link #defaults()} for every missing key.
+   */
+  public static SamplingSettings fromProperties(Properties properties) {
+    SamplingSettings defaults = defaults();
+    return new SamplingSettings(
+        Boolean.parseBoolean(properties.getProperty(ADAPTIVE_KEY, String.valueOf(defaults.adaptive())).trim()),
+        Integer.parseInt(properties.getProperty(INITIAL_SAMPLES_KEY, String.valueOf(defaults.initialSamples())).trim()),
+        Integer.parseInt(properties.getProperty(MAX_SAMPLES_KEY, String.valueOf(defaults.maxSamples())).trim()),
+        Double.parseDouble(properties.getProperty(AGREEMENT_THRESHOLD_KEY, String.valueOf(defaults.agreementThreshold())).trim())
+    );
+  }
+}
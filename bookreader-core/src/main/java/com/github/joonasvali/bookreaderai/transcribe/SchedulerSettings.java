@@ -0,0 +1,28 @@
+package com.github.joonasvali.bookreaderai.transcribe;
+
+import java.util.Properties;
+
+/**
+ * Size of the {@link PageScheduler}.
+ *
+ * @param workers stages of the transcription pipeline that run at the same time, across all pages; 0 runs every
+ *                stage on a virtual thread of its own, without a limit or priorities
+ */
+public record SchedulerSettings(int workers) {
+
+  public static final String WORKERS_KEY = "scheduler.workers";
+
+  public static SchedulerSettings defaults() {
+    return new SchedulerSettings(16);
+  }
+
+  /**
+   * Reads the settings from the given properties, falling back to {@link #defaults()} for every missing key.
+   */
+  public static SchedulerSettings fromProperties(Properties properties) {
+    SchedulerSettings defaults = defaults();
+    return new SchedulerSettings(
+        Integer.parseInt(properties.getProperty(WORKERS_KEY, String.valueOf(defaults.workers())).trim())
+    );
+  }
+}
@@ -1,7 +1,9 @@
 package com.github.joonasvali.bookreaderai.transcribe;
 
+import com.github.joonasvali.bookreaderai.metrics.jfr.TranscriptionEvent;
 import com.github.joonasvali.bookreaderai.openai.ImageAnalysis;
 import com.github.joonasvali.bookreaderai.openai.ProcessingResult;
+import com.github.joonasvali.bookreaderai.openai.RequestScope;
 import com.github.joonasvali.bookreaderai.util.ModelUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,6 +11,7 @@ import org.slf4j.LoggerFactory;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.concurrent.CancellationException;
 
 public class SimpleTranscriberAgent {
   private static final Logger logger = LoggerFactory.getLogger(SimpleTranscriberAgent.class);
@@ -21,12 +24,22 @@ public class SimpleTranscriberAgent {
         Only output the transcribed text, nothing else. Remember, do not write explanations or meta comments.
       """;
 
+  private static final String CONTINUATION_PROMPT = "In this case you are continuing with a next slice of ongoing transcription. " +
+      "Introduce a line break to the beginning if needed. ";
+
+  private static final String OVERLAP_PROMPT = "Avoid transcribing text that's already transcribed and separated by red line on top of the image. ";
+
   private final String languageDirection;
   private final BufferedImage bufferedImage;
   private final String story;
   private final String language;
   private final int samples;
   private final String gptModel;
+  private RequestScope requestScope;
+  private String pageName;
+  private int sliceIndex = -1;
+  private boolean overlapping;
+  private int lastSampleCount;
 
   public SimpleTranscriberAgent(BufferedImage bufferedImage, String language, String story, int samples, String gptModel) {
     this.bufferedImage = bufferedImage;
@@ -45,10 +58,70 @@ public class SimpleTranscriberAgent {
     this(bufferedImage, language, story, 3, "GPT-4.1");
   }
 
+  /**
+   * @param requestScope the scope the requests of this agent are registered with, so that they can be cancelled
+   */
+  public void setRequestScope(RequestScope requestScope) {
+    this.requestScope = requestScope;
+  }
+
+  /**
+   * @param pageName name of the page the image belongs to, reported with the JFR events of the transcription
+   */
+  public void setPageName(String pageName) {
+    this.pageName = pageName;
+  }
+
+  /**
+   * @param sliceIndex index of the slice on the page the image shows, -1 if it shows the whole page
+   */
+  public void setSliceIndex(int sliceIndex) {
+    this.sliceIndex = sliceIndex;
+  }
+
+  /**
+   * @param overlapping if true, the image repeats the end of the previous slice above a red line
+   */
+  public void setOverlapping(boolean overlapping) {
+    this.overlapping = overlapping;
+  }
+
   public ProcessingResult<String> transcribe(String previousTranscription) {
-    ImageAnalysis imageAnalysis = createImageAnalysis(previousTranscription);
+    return transcribeWithPromptAddition(createPromptFromPreviousTranscription(previousTranscription));
+  }
+
+  /**
+   * Transcribes a slice that continues an earlier slice, without waiting for the earlier slice's transcription.
+   * This allows slices to be transcribed concurrently; if the slices overlap, the text above the red line may still
+   * be transcribed and has to be reconciled afterwards.
+   */
+  public ProcessingResult<String> transcribeContinuation() {
+    return transcribeWithPromptAddition(getContinuationPrompt());
+  }
+
+  private ProcessingResult<String> transcribeWithPromptAddition(String promptAddition) {
+    TranscriptionEvent event = new TranscriptionEvent();
+    event.begin();
+    ProcessingResult<String> result = transcribeImage(promptAddition);
+    event.end();
+    if (event.shouldCommit()) {
+      event.page = pageName;
+      event.sliceIndex = sliceIndex;
+      event.model = gptModel;
+      event.samples = lastSampleCount;
+      event.promptTokens = result.promptTokens();
+      event.completionTokens = result.completionTokens();
+      event.resultChars = result.content() == null ? 0 : result.content().length();
+      event.commit();
+    }
+    return result;
+  }
+
+  private ProcessingResult<String> transcribeImage(String promptAddition) {
+    ImageAnalysis imageAnalysis = createImageAnalysis(promptAddition);
     try {
       ProcessingResult<String[]> results = processImage(imageAnalysis);
+      lastSampleCount = results.content().length;
 
       ProcessingResult<String> result;
       if (results.content().length > 1) {
@@ -63,6 +136,8 @@ public class SimpleTranscriberAgent {
           result.completionTokens() + results.completionTokens(),
           result.totalTokens() + results.totalTokens()
       );
+    } catch (CancellationException e) {
+      throw e;
     } catch (Exception e) {
       logger.error("Unable to complete transcription", e);
       throw new RuntimeException(e);
@@ -70,23 +145,28 @@ public class SimpleTranscriberAgent {
   }
 
 
-  private ImageAnalysis createImageAnalysis(String previousTranscription) {
+  private ImageAnalysis createImageAnalysis(String promptAddition) {
     String prompt = SYSTEM_PROMPT
         .replace("${LANGUAGE}", languageDirection)
-        .replace("${STORY}", story) + "\n" + createPromptFromPreviousTranscription(previousTranscription);
+        .replace("${STORY}", story) + "\n" + promptAddition;
 
-    return new ImageAnalysis(prompt, gptModel);
+    ImageAnalysis imageAnalysis = new ImageAnalysis(prompt, gptModel);
+    imageAnalysis.setRequestScope(requestScope);
+    return imageAnalysis;
   }
 
   private String createPromptFromPreviousTranscription(String previousTranscription) {
     if (previousTranscription == null) {
       return "";
     }
-    return "In this case you are continuing with a next slice of ongoing transcription. " +
-        "Introduce a line break to the beginning if needed. Avoid transcribing text that's already transcribed and separated by red line on top of the image. " +
+    return getContinuationPrompt() +
         "Previous transcription ended with: ..." + getLastSentenceOrMaxOfNWords(previousTranscription);
   }
 
+  private String getContinuationPrompt() {
+    return overlapping ? CONTINUATION_PROMPT + OVERLAP_PROMPT : CONTINUATION_PROMPT;
+  }
+
   private String getLastSentenceOrMaxOfNWords(String text) {
     final int MAX_WORDS = 6;
 
@@ -117,6 +197,6 @@ public class SimpleTranscriberAgent {
   private ProcessingResult<String[]> processImage(ImageAnalysis imageAnalysis) throws IOException {
     // Some models only support n=1, so force samples to 1 when using those models
     int actualSamples = ModelUtils.supportsMultipleSamples(gptModel) ? samples : 1;
-    return imageAnalysis.process(bufferedImage, actualSamples);
+    return AdaptiveSampler.getInstance().sample(imageAnalysis, bufferedImage, actualSamples);
   }
 }
@@ -0,0 +1,106 @@
+package com.github.joonasvali.bookreaderai.transcribe;
+
+import com.github.joonasvali.bookreaderai.agents.ContentJoiner;
+import com.github.joonasvali.bookreaderai.metrics.Metrics;
+import com.github.joonasvali.bookreaderai.openai.ProcessingResult;
+import com.github.joonasvali.bookreaderai.openai.RequestScope;
+import com.github.joonasvali.bookreaderai.textutil.LocalJoiner;
+import com.github.joonasvali.bookreaderai.textutil.OverlapStitcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Joins the transcriptions of the slices of a page into one text. The slices are stitched together locally first;
+ * only when the result does not match the approximation of the page well enough is the {@link ContentJoiner}
+ * asked to do it, which saves a round trip to the model for most pages.
+ */
+public class SliceJoiner {
+  private static final Logger logger = LoggerFactory.getLogger(SliceJoiner.class);
+
+  private static SliceJoiner instance;
+
+  private final JoinSettings settings;
+
+  public SliceJoiner(JoinSettings settings) {
+    this.settings = settings;
+  }
+
+  /**
+   * Replaces the shared slice joiner with one built from the given properties.
+   */
+  public static synchronized void configure(Properties properties) {
+    JoinSettings settings = JoinSettings.fromProperties(properties);
+    logger.debug("Join settings: {}", settings);
+    instance = new SliceJoiner(settings);
+  }
+
+  public static synchronized SliceJoiner getInstance() {
+    if (instance == null) {
+      instance = new SliceJoiner(JoinSettings.defaults());
+    }
+    return instance;
+  }
+
+  public JoinSettings getSettings() {
+    return settings;
+  }
+
+  /**
+   * Joins the transcriptions of the slices of a page.
+   *
+   * @param approximatedContent the transcription of the whole page
+   * @param slices              the transcriptions of the slices, in order
+   * @param stitch              if true, the slices overlap and were transcribed without seeing each other's
+   *                            transcriptions, so the text they overlap in is removed from the start of each slice first
+   * @param requestScope        the scope the content joiner request is registered with, may be null
+   * @return the joined text, with the tokens of the slices and the content joiner if it was needed
+   */
+  public ProcessingResult<String> joinSlices(String approximatedContent, List<ProcessingResult<String>> slices, boolean stitch,
+                                             String language, String story, RequestScope requestScope) throws IOException {
+    String[] closerViews = slices.stream().map(ProcessingResult::content).toArray(String[]::new);
+    if (stitch) {
+      closerViews = new OverlapStitcher().stitch(closerViews).getSlices();
+    }
+
+    ProcessingResult<String> joined = join(approximatedContent, closerViews, language, story, requestScope);
+    long promptTokens = joined.promptTokens();
+    long completionTokens = joined.completionTokens();
+    long totalTokens = joined.totalTokens();
+    for (ProcessingResult<String> slice : slices) {
+      promptTokens += slice.promptTokens();
+      completionTokens += slice.completionTokens();
+      totalTokens += slice.totalTokens();
+    }
+    return new ProcessingResult<>(joined.content(), promptTokens, completionTokens, totalTokens);
+  }
+
+  /**
+   * @param approximatedContent the transcription of the whole page
+   * @param closerViews         the transcriptions of the slices, in order
+   * @param requestScope        the scope the content joiner request is registered with, may be null
+   * @return the joined text, with the tokens of the content joiner if it was needed
+   */
+  public ProcessingResult<String> join(String approximatedContent, String[] closerViews, String language, String story,
+                                       RequestScope requestScope) throws IOException {
+    if (settings.local()) {
+      LocalJoiner.JoinResult localJoin = new LocalJoiner().join(approximatedContent, closerViews);
+      if (localJoin.getConfidence() >= settings.minConfidence()) {
+        logger.debug("Joined slices locally with confidence {}", localJoin.getConfidence());
+        Metrics.getInstance().increment(Metrics.LOCAL_JOINS);
+        return new ProcessingResult<>(localJoin.getText(), 0, 0, 0);
+      }
+      logger.debug("Local join confidence {} is below {}, using the content joiner", localJoin.getConfidence(),
+          settings.minConfidence());
+    }
+
+    ContentJoiner contentJoiner = new ContentJoiner(language, story);
+    contentJoiner.setRequestScope(requestScope);
+    try (Metrics.Stopwatch ignored = Metrics.getInstance().start(Metrics.STAGE_CONTENT_JOINER)) {
+      return contentJoiner.process(approximatedContent, closerViews);
+    }
+  }
+}
@@ -1,15 +1,339 @@
 package com.github.joonasvali.bookreaderai.transcribe;
 
+import com.github.joonasvali.bookreaderai.ProgressUpdateUtility;
+import com.github.joonasvali.bookreaderai.TranscriptionHints;
+import com.github.joonasvali.bookreaderai.imageutil.CutImageUtil;
+import com.github.joonasvali.bookreaderai.metrics.Metrics;
+import com.github.joonasvali.bookreaderai.openai.ProcessingResult;
+import com.github.joonasvali.bookreaderai.openai.RequestScope;
+import com.github.joonasvali.bookreaderai.util.ModelUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.Point;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
+/**
+ * Non-blocking facade of the page transcription pipeline.
+ * <p>
+ * Every stage (crop, approximation, slices, join) is a step of a {@link CompletableFuture} chain, so no thread
+ * sits waiting for another stage to finish. The approximation of the whole page runs alongside the slices, since
+ * only the joiner needs it. Unless another executor is given, the stages run on the shared {@link PageScheduler}.
+ * <p>
+ * Cancelling the returned future cancels the {@link RequestScope} of the page, which aborts its HTTP calls that
+ * are in flight and makes the stages that have not started yet fail immediately. A failing stage does the same to
+ * the rest of the page.
+ */
 public class Transcriber {
-  private BufferedImage[] bufferedImages;
-  Transcriber(BufferedImage[] bufferedImages) {
-    this.bufferedImages = bufferedImages;
+  private static final Logger logger = LoggerFactory.getLogger(Transcriber.class);
+
+  private final TranscriptionHints hints;
+  private final Executor executor;
+  private boolean parallelSlices;
+  private String pageName;
+  private JobJournal.PageJob journal;
+
+  public Transcriber(TranscriptionHints hints) {
+    this(hints, PageScheduler.Priority.INTERACTIVE);
+  }
+
+  /**
+   * @param priority the priority of the stages of the page on the shared {@link PageScheduler}
+   */
+  public Transcriber(TranscriptionHints hints, PageScheduler.Priority priority) {
+    this(hints, PageScheduler.getInstance().executor(priority));
+  }
+
+  /**
+   * @param executor runs the stages of the pipeline
+   */
+  public Transcriber(TranscriptionHints hints, Executor executor) {
+    this.hints = hints;
+    this.executor = executor;
+  }
+
+  public void setParallelSlices(boolean parallelSlices) {
+    this.parallelSlices = parallelSlices;
+  }
+
+  /**
+   * @param pageName name of the page, reported with the JFR events of its transcription
+   */
+  public void setPageName(String pageName) {
+    this.pageName = pageName;
+  }
+
+  /**
+   * @param journal records the finished stages of the page; stages it already holds are not run again
+   */
+  public void setJournal(JobJournal.PageJob journal) {
+    this.journal = journal;
+  }
+
+  /**
+   * Crops the area marked by the points out of the image and transcribes it.
+   *
+   * @param normalizePerspective if true, the area is warped into a rectangle, otherwise its bounding box is cut out
+   * @param progressListener     receives the progress of the slice transcriptions from 0 to 1, may be null
+   */
+  public CompletableFuture<ProcessingResult<String>> transcribe(BufferedImage image, Point[] points, boolean normalizePerspective,
+                                                                Consumer<Float> progressListener) {
+    return transcribe(() -> image, points, normalizePerspective, progressListener);
+  }
+
+  /**
+   * Reads the image as the first stage of the pipeline, crops the area marked by the points out of it and
+   * transcribes it. Lets a caller that only holds a preview of the page defer reading the full image.
+   *
+   * @param image                supplies the image the points are on, called on a thread of the executor
+   * @param points               the corners of the area to transcribe, null for the whole image
+   * @param normalizePerspective if true, the area is warped into a rectangle, otherwise its bounding box is cut out
+   * @param progressListener     receives the progress of the slice transcriptions from 0 to 1, may be null
+   */
+  public CompletableFuture<ProcessingResult<String>> transcribe(Supplier<BufferedImage> image, Point[] points,
+                                                                boolean normalizePerspective, Consumer<Float> progressListener) {
+    long start = System.nanoTime();
+    RequestScope requestScope = new RequestScope();
+    CompletableFuture<ProcessingResult<String>> result = CompletableFuture
+        .supplyAsync(() -> PageTranscriber.cropPage(image.get(), points, normalizePerspective), executor)
+        .thenCompose(croppedImage -> transcribe(croppedImage, progressListener, requestScope));
+    return recordPage(cancelScopeOnFailure(result, requestScope), start);
+  }
+
+  /**
+   * Transcribes an already cropped page. Models that require whole image processing get the page in one
+   * request; others get an approximation of the whole page and closer views of its slices.
+   *
+   * @param progressListener receives the progress of the slice transcriptions from 0 to 1, may be null
+   */
+  public CompletableFuture<ProcessingResult<String>> transcribe(BufferedImage croppedImage, Consumer<Float> progressListener) {
+    long start = System.nanoTime();
+    RequestScope requestScope = new RequestScope();
+    return recordPage(cancelScopeOnFailure(transcribe(croppedImage, progressListener, requestScope), requestScope), start);
+  }
+
+  private CompletableFuture<ProcessingResult<String>> transcribe(BufferedImage croppedImage, Consumer<Float> progressListener,
+                                                                 RequestScope requestScope) {
+    if (ModelUtils.requiresWholeImageProcessing(hints.gptModel())) {
+      logger.info("Using {}: processing whole image without slicing", hints.gptModel());
+      SimpleTranscriberAgent transcriberAgent = createAgent(croppedImage, 1, requestScope);
+      return supply(() -> transcriberAgent.transcribe(null), requestScope).thenApply(result -> {
+        if (progressListener != null) {
+          progressListener.accept(1f);
+        }
+        if (journal != null) {
+          journal.joined(result);
+        }
+        return result;
+      });
+    }
+
+    Slices slices;
+    try (Metrics.Stopwatch ignored = Metrics.getInstance().start(Metrics.STAGE_SLICE)) {
+      slices = slice(croppedImage);
+    }
+    BufferedImage[] images = slices.images();
+
+    ProgressUpdateUtility progressUpdateUtility = new ProgressUpdateUtility(images.length);
+    if (progressListener != null) {
+      progressUpdateUtility.setListener(progressListener);
+    }
+
+    SimpleTranscriberAgent approximationAgent = createAgent(croppedImage, 1, requestScope);
+    CompletableFuture<ProcessingResult<String>> approx = supplyJournaled(() -> journal.getApproximation(),
+        () -> approximationAgent.transcribe(null), result -> journal.approximationDone(result), requestScope);
+
+    SimpleTranscriberAgent[] agents = new SimpleTranscriberAgent[images.length];
+    for (int i = 0; i < images.length; i++) {
+      agents[i] = createAgent(images[i], 3, requestScope);
+      agents[i].setSliceIndex(i);
+      agents[i].setOverlapping(slices.overlapping());
+    }
+
+    CompletableFuture<List<ProcessingResult<String>>> sliceResults = parallelSlices
+        ? transcribeInParallel(agents, progressUpdateUtility, requestScope)
+        : transcribeSequentially(agents, progressUpdateUtility, requestScope);
+
+    return approx.thenCombineAsync(sliceResults, (approxResult, results) -> {
+      logger.info("Approximated result: " + approxResult.content());
+      requestScope.throwIfCancelled();
+      ProcessingResult<String> joined;
+      try {
+        // Only slices that share lines can repeat each other's text, line gap slices are simply concatenated.
+        boolean stitch = parallelSlices && slices.overlapping();
+        joined = SliceJoiner.getInstance().joinSlices(approxResult.content(), results, stitch,
+            hints.language(), hints.story(), requestScope);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      progressUpdateUtility.setFinalTaskComplete();
+      ProcessingResult<String> result = new ProcessingResult<>(joined.content(),
+          joined.promptTokens() + approxResult.promptTokens(),
+          joined.completionTokens() + approxResult.completionTokens(),
+          joined.totalTokens() + approxResult.totalTokens()
+      );
+      if (journal != null) {
+        journal.joined(result);
+      }
+      return result;
+    }, executor);
+  }
+
+  /**
+   * The slices of a page.
+   *
+   * @param overlapping if true, every slice after the first repeats the end of the previous one above a red line
+   */
+  private record Slices(BufferedImage[] images, boolean overlapping) {
+  }
+
+  /**
+   * Cuts the page between its text lines. Pages without lines to cut between, such as pictures, are cut into equal
+   * slices that overlap instead.
+   */
+  private static Slices slice(BufferedImage croppedImage) {
+    CutImageUtil.SplitImageResult split = CutImageUtil.splitImageAtLineGaps(croppedImage, PageTranscriber.SLICE_HEIGHT_PX,
+        PageTranscriber.SLICE_MAX_LINES);
+    if (split != null) {
+      logger.debug("Cut at line gaps into {} slices", split.sections.length);
+      return new Slices(split.sections, false);
+    }
+    int zoomLevel = Math.max(1, (int) Math.floor(croppedImage.getHeight() / (float) PageTranscriber.SLICE_HEIGHT_PX));
+    logger.debug("Using zoom level: " + zoomLevel);
+    int cutOverlapPx = (croppedImage.getHeight() / (zoomLevel * 6));
+    return new Slices(CutImageUtil.splitImageIntoSections(croppedImage, zoomLevel, cutOverlapPx, true).sections, true);
+  }
+
+  /**
+   * Each slice starts when the previous one is done, and gets the end of its transcription as context.
+   */
+  private CompletableFuture<List<ProcessingResult<String>>> transcribeSequentially(SimpleTranscriberAgent[] agents,
+                                                                                  ProgressUpdateUtility progressUpdateUtility,
+                                                                                  RequestScope requestScope) {
+    CompletableFuture<List<ProcessingResult<String>>> chain = CompletableFuture.completedFuture(new ArrayList<>());
+    for (int i = 0; i < agents.length; i++) {
+      final int index = i;
+      SimpleTranscriberAgent agent = agents[i];
+      chain = chain.thenCompose(results -> {
+        String previous = results.isEmpty() ? null : results.getLast().content();
+        return supplySlice(index, agents.length, () -> agent.transcribe(previous), requestScope).thenApply(result -> {
+          progressUpdateUtility.setTranscribeTaskComplete(index, true);
+          results.add(result);
+          return results;
+        });
+      });
+    }
+    return chain;
+  }
+
+  /**
+   * All slices start at once, their overlaps are reconciled by the joiner. If a slice fails, the others are
+   * cancelled.
+   */
+  private CompletableFuture<List<ProcessingResult<String>>> transcribeInParallel(SimpleTranscriberAgent[] agents,
+                                                                                ProgressUpdateUtility progressUpdateUtility,
+                                                                                RequestScope requestScope) {
+    List<CompletableFuture<ProcessingResult<String>>> futures = new ArrayList<>();
+    for (int i = 0; i < agents.length; i++) {
+      final int index = i;
+      SimpleTranscriberAgent agent = agents[i];
+      futures.add(supplySlice(index, agents.length, () -> index == 0 ? agent.transcribe(null) : agent.transcribeContinuation(), requestScope)
+          .thenApply(result -> {
+            progressUpdateUtility.setTranscribeTaskComplete(index, true);
+            return result;
+          }));
+    }
+    CompletableFuture<List<ProcessingResult<String>>> all = CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+        .thenApply(ignored -> futures.stream().map(CompletableFuture::join).toList());
+    // The first failing slice fails the page right away, instead of once the slowest slice is done. It has already
+    // cancelled the scope, which aborts the requests of the other slices.
+    futures.forEach(future -> future.whenComplete((result, throwable) -> {
+      if (throwable != null) {
+        all.completeExceptionally(throwable);
+        futures.forEach(other -> other.cancel(true));
+      }
+    }));
+    return all;
+  }
+
+  private SimpleTranscriberAgent createAgent(BufferedImage image, int samples, RequestScope requestScope) {
+    SimpleTranscriberAgent agent = new SimpleTranscriberAgent(image, hints.language(), hints.story(), samples, hints.gptModel());
+    agent.setRequestScope(requestScope);
+    agent.setPageName(pageName);
+    return agent;
+  }
+
+  /**
+   * Runs a stage that calls the API. If it fails, the other stages of the page are cancelled right away instead of
+   * finishing work whose result would be thrown away.
+   */
+  private CompletableFuture<ProcessingResult<String>> supply(Supplier<ProcessingResult<String>> stage, RequestScope requestScope) {
+    CompletableFuture<ProcessingResult<String>> future = CompletableFuture.supplyAsync(() -> {
+      requestScope.throwIfCancelled();
+      return stage.get();
+    }, executor);
+    return cancelScopeOnFailure(future, requestScope);
+  }
+
+  private CompletableFuture<ProcessingResult<String>> supplySlice(int index, int slices, Supplier<ProcessingResult<String>> stage,
+                                                                  RequestScope requestScope) {
+    return supplyJournaled(() -> journal.getSlice(index, slices), stage,
+        result -> journal.sliceDone(index, slices, result), requestScope);
+  }
+
+  /**
+   * Reuses the result of a stage an earlier run has finished, without its tokens since they are not spent again,
+   * or runs the stage and records its result in the journal. Without a journal the stage is simply run.
+   */
+  private CompletableFuture<ProcessingResult<String>> supplyJournaled(Supplier<ProcessingResult<String>> journaled,
+                                                                      Supplier<ProcessingResult<String>> stage,
+                                                                      Consumer<ProcessingResult<String>> record,
+                                                                      RequestScope requestScope) {
+    if (journal == null) {
+      return supply(stage, requestScope);
+    }
+    ProcessingResult<String> done = journaled.get();
+    if (done != null) {
+      return CompletableFuture.completedFuture(new ProcessingResult<>(done.content(), 0, 0, 0));
+    }
+    return supply(stage, requestScope).thenApply(result -> {
+      record.accept(result);
+      return result;
+    });
+  }
+
+  /**
+   * Records the latency of the page and whether it failed. Cancelled pages are not counted.
+   */
+  private static CompletableFuture<ProcessingResult<String>> recordPage(CompletableFuture<ProcessingResult<String>> result, long start) {
+    result.whenComplete((value, throwable) -> {
+      Metrics metrics = Metrics.getInstance();
+      if (throwable == null) {
+        metrics.record(Metrics.STAGE_PAGE, System.nanoTime() - start);
+        metrics.increment(Metrics.PAGES);
+      } else if (!(throwable instanceof CancellationException) && !(throwable.getCause() instanceof CancellationException)) {
+        metrics.increment(Metrics.PAGES_FAILED);
+      }
+    });
+    return result;
   }
 
-  public CompletableFuture<String> transcribeImages() {
-    return null;
+  private static CompletableFuture<ProcessingResult<String>> cancelScopeOnFailure(CompletableFuture<ProcessingResult<String>> result,
+                                                                                  RequestScope requestScope) {
+    result.whenComplete((value, throwable) -> {
+      if (throwable != null) {
+        requestScope.cancel();
+      }
+    });
+    return result;
   }
 }
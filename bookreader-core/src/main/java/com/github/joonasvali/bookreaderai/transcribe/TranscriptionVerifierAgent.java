@@ -1,5 +1,6 @@
 package com.github.joonasvali.bookreaderai.transcribe;
 
+import com.github.joonasvali.bookreaderai.metrics.Metrics;
 import com.github.joonasvali.bookreaderai.openai.ProcessingResult;
 import com.github.joonasvali.bookreaderai.textutil.restoration.TextRestorer;
 import org.slf4j.Logger;
@@ -29,7 +30,10 @@ public class TranscriptionVerifierAgent {
     }
 
     TextRestorer textRestorer = new TextRestorer();
-    String restoredText = textRestorer.restoreText(texts);
+    String restoredText;
+    try (Metrics.Stopwatch ignored = Metrics.getInstance().start(Metrics.STAGE_TEXT_RESTORE)) {
+      restoredText = textRestorer.restoreText(texts);
+    }
 
     return new ProcessingResult<>(restoredText, 0, 0,0);
   }
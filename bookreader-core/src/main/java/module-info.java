@@ -1,7 +1,10 @@
 module bookreader.core {
   requires java.desktop;
   requires java.prefs;
+  requires jdk.httpserver;
+  requires jdk.jfr;
   requires okhttp3;
+  requires okio;
   requires openai.java.client.okhttp;
   requires openai.java.core;
   requires org.json;
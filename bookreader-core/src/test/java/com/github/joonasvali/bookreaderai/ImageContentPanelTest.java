@@ -0,0 +1,95 @@
+package com.github.joonasvali.bookreaderai;
+
+import com.github.joonasvali.bookreaderai.openai.ProcessingResult;
+import com.github.joonasvali.bookreaderai.transcribe.Transcriber;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.MockedConstruction;
+import org.mockito.Mockito;
+
+import javax.imageio.ImageIO;
+import javax.swing.*;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ImageContentPanelTest {
+
+  private static final int WIDTH = 80;
+  private static final int HEIGHT = 100;
+  private static final Point[] WHOLE_PAGE = {
+      new Point(0, 0), new Point(WIDTH, 0), new Point(WIDTH, HEIGHT), new Point(0, HEIGHT)
+  };
+  private static final Point[] TOP_HALF = {
+      new Point(0, 0), new Point(WIDTH, 0), new Point(WIDTH, HEIGHT / 2), new Point(0, HEIGHT / 2)
+  };
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  public void testEditedDraftKeepsEditsWhenCropIsTranscribed() throws Exception {
+    FileHandler fileHandler = createPageWithDraft("Draft text.");
+
+    try (MockedConstruction<Transcriber> ignored = mockTranscriber("Cropped text.")) {
+      ImageContentPanel panel = createPanel();
+      panel.getTextArea().setText("Draft text, edited.");
+
+      panel.transcribe(TOP_HALF);
+      waitForEventQueue();
+
+      assertEquals("Draft text, edited.\n\nCropped text.", panel.getTextArea().getText());
+      // Not saved yet, so the draft stays until the user saves the page.
+      assertEquals("Draft text.", fileHandler.loadDraft("page-0"));
+    }
+  }
+
+  @Test
+  public void testUntouchedDraftIsReplacedByTranscriptionOfWholePage() throws Exception {
+    FileHandler fileHandler = createPageWithDraft("Draft text.");
+
+    try (MockedConstruction<Transcriber> ignored = mockTranscriber("Page text.")) {
+      ImageContentPanel panel = createPanel();
+
+      panel.transcribe(WHOLE_PAGE);
+      waitForEventQueue();
+
+      assertEquals("Page text.", panel.getTextArea().getText());
+      assertNull(fileHandler.loadDraft("page-0"));
+    }
+  }
+
+  private FileHandler createPageWithDraft(String draft) throws IOException {
+    BufferedImage page = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+    ImageIO.write(page, "png", tempDir.resolve("page-0.png").toFile());
+    FileHandler fileHandler = new FileHandler(tempDir.resolve("output"));
+    fileHandler.saveDraft("page-0", draft);
+    return fileHandler;
+  }
+
+  private ImageContentPanel createPanel() {
+    TranscriptionHints hints = new TranscriptionHints("english", "story", "GPT-4.1");
+    return new ImageContentPanel(hints, new Path[]{tempDir.resolve("page-0.png")}, tempDir.resolve("output"),
+        PrefetchSettings.defaults(), SpeculationSettings.defaults(), null, () -> {
+    });
+  }
+
+  private static MockedConstruction<Transcriber> mockTranscriber(String text) {
+    return Mockito.mockConstruction(Transcriber.class, (mock, context) ->
+        Mockito.doReturn(CompletableFuture.completedFuture(new ProcessingResult<>(text, 0, 0, 0)))
+            .when(mock).transcribe(Mockito.<Supplier<BufferedImage>>any(), Mockito.any(), Mockito.anyBoolean(), Mockito.any()));
+  }
+
+  // The transcription result is put into the text area on the event dispatch thread.
+  private static void waitForEventQueue() throws InterruptedException, InvocationTargetException {
+    SwingUtilities.invokeAndWait(() -> {
+    });
+  }
+}
@@ -0,0 +1,128 @@
+package com.github.joonasvali.bookreaderai;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PagePrefetcherTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  public void testPageIsRotated() throws IOException {
+    Path[] paths = writePages(1, 40, 20);
+    PagePrefetcher prefetcher = new PagePrefetcher(paths, path -> 1, new PrefetchSettings(0, 64));
+    try {
+      PagePrefetcher.Page page = prefetcher.getPage(0);
+      assertEquals(40, page.decoded().getWidth());
+      assertEquals(20, page.image().getWidth());
+      assertEquals(40, page.image().getHeight());
+      assertEquals(20, page.width());
+      assertEquals(40, page.height());
+      assertEquals(1, page.rotation());
+    } finally {
+      prefetcher.close();
+    }
+  }
+
+  @Test
+  public void testNeighboursArePrefetched() throws Exception {
+    Path[] paths = writePages(5, 40, 20);
+    PagePrefetcher prefetcher = new PagePrefetcher(paths, path -> 0, new PrefetchSettings(1, 64));
+    try {
+      prefetcher.fitPreview(0, prefetcher.getPage(0), 20, 20);
+      prefetcher.getPage(2);
+      long deadline = System.currentTimeMillis() + 10000;
+      while (!(prefetcher.isCached(1) && prefetcher.isCached(3)) && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertTrue(prefetcher.isCached(1));
+      assertTrue(prefetcher.isCached(3));
+      assertFalse(prefetcher.isCached(4));
+
+      PagePrefetcher.Page next = prefetcher.getPage(3);
+      assertTrue(next.hasPreview(20, 20));
+      assertEquals(10, next.preview().getHeight());
+    } finally {
+      prefetcher.close();
+    }
+  }
+
+  @Test
+  public void testPageIsDecodedAtPreviewResolution() throws IOException {
+    Path[] paths = writePages(2, 2000, 1000);
+    PagePrefetcher prefetcher = new PagePrefetcher(paths, path -> 0, new PrefetchSettings(0, 64));
+    try {
+      // The first page is decoded before the preview size is known.
+      prefetcher.fitPreview(0, prefetcher.getPage(0), 400, 400);
+      PagePrefetcher.Page page = prefetcher.getPage(1);
+      assertEquals(5, page.subsampling());
+      assertEquals(400, page.image().getWidth());
+      assertEquals(2000, page.width());
+      assertEquals(1000, page.height());
+      assertEquals(200, page.preview().getHeight());
+
+      // A larger preview than the decoded resolution covers decodes the page again.
+      page = prefetcher.fitPreview(1, page, 1000, 1000);
+      assertEquals(2, page.subsampling());
+      assertEquals(500, page.preview().getHeight());
+
+      BufferedImage full = prefetcher.readFullImage(1);
+      assertEquals(2000, full.getWidth());
+      assertEquals(1000, full.getHeight());
+    } finally {
+      prefetcher.close();
+    }
+  }
+
+  @Test
+  public void testFarthestPagesAreEvicted() throws IOException {
+    // Decoded at 400x400 with a preview of the same size, a page takes about 1.1 MB, two of them fit in 3 MB.
+    Path[] paths = writePages(4, 2000, 2000);
+    PagePrefetcher prefetcher = new PagePrefetcher(paths, path -> 0, new PrefetchSettings(0, 3));
+    try {
+      prefetcher.fitPreview(0, prefetcher.getPage(0), 400, 400);
+      for (int i = 1; i < paths.length; i++) {
+        prefetcher.getPage(i);
+      }
+      assertTrue(prefetcher.isCached(3));
+      assertTrue(prefetcher.isCached(2));
+      assertFalse(prefetcher.isCached(1));
+      assertFalse(prefetcher.isCached(0));
+    } finally {
+      prefetcher.close();
+    }
+  }
+
+  @Test
+  public void testUnreadableImageFails() throws IOException {
+    Path path = tempDir.resolve("broken.jpg");
+    Files.writeString(path, "not an image");
+    PagePrefetcher prefetcher = new PagePrefetcher(new Path[]{path}, p -> 0, PrefetchSettings.defaults());
+    try {
+      assertThrows(IOException.class, () -> prefetcher.getPage(0));
+    } finally {
+      prefetcher.close();
+    }
+  }
+
+  private Path[] writePages(int count, int width, int height) throws IOException {
+    Path[] paths = new Path[count];
+    for (int i = 0; i < count; i++) {
+      paths[i] = tempDir.resolve("page-" + i + ".png");
+      ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", paths[i].toFile());
+    }
+    return paths;
+  }
+}
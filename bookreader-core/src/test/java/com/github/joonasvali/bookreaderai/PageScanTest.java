@@ -0,0 +1,69 @@
+package com.github.joonasvali.bookreaderai;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PageScanTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  public void testScan() throws IOException {
+    Path[] paths = {
+        write("page-0.png", createPage(0, 20)),
+        write("page-1.png", createPage(0, 0)),
+        write("page-2.jpg", createPage(0, 20)),
+        write("page-3.png", createPage(1, 24)),
+        write("page-4.png", createPage(0, 0)),
+        tempDir.resolve("missing.png")
+    };
+
+    PageScan scan = PageScan.scan(paths, PageScanSettings.defaults());
+
+    assertFalse(scan.isBlank(0));
+    assertTrue(scan.isBlank(1));
+    assertTrue(scan.isBlank(4));
+    assertFalse(scan.isBlank(5));
+    assertEquals(-1, scan.getOriginal(0));
+    // Blank pages are never duplicates.
+    assertEquals(-1, scan.getOriginal(4));
+    // Saved as JPEG, the shot is not the same pixel for pixel.
+    assertEquals(0, scan.getOriginal(2));
+    assertEquals(-1, scan.getOriginal(3));
+    assertEquals(-1, scan.getOriginal(5));
+    assertEquals(2, scan.getBlankCount());
+    assertEquals(1, scan.getDuplicateCount());
+  }
+
+  private Path write(String name, BufferedImage image) throws IOException {
+    Path path = tempDir.resolve(name);
+    ImageIO.write(image, name.substring(name.lastIndexOf('.') + 1), path.toFile());
+    return path;
+  }
+
+  private static BufferedImage createPage(int shift, int lines) {
+    BufferedImage image = new BufferedImage(600, 800, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g2d = image.createGraphics();
+    g2d.setColor(Color.WHITE);
+    g2d.fillRect(0, 0, 600, 800);
+    g2d.setColor(Color.BLACK);
+    for (int i = 0; i < lines; i++) {
+      int end = 120 + (i * 97 + shift * 211) % 420;
+      g2d.fillRect(50, 50 + i * 30, end - 50, 14);
+    }
+    g2d.dispose();
+    return image;
+  }
+}
@@ -10,6 +10,8 @@ import org.mockito.Mockito;
 
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -25,6 +27,9 @@ public class SimpleTranscriberAgentTest {
                    try {
                      Mockito.doReturn(new ProcessingResult<>(texts, 0, 0, 0))
                          .when(mock).process(Mockito.any(BufferedImage.class), Mockito.anyInt());
+                     // Further samples, requested when the first ones disagree.
+                     Mockito.doReturn(new ProcessingResult<>(texts, 0, 0, 0))
+                         .when(mock).process(Mockito.any(BufferedImage.class), Mockito.anyInt(), Mockito.anyInt());
                    } catch (IOException e) {
                      throw new RuntimeException(e);
                    }
@@ -40,6 +45,38 @@ public class SimpleTranscriberAgentTest {
     }
   }
 
+  @Test
+  public void testRedLineIsOnlyMentionedForOverlappingSlices() {
+    List<String> prompts = new ArrayList<>();
+    try (MockedConstruction<ImageAnalysis> mocked =
+             Mockito.mockConstruction(ImageAnalysis.class,
+                 (mock, context) -> {
+                   prompts.add((String) context.arguments().get(0));
+                   try {
+                     Mockito.doReturn(new ProcessingResult<>(new String[]{"text"}, 0, 0, 0))
+                         .when(mock).process(Mockito.any(BufferedImage.class), Mockito.anyInt());
+                   } catch (IOException e) {
+                     throw new RuntimeException(e);
+                   }
+                 })) {
+
+      BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+      SimpleTranscriberAgent transcriber = new SimpleTranscriberAgent(image, "english", "story", 1, "GPT-4o");
+
+      transcriber.transcribe("The previous slice.");
+      transcriber.transcribeContinuation();
+      transcriber.setOverlapping(true);
+      transcriber.transcribe("The previous slice.");
+      transcriber.transcribeContinuation();
+    }
+
+    Assertions.assertEquals(4, prompts.size());
+    Assertions.assertFalse(prompts.get(0).contains("red line"), prompts.get(0));
+    Assertions.assertFalse(prompts.get(1).contains("red line"), prompts.get(1));
+    Assertions.assertTrue(prompts.get(2).contains("red line"), prompts.get(2));
+    Assertions.assertTrue(prompts.get(3).contains("red line"), prompts.get(3));
+  }
+
   @Test
   public void testWithMinorDifferences() {
     String value = invokeTest("bears, beets, Battlestar Galactica", "bears, beets, Battlestar Galactica.", "bears, bears, Battlestar Galactica");
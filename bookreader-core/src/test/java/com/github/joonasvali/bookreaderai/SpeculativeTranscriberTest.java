@@ -0,0 +1,143 @@
+package com.github.joonasvali.bookreaderai;
+
+import com.github.joonasvali.bookreaderai.imageutil.PageFingerprint;
+import com.github.joonasvali.bookreaderai.openai.ProcessingResult;
+import com.github.joonasvali.bookreaderai.transcribe.Transcriber;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.MockedConstruction;
+import org.mockito.Mockito;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class SpeculativeTranscriberTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  public void testDraftsAreSavedForUpcomingPages() throws IOException {
+    Path[] paths = createPaths(5);
+    FileHandler fileHandler = new FileHandler(tempDir.resolve("output"));
+    List<String> drafts = new ArrayList<>();
+
+    try (MockedConstruction<Transcriber> mocked = mockTranscriber(100)) {
+      SpeculativeTranscriber transcriber = createTranscriber(paths, fileHandler, new SpeculationSettings(true, 2, 0), drafts);
+      transcriber.pageOpened(0, false);
+
+      assertEquals(2, mocked.constructed().size());
+      assertEquals(List.of("page-1", "page-2"), drafts);
+      assertEquals("Transcribed text", fileHandler.loadDraft("page-1"));
+      assertNull(fileHandler.loadDraft("page-3"));
+      assertEquals("", fileHandler.loadFromFile("page-1"));
+      assertEquals(200, transcriber.getSpentTokens());
+    }
+  }
+
+  @Test
+  public void testTranscribedPagesAreSkipped() throws IOException {
+    Path[] paths = createPaths(5);
+    FileHandler fileHandler = new FileHandler(tempDir.resolve("output"));
+    fileHandler.saveToFile("page-1", "Reviewed text");
+    fileHandler.saveDraft("page-3", "Earlier draft");
+    List<String> drafts = new ArrayList<>();
+
+    try (MockedConstruction<Transcriber> mocked = mockTranscriber(100)) {
+      SpeculativeTranscriber transcriber = createTranscriber(paths, fileHandler, new SpeculationSettings(true, 3, 0), drafts);
+      transcriber.pageOpened(0, false);
+
+      assertEquals(1, mocked.constructed().size());
+      assertEquals(List.of("page-2"), drafts);
+      assertNull(fileHandler.loadDraft("page-1"));
+      assertEquals("Earlier draft", fileHandler.loadDraft("page-3"));
+    }
+  }
+
+  @Test
+  public void testTokenBudgetStopsTranscription() throws IOException {
+    Path[] paths = createPaths(5);
+    FileHandler fileHandler = new FileHandler(tempDir.resolve("output"));
+    List<String> drafts = new ArrayList<>();
+
+    try (MockedConstruction<Transcriber> mocked = mockTranscriber(150)) {
+      SpeculativeTranscriber transcriber = createTranscriber(paths, fileHandler, new SpeculationSettings(true, 3, 100), drafts);
+      transcriber.pageOpened(0, false);
+      transcriber.pageOpened(1, false);
+
+      assertEquals(1, mocked.constructed().size());
+      assertEquals(List.of("page-1"), drafts);
+      assertEquals(150, transcriber.getSpentTokens());
+    }
+  }
+
+  @Test
+  public void testBlankAndDuplicatePages() throws IOException {
+    Path[] paths = createPaths(5);
+    FileHandler fileHandler = new FileHandler(tempDir.resolve("output"));
+    fileHandler.saveToFile("page-0", "Reviewed text");
+    List<String> drafts = new ArrayList<>();
+    long[] hash = {1, 2, 3, 4};
+    PageScan pageScan = new PageScan(new PageFingerprint[]{
+        new PageFingerprint(hash, 0.1),
+        new PageFingerprint(new long[]{0, 0, 0, 0}, 0),
+        new PageFingerprint(hash, 0.1),
+        new PageFingerprint(new long[]{-1, -2, -3, -4}, 0.1),
+        null
+    }, PageScanSettings.defaults());
+
+    try (MockedConstruction<Transcriber> mocked = mockTranscriber(100)) {
+      SpeculativeTranscriber transcriber = createTranscriber(paths, fileHandler, new SpeculationSettings(true, 3, 0), drafts);
+      transcriber.setPageScan(pageScan);
+      transcriber.pageOpened(0, false);
+
+      // Only page-3 is transcribed: page-1 is blank and page-2 repeats page-0.
+      assertEquals(1, mocked.constructed().size());
+      assertEquals(List.of("page-2", "page-3"), drafts);
+      assertNull(fileHandler.loadDraft("page-1"));
+      assertEquals("Reviewed text", fileHandler.loadDraft("page-2"));
+      assertEquals(100, transcriber.getSpentTokens());
+    }
+  }
+
+  @Test
+  public void testDisabled() {
+    Path[] paths = createPaths(3);
+    FileHandler fileHandler = new FileHandler(tempDir.resolve("output"));
+    List<String> drafts = new ArrayList<>();
+
+    try (MockedConstruction<Transcriber> mocked = mockTranscriber(100)) {
+      createTranscriber(paths, fileHandler, SpeculationSettings.defaults(), drafts).pageOpened(0, false);
+      assertEquals(0, mocked.constructed().size());
+    }
+  }
+
+  private SpeculativeTranscriber createTranscriber(Path[] paths, FileHandler fileHandler, SpeculationSettings settings,
+                                                   List<String> drafts) {
+    PagePrefetcher prefetcher = new PagePrefetcher(paths, path -> 0, PrefetchSettings.defaults());
+    TranscriptionHints hints = new TranscriptionHints("english", "story", "GPT-4.1");
+    return new SpeculativeTranscriber(paths, fileHandler, prefetcher, hints, settings, drafts::add);
+  }
+
+  private static MockedConstruction<Transcriber> mockTranscriber(long tokens) {
+    return Mockito.mockConstruction(Transcriber.class, (mock, context) ->
+        Mockito.doReturn(CompletableFuture.completedFuture(new ProcessingResult<>("Transcribed text", 0, 0, tokens)))
+            .when(mock).transcribe(Mockito.<Supplier<BufferedImage>>any(), Mockito.isNull(), Mockito.anyBoolean(), Mockito.isNull()));
+  }
+
+  private Path[] createPaths(int count) {
+    Path[] paths = new Path[count];
+    for (int i = 0; i < count; i++) {
+      paths[i] = tempDir.resolve("page-" + i + ".jpg");
+    }
+    return paths;
+  }
+}
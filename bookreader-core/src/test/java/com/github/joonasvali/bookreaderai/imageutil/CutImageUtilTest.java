@@ -6,7 +6,10 @@ import org.junit.jupiter.api.Test;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class CutImageUtilTest {
@@ -162,6 +165,97 @@ public class CutImageUtilTest {
     assertTrue(calculatePercentageOfColor(slices[2], Color.pink) > 0.80, "Third slice should contain mostly pink");
   }
 
+  @Test
+  public void testSplitImageAtLineGaps() {
+    // 30 lines of "text" 20px high with 20px gaps, after a blank band of 300px at the top.
+    BufferedImage testImage = createTextPage(400, 1700, 300, 30);
+
+    CutImageUtil.SplitImageResult result = CutImageUtil.splitImageAtLineGaps(testImage, 800, 15);
+    assertNotNull(result);
+    assertFalse(result.useBrightOverlay);
+    BufferedImage[] slices = result.sections;
+    assertEquals(2, slices.length);
+
+    int lines = 0;
+    int height = 0;
+    for (BufferedImage slice : slices) {
+      // Every line is whole: the slice starts and ends on paper.
+      assertEquals(Color.WHITE.getRGB(), slice.getRGB(200, 0));
+      assertEquals(Color.WHITE.getRGB(), slice.getRGB(200, slice.getHeight() - 1));
+      lines += countLines(slice);
+      height += slice.getHeight();
+    }
+    assertEquals(30, lines);
+    // The blank band is left out.
+    assertTrue(height < 1400, "Slices should not contain the blank band, height " + height);
+  }
+
+  @Test
+  public void testSplitImageAtLineGapsCountsLines() {
+    // Small handwriting: 45 lines fit in less than the slice height.
+    BufferedImage testImage = createTextPage(400, 800, 0, 45);
+
+    CutImageUtil.SplitImageResult result = CutImageUtil.splitImageAtLineGaps(testImage, 1800, 15);
+    assertNotNull(result);
+    assertEquals(3, result.sections.length);
+    for (BufferedImage slice : result.sections) {
+      assertEquals(15, countLines(slice));
+    }
+  }
+
+  @Test
+  public void testSplitImageAtLineGapsWithoutLines() {
+    BufferedImage blank = new BufferedImage(400, 1700, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g2d = blank.createGraphics();
+    g2d.setColor(Color.WHITE);
+    g2d.fillRect(0, 0, 400, 1700);
+    g2d.dispose();
+    assertNull(CutImageUtil.splitImageAtLineGaps(blank, 800, 15));
+
+    // A picture covering the page has no gaps to cut in.
+    BufferedImage picture = createTextPage(400, 1700, 0, 0);
+    g2d = picture.createGraphics();
+    g2d.setColor(Color.DARK_GRAY);
+    for (int y = 100; y < 1600; y += 10) {
+      for (int x = (y / 10) % 2 * 10; x < 400; x += 20) {
+        g2d.fillRect(x, y, 10, 10);
+      }
+    }
+    g2d.dispose();
+    assertNull(CutImageUtil.splitImageAtLineGaps(picture, 800, 15));
+  }
+
+  private BufferedImage createTextPage(int width, int height, int top, int lines) {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g2d = image.createGraphics();
+    g2d.setColor(Color.WHITE);
+    g2d.fillRect(0, 0, width, height);
+    g2d.setColor(Color.BLACK);
+    int lineHeight = (height - top) / Math.max(1, lines) / 2;
+    for (int i = 0; i < lines; i++) {
+      int y = top + lineHeight / 2 + i * 2 * lineHeight;
+      // Words of uneven length, like a line of text.
+      for (int x = 40; x < width - 60; x += 50 + (i * 7 + x) % 20) {
+        g2d.fillRect(x, y, 35, lineHeight);
+      }
+    }
+    g2d.dispose();
+    return image;
+  }
+
+  private int countLines(BufferedImage image) {
+    int lines = 0;
+    boolean inLine = false;
+    for (int y = 0; y < image.getHeight(); y++) {
+      boolean ink = image.getRGB(45, y) == Color.BLACK.getRGB();
+      if (ink && !inLine) {
+        lines++;
+      }
+      inLine = ink;
+    }
+    return lines;
+  }
+
   private float calculatePercentageOfColor(BufferedImage image, Color color) {
     int targetRGB = color.getRGB();
     int totalPixels = image.getWidth() * image.getHeight();
@@ -0,0 +1,60 @@
+package com.github.joonasvali.bookreaderai.imageutil;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ImageDecodeUtilTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  public void testGetSubsampling() {
+    // Fits the area at 1000x750, a factor of 4 keeps exactly that.
+    assertEquals(4, ImageDecodeUtil.getSubsampling(4000, 3000, 1000, 800));
+    // Fits the area at 933x700, 4000 / 5 would be narrower.
+    assertEquals(4, ImageDecodeUtil.getSubsampling(4000, 3000, 1000, 700));
+    // Fits the area at 1333x1000, a factor of 3 keeps 1334x1000.
+    assertEquals(3, ImageDecodeUtil.getSubsampling(4000, 3000, 1600, 1000));
+    assertEquals(1, ImageDecodeUtil.getSubsampling(800, 600, 1000, 800));
+    assertEquals(1, ImageDecodeUtil.getSubsampling(4000, 3000, 0, 0));
+  }
+
+  @Test
+  public void testReadSubsampled() throws IOException {
+    BufferedImage source = new BufferedImage(1200, 900, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g2d = source.createGraphics();
+    g2d.setColor(Color.RED);
+    g2d.fillRect(0, 0, 600, 900);
+    g2d.dispose();
+    Path path = tempDir.resolve("page.png");
+    ImageIO.write(source, "png", path.toFile());
+
+    ImageDecodeUtil.SubsampledImage image = ImageDecodeUtil.readSubsampled(path, 300, 200);
+    assertEquals(1200, image.sourceWidth());
+    assertEquals(900, image.sourceHeight());
+    assertEquals(4, image.subsampling());
+    assertEquals(300, image.image().getWidth());
+    assertEquals(225, image.image().getHeight());
+    assertEquals(Color.RED.getRGB(), image.image().getRGB(10, 10));
+    assertEquals(Color.BLACK.getRGB(), image.image().getRGB(290, 10));
+  }
+
+  @Test
+  public void testUnknownFormatFails() throws IOException {
+    Path path = tempDir.resolve("page.jpg");
+    Files.writeString(path, "not an image");
+    assertThrows(IOException.class, () -> ImageDecodeUtil.readSubsampled(path, 100, 100));
+  }
+}
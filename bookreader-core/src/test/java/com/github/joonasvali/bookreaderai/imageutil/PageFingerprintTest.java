@@ -0,0 +1,87 @@
+package com.github.joonasvali.bookreaderai.imageutil;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PageFingerprintTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  public void testBlankPage() {
+    BufferedImage blank = createPage(new Color(235, 230, 220), 0, 0);
+    assertEquals(0.0, PageFingerprint.of(blank).inkCoverage());
+
+    PageFingerprint text = PageFingerprint.of(createPage(Color.WHITE, 1, 30));
+    assertTrue(text.inkCoverage() > 0.05, "Text should be found, coverage " + text.inkCoverage());
+  }
+
+  @Test
+  public void testSamePageShotTwice() {
+    BufferedImage first = createPage(Color.WHITE, 1, 30);
+    // The second shot is darker and noisier.
+    BufferedImage second = new BufferedImage(first.getWidth(), first.getHeight(), BufferedImage.TYPE_INT_RGB);
+    Random random = new Random(7);
+    for (int y = 0; y < first.getHeight(); y++) {
+      for (int x = 0; x < first.getWidth(); x++) {
+        int value = Math.max(0, (first.getRGB(x, y) & 0xFF) - 30 + random.nextInt(11) - 5);
+        second.setRGB(x, y, new Color(value, value, value).getRGB());
+      }
+    }
+
+    PageFingerprint a = PageFingerprint.of(first);
+    PageFingerprint b = PageFingerprint.of(second);
+    assertTrue(a.distance(b) <= 4, "Shots of the same page should be close, distance " + a.distance(b));
+    assertEquals(a.inkCoverage(), b.inkCoverage(), 0.01);
+
+    PageFingerprint other = PageFingerprint.of(createPage(Color.WHITE, 2, 30));
+    assertTrue(a.distance(other) > 64, "Different pages should be far apart, distance " + a.distance(other));
+  }
+
+  @Test
+  public void testRead() throws IOException {
+    BufferedImage page = createPage(Color.WHITE, 1, 30);
+    Path path = tempDir.resolve("page.png");
+    ImageIO.write(page, "png", path.toFile());
+
+    PageFingerprint read = PageFingerprint.read(path);
+    assertTrue(read.distance(PageFingerprint.of(page)) <= 16, "Decoded at a lower resolution, distance "
+        + read.distance(PageFingerprint.of(page)));
+  }
+
+  /**
+   * A page of "text": lines of words of random length.
+   */
+  private static BufferedImage createPage(Color paper, long seed, int lines) {
+    BufferedImage image = new BufferedImage(800, 1100, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g2d = image.createGraphics();
+    g2d.setColor(paper);
+    g2d.fillRect(0, 0, 800, 1100);
+    g2d.setColor(Color.BLACK);
+    Random random = new Random(seed);
+    for (int i = 0; i < lines; i++) {
+      int y = 60 + i * 32;
+      // Lines end at different places, like the ends of paragraphs.
+      int end = 100 + random.nextInt(640);
+      for (int x = 60; x < end; ) {
+        int word = 15 + random.nextInt(60);
+        g2d.fillRect(x, y, Math.min(word, end - x), 16);
+        x += word + 12;
+      }
+    }
+    g2d.dispose();
+    return image;
+  }
+}
@@ -0,0 +1,83 @@
+package com.github.joonasvali.bookreaderai.imageutil;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class PerspectiveImageUtilTest {
+  private static final Point[] POINTS = {new Point(10, 20), new Point(560, 5), new Point(590, 780), new Point(-20, 700)};
+
+  @Test
+  public void testAllImageTypesWarpTheSame() {
+    BufferedImage reference = createNoiseImage(BufferedImage.TYPE_INT_RGB);
+    BufferedImage expected = PerspectiveImageUtil.normalizeImageToRectangle(reference, POINTS);
+
+    int[] types = {BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_BGR};
+    for (int type : types) {
+      BufferedImage image = new BufferedImage(reference.getWidth(), reference.getHeight(), type);
+      Graphics2D g2d = image.createGraphics();
+      g2d.drawImage(reference, 0, 0, null);
+      g2d.dispose();
+
+      assertSameRGB(expected, PerspectiveImageUtil.normalizeImageToRectangle(image, POINTS), "Type " + type);
+    }
+  }
+
+  @Test
+  public void testSubimageIsReadFromItsOwnOrigin() {
+    BufferedImage image = createNoiseImage(BufferedImage.TYPE_3BYTE_BGR);
+    BufferedImage subimage = image.getSubimage(30, 40, 600, 800);
+    BufferedImage copy = new BufferedImage(600, 800, BufferedImage.TYPE_3BYTE_BGR);
+    Graphics2D g2d = copy.createGraphics();
+    g2d.drawImage(subimage, 0, 0, null);
+    g2d.dispose();
+
+    assertSameRGB(PerspectiveImageUtil.normalizeImageToRectangle(copy, POINTS),
+        PerspectiveImageUtil.normalizeImageToRectangle(subimage, POINTS), "Subimage");
+  }
+
+  @Test
+  public void testBilinearKeepsUniformColor() {
+    BufferedImage image = new BufferedImage(700, 900, BufferedImage.TYPE_3BYTE_BGR);
+    Graphics2D g2d = image.createGraphics();
+    g2d.setColor(new Color(12, 34, 56));
+    g2d.fillRect(0, 0, image.getWidth(), image.getHeight());
+    g2d.dispose();
+
+    Point[] inside = {new Point(50, 60), new Point(600, 40), new Point(650, 850), new Point(30, 800)};
+    BufferedImage result = PerspectiveImageUtil.normalizeImageToRectangle(image, inside, true);
+    for (int y = 0; y < result.getHeight(); y += 7) {
+      for (int x = 0; x < result.getWidth(); x += 7) {
+        assertEquals(new Color(12, 34, 56).getRGB(), result.getRGB(x, y));
+      }
+    }
+  }
+
+  private static BufferedImage createNoiseImage(int type) {
+    Random random = new Random(42);
+    BufferedImage image = new BufferedImage(700, 900, type);
+    for (int y = 0; y < image.getHeight(); y++) {
+      for (int x = 0; x < image.getWidth(); x++) {
+        image.setRGB(x, y, random.nextInt());
+      }
+    }
+    return image;
+  }
+
+  private static void assertSameRGB(BufferedImage expected, BufferedImage actual, String message) {
+    assertEquals(expected.getWidth(), actual.getWidth(), message);
+    assertEquals(expected.getHeight(), actual.getHeight(), message);
+    for (int y = 0; y < expected.getHeight(); y++) {
+      for (int x = 0; x < expected.getWidth(); x++) {
+        if ((expected.getRGB(x, y) & 0xFFFFFF) != (actual.getRGB(x, y) & 0xFFFFFF)) {
+          assertEquals(Integer.toHexString(expected.getRGB(x, y)), Integer.toHexString(actual.getRGB(x, y)),
+              message + " at " + x + "," + y);
+        }
+      }
+    }
+  }
+}
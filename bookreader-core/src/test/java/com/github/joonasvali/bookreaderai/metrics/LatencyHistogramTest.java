@@ -0,0 +1,44 @@
+package com.github.joonasvali.bookreaderai.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void testPercentilesWithinBucketPrecision() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long value = 1; value <= 10_000; value++) {
+      histogram.record(value * 1000);
+    }
+    assertEquals(10_000, histogram.getCount());
+    assertEquals(10_000_000L, histogram.getMax());
+    assertWithin(5_000_000, histogram.getValueAtPercentile(0.5));
+    assertWithin(9_900_000, histogram.getValueAtPercentile(0.99));
+    assertEquals(10_000_000L, histogram.getValueAtPercentile(1.0));
+  }
+
+  @Test
+  public void testEmptyHistogram() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getValueAtPercentile(0.99));
+    assertEquals(0, histogram.getSum());
+  }
+
+  @Test
+  public void testBucketsCoverEveryValue() {
+    for (long value : new long[]{0, 1, 15, 16, 17, 31, 32, 1000, 123_456_789, Long.MAX_VALUE / 3, Long.MAX_VALUE}) {
+      int index = LatencyHistogram.indexOf(value);
+      assertTrue(LatencyHistogram.highestValueOf(index) >= value, "Bucket of " + value);
+      if (index > 0) {
+        assertTrue(LatencyHistogram.highestValueOf(index - 1) < value, "Previous bucket of " + value);
+      }
+    }
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    assertTrue(Math.abs(actual - expected) <= expected / 16, "Expected about " + expected + " but was " + actual);
+  }
+}
@@ -0,0 +1,27 @@
+package com.github.joonasvali.bookreaderai.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MetricsTest {
+
+  @Test
+  public void testPrometheusText() {
+    Metrics metrics = new Metrics();
+    metrics.record(Metrics.STAGE_RESIZE, 2_000_000);
+    metrics.add(Metrics.PROMPT_TOKENS, 1200);
+    try (Metrics.Stopwatch ignored = metrics.startRequest()) {
+      assertEquals(1, metrics.getInFlightRequests());
+    }
+    assertEquals(0, metrics.getInFlightRequests());
+
+    String text = metrics.toPrometheusText();
+    assertTrue(text.contains("bookreader_stage_seconds_count{stage=\"resize\"} 1\n"), text);
+    assertTrue(text.contains("bookreader_stage_seconds_count{stage=\"http_round_trip\"} 1\n"), text);
+    assertTrue(text.contains("bookreader_prompt_tokens_total 1200\n"), text);
+    assertTrue(text.contains("bookreader_http_requests_total 1\n"), text);
+    assertTrue(text.contains("bookreader_http_requests_in_flight 0\n"), text);
+  }
+}
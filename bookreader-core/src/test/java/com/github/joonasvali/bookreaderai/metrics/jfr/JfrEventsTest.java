@@ -0,0 +1,54 @@
+package com.github.joonasvali.bookreaderai.metrics.jfr;
+
+import com.github.joonasvali.bookreaderai.imageutil.RotateImageUtil;
+import com.github.joonasvali.bookreaderai.textutil.restoration.TextRestorer;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class JfrEventsTest {
+
+  @Test
+  public void testPipelineStagesAreRecorded(@TempDir Path tempDir) throws Exception {
+    Path file = tempDir.resolve("recording.jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable("bookreader.TextRestore");
+      recording.enable("bookreader.ImageTransform");
+      recording.start();
+
+      new TextRestorer().restoreText("The quick brown fox.", "The quick brown fax.", "The quick brown fox.");
+      RotateImageUtil.applyRotation(new BufferedImage(40, 20, BufferedImage.TYPE_INT_RGB), 1);
+
+      recording.stop();
+      recording.dump(file);
+    }
+
+    List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+
+    RecordedEvent restore = find(events, "bookreader.TextRestore");
+    assertEquals(3, restore.getInt("samples"));
+    assertEquals(60, restore.getLong("inputChars"));
+    assertEquals(20, restore.getLong("outputChars"));
+
+    RecordedEvent rotation = find(events, "bookreader.ImageTransform");
+    assertEquals("applyRotation", rotation.getString("operation"));
+    assertEquals(40, rotation.getInt("sourceWidth"));
+    assertEquals(20, rotation.getInt("targetWidth"));
+    assertEquals(40, rotation.getInt("targetHeight"));
+  }
+
+  private static RecordedEvent find(List<RecordedEvent> events, String name) {
+    return events.stream()
+        .filter(event -> event.getEventType().getName().equals(name))
+        .findFirst()
+        .orElseThrow(() -> new AssertionError("No " + name + " event recorded"));
+  }
+}
@@ -0,0 +1,44 @@
+package com.github.joonasvali.bookreaderai.openai;
+
+import okio.Buffer;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ImageRequestBodyTest {
+
+  @Test
+  public void testBodyMatchesPayloadWithEncodedImage() throws IOException {
+    ImageAnalysis imageAnalysis = new ImageAnalysis("Transcribe \"this\" </page>", "GPT-4.1");
+    for (int length = 0; length < 8; length++) {
+      byte[] jpeg = new byte[length];
+      for (int i = 0; i < length; i++) {
+        jpeg[i] = (byte) (i * 77);
+      }
+      String expected = imageAnalysis.createJsonPayload(Base64.getEncoder().encodeToString(jpeg), 3).toString();
+
+      ImageRequestBody body = ImageRequestBody.create(base64Image -> imageAnalysis.createJsonPayload(base64Image, 3), jpeg);
+      Buffer buffer = new Buffer();
+      body.writeTo(buffer);
+      assertEquals(expected, buffer.readUtf8());
+      assertEquals(expected.length(), body.contentLength());
+
+      // A retry writes the same bytes again.
+      body.writeTo(buffer);
+      assertEquals(expected, buffer.readUtf8());
+    }
+  }
+
+  @Test
+  public void testPayloadIsValidJson() throws IOException {
+    byte[] jpeg = {1, 2, 3, 4, 5};
+    ImageRequestBody body = ImageRequestBody.create(base64Image -> new JSONObject().put("url", "data:image/jpeg;base64," + base64Image), jpeg);
+    Buffer buffer = new Buffer();
+    body.writeTo(buffer);
+    assertEquals("data:image/jpeg;base64,AQIDBAU=", new JSONObject(buffer.readUtf8()).getString("url"));
+  }
+}
@@ -0,0 +1,82 @@
+package com.github.joonasvali.bookreaderai.openai;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RateLimiterTest {
+
+  @Test
+  public void testRequestsWaitOnceBudgetIsSpent() {
+    RateLimiter rateLimiter = new RateLimiter(new RateLimitSettings(60, 1_000_000, 5, 1000, 60000));
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < 60; i++) {
+      assertEquals(0, rateLimiter.reserve(0, now));
+    }
+    assertEquals(1000, rateLimiter.reserve(0, now));
+    assertEquals(2000, rateLimiter.reserve(0, now));
+  }
+
+  @Test
+  public void testTokensWaitOnceBudgetIsSpent() {
+    RateLimiter rateLimiter = new RateLimiter(new RateLimitSettings(1000, 6000, 5, 1000, 60000));
+    long now = System.currentTimeMillis();
+    assertEquals(0, rateLimiter.reserve(6000, now));
+    assertEquals(10000, rateLimiter.reserve(1000, now));
+    // Larger than the whole budget, waits until the bucket is full again.
+    assertEquals(70000, rateLimiter.reserve(100000, now));
+  }
+
+  @Test
+  public void testHeadersReplaceLimits() {
+    RateLimiter rateLimiter = new RateLimiter(new RateLimitSettings(1000, 1_000_000, 5, 1000, 60000));
+    long now = System.currentTimeMillis();
+    Map<String, String> headers = Map.of(
+        "x-ratelimit-limit-requests", "60",
+        "x-ratelimit-remaining-requests", "0",
+        "x-ratelimit-reset-requests", "1s"
+    );
+    rateLimiter.update(headers::get, now);
+    assertEquals(1000, rateLimiter.reserve(0, now));
+  }
+
+  @Test
+  public void testBackoffHonorsRetryAfter() {
+    RateLimiter rateLimiter = new RateLimiter(RateLimitSettings.defaults());
+    assertEquals(7000, rateLimiter.backoffMillis(0, Map.of("Retry-After", "7")::get));
+    assertEquals(250, rateLimiter.backoffMillis(0, Map.of("retry-after-ms", "250")::get));
+  }
+
+  @Test
+  public void testBackoffIsJitteredAndCapped() {
+    RateLimiter rateLimiter = new RateLimiter(new RateLimitSettings(1000, 1_000_000, 5, 1000, 5000));
+    long first = rateLimiter.backoffMillis(0, name -> null);
+    assertTrue(first >= 500 && first <= 1000, "First backoff " + first);
+    long third = rateLimiter.backoffMillis(2, name -> null);
+    assertTrue(third >= 2000 && third <= 4000, "Third backoff " + third);
+    long capped = rateLimiter.backoffMillis(10, name -> null);
+    assertTrue(capped >= 2500 && capped <= 5000, "Capped backoff " + capped);
+  }
+
+  @Test
+  public void testParseDuration() {
+    assertEquals(20, RateLimiter.parseDurationMillis("20ms"));
+    assertEquals(1000, RateLimiter.parseDurationMillis("1s"));
+    assertEquals(360000, RateLimiter.parseDurationMillis("6m0s"));
+    assertEquals(3_661_500, RateLimiter.parseDurationMillis("1h1m1.5s"));
+    assertEquals(0, RateLimiter.parseDurationMillis(null));
+  }
+
+  @Test
+  public void testEstimateImageTokens() {
+    // 512x512 is a single tile.
+    assertEquals(255, RateLimiter.estimateImageTokens(512, 512));
+    // 768x2000 stays as is and covers 2x4 tiles.
+    assertEquals(85 + 170 * 8, RateLimiter.estimateImageTokens(768, 2000));
+    // 4096x4096 is fit to 2048 and then to 768, 2x2 tiles.
+    assertEquals(85 + 170 * 4, RateLimiter.estimateImageTokens(4096, 4096));
+  }
+}
@@ -0,0 +1,48 @@
+package com.github.joonasvali.bookreaderai.openai;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CancellationException;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RequestScopeTest {
+  private final OkHttpClient client = new OkHttpClient();
+
+  @Test
+  public void testCancelAbortsRegisteredCalls() {
+    RequestScope scope = new RequestScope();
+    Call inFlight = newCall();
+    Call finished = newCall();
+    scope.register(inFlight);
+    scope.register(finished);
+    scope.unregister(finished);
+    assertDoesNotThrow(scope::throwIfCancelled);
+
+    scope.cancel();
+
+    assertTrue(scope.isCancelled());
+    assertTrue(inFlight.isCanceled());
+    assertFalse(finished.isCanceled());
+    assertThrows(CancellationException.class, scope::throwIfCancelled);
+  }
+
+  @Test
+  public void testCallsRegisteredAfterCancelAreCancelled() {
+    RequestScope scope = new RequestScope();
+    scope.cancel();
+    Call call = newCall();
+    scope.register(call);
+    assertTrue(call.isCanceled());
+  }
+
+  private Call newCall() {
+    return client.newCall(new Request.Builder().url("https://localhost/").build());
+  }
+}
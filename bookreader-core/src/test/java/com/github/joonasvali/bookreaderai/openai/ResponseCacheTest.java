@@ -0,0 +1,71 @@
+package com.github.joonasvali.bookreaderai.openai;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ResponseCacheTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  public void testKeyDependsOnAllParts() {
+    String key = ResponseCache.createKey("gpt-4.1", "prompt", "aW1hZ2U=", 1);
+    assertEquals(key, ResponseCache.createKey("gpt-4.1", "prompt", "aW1hZ2U=", 1));
+    assertNotEquals(key, ResponseCache.createKey("gpt-5", "prompt", "aW1hZ2U=", 1));
+    assertNotEquals(key, ResponseCache.createKey("gpt-4.1", "prompt2", "aW1hZ2U=", 1));
+    assertNotEquals(key, ResponseCache.createKey("gpt-4.1", "prompt", "aW1hZ2V=", 1));
+    assertNotEquals(key, ResponseCache.createKey("gpt-4.1", "prompt", "aW1hZ2U=", 3));
+    assertEquals(key, ResponseCache.createKey("gpt-4.1", "prompt", "aW1hZ2U=", 1, 0));
+    assertNotEquals(key, ResponseCache.createKey("gpt-4.1", "prompt", "aW1hZ2U=", 1, 1));
+    assertNotEquals(ResponseCache.createKey("ab", "c", "", 1), ResponseCache.createKey("a", "bc", "", 1));
+  }
+
+  @Test
+  public void testImageKeyMatchesEncodedKey() {
+    byte[] jpeg = "image bytes".getBytes(StandardCharsets.UTF_8);
+    String base64Image = Base64.getEncoder().encodeToString(jpeg);
+    assertEquals(ResponseCache.createKey("gpt-4.1", "prompt", base64Image, 2), ResponseCache.createKey("gpt-4.1", "prompt", jpeg, 2));
+    assertEquals(ResponseCache.createKey("gpt-4.1", null, "", 1), ResponseCache.createKey("gpt-4.1", null, new byte[0], 1));
+    assertEquals(ResponseCache.createKey("gpt-4.1", "prompt", base64Image, 2, 1), ResponseCache.createKey("gpt-4.1", "prompt", jpeg, 2, 1));
+  }
+
+  @Test
+  public void testResponsesSurviveRestart() throws IOException {
+    ResponseCache cache = new ResponseCache(directory, 1024);
+    assertNull(cache.get("a"));
+    cache.put("a", "{\"answer\":1}");
+    assertEquals("{\"answer\":1}", cache.get("a"));
+
+    ResponseCache reopened = new ResponseCache(directory, 1024);
+    assertEquals("{\"answer\":1}", reopened.get("a"));
+    assertEquals(12, reopened.getTotalBytes());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedIsEvicted() throws IOException {
+    ResponseCache cache = new ResponseCache(directory, 30);
+    cache.put("a", "0123456789");
+    cache.put("b", "0123456789");
+    cache.put("c", "0123456789");
+    // Touch "a", so "b" becomes the least recently used entry.
+    cache.get("a");
+    cache.put("d", "0123456789");
+
+    assertEquals(3, cache.size());
+    assertEquals(30, cache.getTotalBytes());
+    assertNull(cache.get("b"));
+    assertEquals("0123456789", cache.get("a"));
+    assertEquals("0123456789", cache.get("c"));
+    assertEquals("0123456789", cache.get("d"));
+  }
+}
@@ -0,0 +1,55 @@
+package com.github.joonasvali.bookreaderai.textutil;
+
+import com.github.joonasvali.bookreaderai.textutil.restoration.AgreementScorer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AgreementScorerTest {
+
+  private final AgreementScorer scorer = new AgreementScorer();
+
+  @Test
+  public void testIdenticalTexts() {
+    String text = "The quick brown fox jumps over the lazy dog. It was not amused.";
+    assertEquals(1.0, scorer.score(new String[]{text, text, text}), 0.0001);
+  }
+
+  @Test
+  public void testWhitespaceIsIgnored() {
+    assertEquals(1.0, scorer.score(new String[]{
+        "The quick brown fox jumps over the lazy dog.\nIt was not amused.",
+        "The quick  brown fox jumps over the lazy dog. It was not amused. "
+    }), 0.0001);
+  }
+
+  @Test
+  public void testSingleText() {
+    assertEquals(1.0, scorer.score(new String[]{"Only one answer."}), 0.0001);
+  }
+
+  @Test
+  public void testDisagreementLowersScore() {
+    double score = scorer.score(new String[]{
+        "The quick brown fox jumps over the lazy dog. It was not amused.",
+        "The quick brown fox jumps over the lazy dog. It was not amused.",
+        "The quick brawn fax jumps over the hazy dog. It was not amused."
+    });
+    assertTrue(score < 0.9, "Score was " + score);
+    assertTrue(score > 0.5, "Score was " + score);
+  }
+
+  @Test
+  public void testLongSentencesWeighMore() {
+    double shortDiffers = scorer.score(new String[]{
+        "Page 1. The quick brown fox jumps over the lazy dog and runs far away into the forest.",
+        "Page 7. The quick brown fox jumps over the lazy dog and runs far away into the forest."
+    });
+    double longDiffers = scorer.score(new String[]{
+        "Page 1. The quick brown fox jumps over the lazy dog and runs far away into the forest.",
+        "Page 1. The quick brown fox leaps over the lazy cat and runs far away into the forest."
+    });
+    assertTrue(shortDiffers > longDiffers, shortDiffers + " <= " + longDiffers);
+  }
+}
@@ -0,0 +1,81 @@
+package com.github.joonasvali.bookreaderai.textutil;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LocalJoinerTest {
+
+  private static final String SLICE_1 = """
+      Two cats and a dog are playing in the garden.
+      The cats are chasing the dog. The dog is running away from the cats.
+      """;
+  private static final String SLICE_2 = """
+      The dog is having fun too. Listen to the birds chirping. This is a beautiful day.
+      The sun is shining. The sky is blue.
+      """;
+
+  private final LocalJoiner joiner = new LocalJoiner();
+
+  @Test
+  public void testCleanSlices() {
+    LocalJoiner.JoinResult result = joiner.join(SLICE_1 + SLICE_2, new String[]{SLICE_1, SLICE_2});
+    assertEquals(SLICE_1 + SLICE_2, result.getText());
+    assertEquals(1.0, result.getConfidence(), 0.0001);
+  }
+
+  @Test
+  public void testDuplicatedOverlapLowersConfidence() {
+    // Stitching is up to the caller, a sentence seen by both slices is kept twice.
+    String slice2 = "The dog is running away from the cats.\n" + SLICE_2;
+    LocalJoiner.JoinResult result = joiner.join(SLICE_1 + SLICE_2, new String[]{SLICE_1, slice2});
+    assertEquals(SLICE_1 + slice2, result.getText());
+    assertTrue(result.getConfidence() < 0.9, "Confidence was " + result.getConfidence());
+  }
+
+  @Test
+  public void testSentenceRepeatedAcrossSlicesIsKept() {
+    String slice1 = SLICE_1 + "The dog is having fun too.\n";
+    LocalJoiner.JoinResult result = joiner.join(slice1 + SLICE_2, new String[]{slice1, SLICE_2});
+    assertEquals(slice1 + SLICE_2, result.getText());
+    assertEquals(1.0, result.getConfidence(), 0.0001);
+  }
+
+  @Test
+  public void testTyposInApproximation() {
+    String approximation = (SLICE_1 + SLICE_2).replace("garden", "gardon").replace("chirping", "chirpinq");
+    LocalJoiner.JoinResult result = joiner.join(approximation, new String[]{SLICE_1, SLICE_2});
+    assertEquals(SLICE_1 + SLICE_2, result.getText());
+    assertTrue(result.getConfidence() > 0.9, "Confidence was " + result.getConfidence());
+  }
+
+  @Test
+  public void testMissingSentencesLowerConfidence() {
+    LocalJoiner.JoinResult result = joiner.join(SLICE_1 + SLICE_2,
+        new String[]{SLICE_1, "The sun is shining. The sky is blue.\n"});
+    assertTrue(result.getConfidence() < 0.9, "Confidence was " + result.getConfidence());
+  }
+
+  @Test
+  public void testExtraSentencesLowerConfidence() {
+    LocalJoiner.JoinResult result = joiner.join(SLICE_1 + SLICE_2,
+        new String[]{SLICE_1, SLICE_2, "And then the whole story repeats itself in a strange way once more.\n"});
+    assertTrue(result.getConfidence() < 0.9, "Confidence was " + result.getConfidence());
+  }
+
+  @Test
+  public void testDuplicatedFragmentInSentenceLowersConfidence() {
+    // A slice that read the start of a sentence twice, the matcher finds the approximation's sentence inside it.
+    String slice1 = SLICE_1.replace("The dog is running away", "The dog is running The dog is running away");
+    LocalJoiner.JoinResult result = joiner.join(SLICE_1 + SLICE_2, new String[]{slice1, SLICE_2});
+    assertEquals(slice1 + SLICE_2, result.getText());
+    assertTrue(result.getConfidence() < 0.9, "Confidence was " + result.getConfidence());
+  }
+
+  @Test
+  public void testNoApproximation() {
+    assertEquals(0.0, joiner.join("", new String[]{SLICE_1, SLICE_2}).getConfidence(), 0.0001);
+    assertEquals(0.0, joiner.join(null, new String[]{SLICE_1, SLICE_2}).getConfidence(), 0.0001);
+  }
+}
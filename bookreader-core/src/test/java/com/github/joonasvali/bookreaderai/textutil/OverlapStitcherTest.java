@@ -0,0 +1,60 @@
+package com.github.joonasvali.bookreaderai.textutil;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OverlapStitcherTest {
+
+  private final OverlapStitcher stitcher = new OverlapStitcher();
+
+  @Test
+  public void testNoOverlap() {
+    String[] slices = {
+        "Two cats and a dog are playing in the garden.\n",
+        "The dog is having fun too. Listen to the birds chirping.\n"
+    };
+    OverlapStitcher.StitchResult result = stitcher.stitch(slices);
+    assertArrayEquals(slices, result.getSlices());
+    assertEquals(0f, result.getBoundaryScores()[0]);
+    assertEquals("Two cats and a dog are playing in the garden.\nThe dog is having fun too. Listen to the birds chirping.\n",
+        result.getJoinedText());
+  }
+
+  @Test
+  public void testDuplicatedSentencesAreRemovedFromLaterSlice() {
+    String[] slices = {
+        "Two cats and a dog are playing in the garden. The cats are chasing the dog.\n",
+        "The cats are chasing the dog.\nThe dog is having fun too. Listen to the birds chirping.\n"
+    };
+    OverlapStitcher.StitchResult result = stitcher.stitch(slices);
+    assertEquals("Two cats and a dog are playing in the garden. The cats are chasing the dog.\n", result.getSlices()[0]);
+    assertEquals("The dog is having fun too. Listen to the birds chirping.\n", result.getSlices()[1]);
+    assertTrue(result.getBoundaryScores()[0] > 0.9f);
+  }
+
+  @Test
+  public void testMoreCompleteVersionOfCutSentenceIsKept() {
+    String[] slices = {
+        "Two cats and a dog are playing in the garden. The cats are chasing",
+        "The cats are chasing the dog around the house.\nThe dog is having fun too.\n"
+    };
+    OverlapStitcher.StitchResult result = stitcher.stitch(slices);
+    assertEquals("Two cats and a dog are playing in the garden. The cats are chasing the dog around the house.\n", result.getSlices()[0]);
+    assertEquals("The dog is having fun too.\n", result.getSlices()[1]);
+  }
+
+  @Test
+  public void testOverlapWithTranscriptionNoise() {
+    String[] slices = {
+        "The sun is shining. The sky is blue and the clouds are white.\n",
+        "The sky is blue and the c1ouds are white.\nThe birds are singing.\n",
+        "The birds are singing.\nThe kids are playing in the park.\n"
+    };
+    OverlapStitcher.StitchResult result = stitcher.stitch(slices);
+    assertEquals("The sun is shining. The sky is blue and the clouds are white.\nThe birds are singing.\nThe kids are playing in the park.\n",
+        result.getJoinedText());
+  }
+}
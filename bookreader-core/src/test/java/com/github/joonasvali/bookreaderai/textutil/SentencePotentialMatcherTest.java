@@ -287,4 +287,22 @@ public class SentencePotentialMatcherTest {
     assertTrue(result1.score < 0.1, "Got too high score: " + result1.score);
     assertTrue(result2.score < 0.1, "Got too high score: " + result2.score);
   }
+
+  @Test
+  public void testFuzzyContainmentInLongText() {
+    StringBuilder page = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      page.append("Line number ").append(i).append(" of the long page. ");
+    }
+    String sentence = "Line number 150 of the lonq page, line number 151 of the long page.";
+    page.append(sentence);
+
+    // Reusing the matcher must not leak state from the long comparison into the short one.
+    SentencePotentialMatcher.MatchResult result = matcher.match(sentence, page.toString());
+    assertTrue(result.score >= 0.9, "Got too low score: " + result.score);
+    assertEquals(sentence, result.commonPart);
+
+    SentencePotentialMatcher.MatchResult shortResult = matcher.match("Hello, world!", "Hello, world!");
+    assertEquals(1.0, shortResult.score, 0.001);
+  }
 }
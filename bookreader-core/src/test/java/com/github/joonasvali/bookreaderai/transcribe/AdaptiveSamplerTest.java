@@ -0,0 +1,138 @@
+package com.github.joonasvali.bookreaderai.transcribe;
+
+import com.github.joonasvali.bookreaderai.openai.HttpTransport;
+import com.github.joonasvali.bookreaderai.openai.ImageAnalysis;
+import com.github.joonasvali.bookreaderai.openai.ProcessingResult;
+import com.github.joonasvali.bookreaderai.openai.ResponseCache;
+import com.github.joonasvali.bookreaderai.openai.TransportSettings;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class AdaptiveSamplerTest {
+
+  private final BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+
+  @TempDir
+  Path cacheDirectory;
+
+  @Test
+  public void testAgreeingSamplesAreEnough() throws IOException {
+    ImageAnalysis analysis = Mockito.mock(ImageAnalysis.class);
+    Mockito.doReturn(new ProcessingResult<>(new String[]{"Clean page.", "Clean page."}, 10, 20, 30))
+        .when(analysis).process(image, 2);
+
+    ProcessingResult<String[]> result = new AdaptiveSampler(new SamplingSettings(true, 2, 5, 0.9))
+        .sample(analysis, image, 3);
+
+    assertArrayEquals(new String[]{"Clean page.", "Clean page."}, result.content());
+    Mockito.verify(analysis, Mockito.times(1)).process(Mockito.any(BufferedImage.class), Mockito.anyInt());
+  }
+
+  @Test
+  public void testDisagreeingSamplesGetMore() throws IOException {
+    ImageAnalysis analysis = Mockito.mock(ImageAnalysis.class);
+    Mockito.doReturn(new ProcessingResult<>(new String[]{"Damaged page.", "Damp aged rage."}, 10, 20, 30))
+        .when(analysis).process(image, 2);
+    Mockito.doReturn(new ProcessingResult<>(new String[]{"Damaged page."}, 1, 2, 3))
+        .when(analysis).process(image, 1, 1);
+
+    ProcessingResult<String[]> result = new AdaptiveSampler(new SamplingSettings(true, 2, 5, 0.9))
+        .sample(analysis, image, 3);
+
+    // No more answers than the caller asked for, even though the cap would allow 5.
+    assertEquals(3, result.content().length);
+    assertEquals("Damp aged rage.", result.content()[1]);
+    assertEquals(11, result.promptTokens());
+    assertEquals(22, result.completionTokens());
+    assertEquals(33, result.totalTokens());
+  }
+
+  @Test
+  public void testExtraSamplesAreNotServedFromCache() throws IOException {
+    AtomicInteger requests = new AtomicInteger();
+    HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/chat/completions", exchange -> {
+      int n = new JSONObject(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8)).getInt("n");
+      // The first answers disagree, the later ones agree.
+      boolean first = requests.incrementAndGet() == 1;
+      JSONArray choices = new JSONArray();
+      for (int i = 0; i < n; i++) {
+        String content = first && i == 1 ? "Damp aged rage." : "Damaged page.";
+        choices.put(new JSONObject().put("message", new JSONObject().put("content", content)));
+      }
+      byte[] response = new JSONObject()
+          .put("choices", choices)
+          .put("usage", new JSONObject().put("total_tokens", 3).put("prompt_tokens", 1).put("completion_tokens", 2))
+          .toString().getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, response.length);
+      try (OutputStream body = exchange.getResponseBody()) {
+        body.write(response);
+      }
+    });
+    server.start();
+
+    Properties properties = new Properties();
+    properties.setProperty(TransportSettings.BASE_URL_KEY, "http://localhost:" + server.getAddress().getPort());
+    properties.setProperty(ResponseCache.DIRECTORY_KEY, cacheDirectory.toString());
+    try {
+      HttpTransport.configure(properties);
+      ResponseCache.configure(properties);
+
+      // The follow-up asks for as many answers as the first request, with the same image and prompt.
+      ProcessingResult<String[]> result = new AdaptiveSampler(new SamplingSettings(true, 2, 4, 0.9))
+          .sample(new ImageAnalysis("prompt"), image, 4);
+
+      assertEquals(2, requests.get());
+      assertArrayEquals(new String[]{"Damaged page.", "Damp aged rage.", "Damaged page.", "Damaged page."},
+          result.content());
+      assertEquals(2, ResponseCache.getInstance().size());
+    } finally {
+      server.stop(0);
+      Properties defaults = new Properties();
+      defaults.setProperty(ResponseCache.ENABLED_KEY, "false");
+      HttpTransport.configure(defaults);
+      ResponseCache.configure(defaults);
+    }
+  }
+
+  @Test
+  public void testFixedSamplesWhenNotAdaptive() throws IOException {
+    ImageAnalysis analysis = Mockito.mock(ImageAnalysis.class);
+    Mockito.doReturn(new ProcessingResult<>(new String[]{"a", "b", "c"}, 0, 0, 0))
+        .when(analysis).process(image, 3);
+
+    new AdaptiveSampler(new SamplingSettings(false, 2, 5, 0.9)).sample(analysis, image, 3);
+
+    Mockito.verify(analysis).process(image, 3);
+    Mockito.verifyNoMoreInteractions(analysis);
+  }
+
+  @Test
+  public void testSingleSampleModels() throws IOException {
+    ImageAnalysis analysis = Mockito.mock(ImageAnalysis.class);
+    Mockito.doReturn(new ProcessingResult<>(new String[]{"a"}, 0, 0, 0))
+        .when(analysis).process(image, 1);
+
+    new AdaptiveSampler(SamplingSettings.defaults()).sample(analysis, image, 1);
+
+    Mockito.verify(analysis).process(image, 1);
+    Mockito.verifyNoMoreInteractions(analysis);
+  }
+}
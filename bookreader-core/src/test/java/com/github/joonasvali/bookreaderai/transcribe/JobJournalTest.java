@@ -0,0 +1,95 @@
+package com.github.joonasvali.bookreaderai.transcribe;
+
+import com.github.joonasvali.bookreaderai.openai.ProcessingResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class JobJournalTest {
+
+  @TempDir
+  Path outputFolder;
+
+  @Test
+  public void testResumesFinishedStages() throws IOException {
+    try (JobJournal journal = JobJournal.open(outputFolder)) {
+      journal.runStarted(2);
+      JobJournal.PageJob job = journal.page("page1", "config");
+      job.approximationDone(new ProcessingResult<>("approximation\nof \"page\"", 1, 2, 3));
+      job.sliceDone(0, 3, new ProcessingResult<>("slice 0", 4, 5, 9));
+      job.sliceDone(1, 3, new ProcessingResult<>("slice 1", 4, 5, 9));
+    }
+
+    try (JobJournal journal = JobJournal.open(outputFolder)) {
+      JobJournal.PageJob job = journal.page("page1", "config");
+      assertEquals("approximation\nof \"page\"", job.getApproximation().content());
+      assertEquals(3, job.getApproximation().totalTokens());
+      assertEquals("slice 0", job.getSlice(0, 3).content());
+      assertEquals("slice 1", job.getSlice(1, 3).content());
+      assertNull(job.getSlice(2, 3));
+      assertNull(job.getSlice(0, 2));
+      assertNull(job.getJoined());
+      assertFalse(job.isSaved());
+    }
+  }
+
+  @Test
+  public void testChangedConfigurationStartsOver() throws IOException {
+    try (JobJournal journal = JobJournal.open(outputFolder)) {
+      journal.page("page1", "GPT-4.1;0").sliceDone(0, 2, new ProcessingResult<>("slice 0", 0, 0, 0));
+    }
+
+    try (JobJournal journal = JobJournal.open(outputFolder)) {
+      assertNull(journal.page("page1", "GPT-4.1;90").getSlice(0, 2));
+    }
+    try (JobJournal journal = JobJournal.open(outputFolder)) {
+      // The page was started over with the new configuration.
+      assertNull(journal.page("page1", "GPT-4.1;0").getSlice(0, 2));
+    }
+  }
+
+  @Test
+  public void testFinishedRunIsNotResumed() throws IOException {
+    try (JobJournal journal = JobJournal.open(outputFolder)) {
+      JobJournal.PageJob job = journal.page("page1", "config");
+      job.joined(new ProcessingResult<>("text", 0, 0, 0));
+      job.saved();
+      journal.runFinished();
+    }
+
+    try (JobJournal journal = JobJournal.open(outputFolder)) {
+      JobJournal.PageJob job = journal.page("page1", "config");
+      assertNull(job.getJoined());
+      assertFalse(job.isSaved());
+    }
+    assertEquals(1, Files.readAllLines(outputFolder.resolve(JobJournal.FILE_NAME)).size());
+  }
+
+  @Test
+  public void testDamagedLastLineIsIgnored() throws IOException {
+    try (JobJournal journal = JobJournal.open(outputFolder)) {
+      JobJournal.PageJob job = journal.page("page1", "config");
+      job.joined(new ProcessingResult<>("text", 0, 0, 0));
+    }
+    Files.writeString(outputFolder.resolve(JobJournal.FILE_NAME), "{\"page\":\"page1\",\"sta",
+        StandardOpenOption.APPEND);
+
+    try (JobJournal journal = JobJournal.open(outputFolder)) {
+      JobJournal.PageJob job = journal.page("page1", "config");
+      assertEquals("text", job.getJoined().content());
+      job.saved();
+    }
+    try (JobJournal journal = JobJournal.open(outputFolder)) {
+      assertTrue(journal.page("page1", "config").isSaved());
+    }
+  }
+}
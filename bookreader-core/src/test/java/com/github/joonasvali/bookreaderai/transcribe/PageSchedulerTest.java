@@ -0,0 +1,101 @@
+package com.github.joonasvali.bookreaderai.transcribe;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PageSchedulerTest {
+
+  @Test
+  public void testInteractiveStagesGoFirst() throws InterruptedException {
+    PageScheduler scheduler = new PageScheduler(new SchedulerSettings(1));
+    Executor background = scheduler.executor(PageScheduler.Priority.BACKGROUND);
+    Executor interactive = scheduler.executor(PageScheduler.Priority.INTERACTIVE);
+
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(4);
+    List<String> order = new CopyOnWriteArrayList<>();
+
+    background.execute(() -> {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      done.countDown();
+    });
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+
+    background.execute(() -> {
+      order.add("background 1");
+      done.countDown();
+    });
+    background.execute(() -> {
+      order.add("background 2");
+      done.countDown();
+    });
+    interactive.execute(() -> {
+      order.add("interactive");
+      done.countDown();
+    });
+    assertEquals(3, scheduler.getQueuedTasks());
+
+    release.countDown();
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals(List.of("interactive", "background 1", "background 2"), order);
+  }
+
+  @Test
+  public void testStagesOfAllPagesShareTheWorkers() throws InterruptedException {
+    PageScheduler scheduler = new PageScheduler(new SchedulerSettings(2));
+    CountDownLatch bothRunning = new CountDownLatch(2);
+    CountDownLatch release = new CountDownLatch(1);
+
+    Runnable stage = () -> {
+      bothRunning.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    };
+    scheduler.executor(PageScheduler.Priority.INTERACTIVE).execute(stage);
+    scheduler.executor(PageScheduler.Priority.BACKGROUND).execute(stage);
+
+    assertTrue(bothRunning.await(5, TimeUnit.SECONDS));
+    release.countDown();
+  }
+
+  @Test
+  public void testWithoutWorkersEveryStageStartsRightAway() throws InterruptedException {
+    PageScheduler scheduler = new PageScheduler(new SchedulerSettings(0));
+    int stages = 100;
+    CountDownLatch allRunning = new CountDownLatch(stages);
+    CountDownLatch release = new CountDownLatch(1);
+
+    Executor executor = scheduler.executor(PageScheduler.Priority.BACKGROUND);
+    for (int i = 0; i < stages; i++) {
+      executor.execute(() -> {
+        allRunning.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+    }
+
+    assertTrue(allRunning.await(5, TimeUnit.SECONDS));
+    assertEquals(0, scheduler.getQueuedTasks());
+    release.countDown();
+  }
+}
@@ -0,0 +1,236 @@
+package com.github.joonasvali.bookreaderai.transcribe;
+
+import com.github.joonasvali.bookreaderai.TranscriptionHints;
+import com.github.joonasvali.bookreaderai.agents.ContentJoiner;
+import com.github.joonasvali.bookreaderai.openai.ProcessingResult;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedConstruction;
+import org.mockito.Mockito;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TranscriberTest {
+
+  private static final TranscriptionHints HINTS = new TranscriptionHints("english", "story", "GPT-4o");
+
+  /**
+   * Transcribes a page of as many slices as there are texts.
+   * Each slice agent returns the corresponding text from the texts array.
+   *
+   * @param approx the approximated content of the whole page
+   * @param texts variable number of transcription texts to be returned
+   * @return the joined transcription result
+   */
+  public String invokeTest(String approx, String... texts) {
+    try (MockedConstruction<SimpleTranscriberAgent> mockedAgents = mockAgents(approx, texts);
+         MockedConstruction<ContentJoiner> mockedContentJoiner =
+             Mockito.mockConstruction(ContentJoiner.class,
+                 (mock, context) -> {
+                   Mockito.doAnswer(invocation -> {
+                     Object firstArg = invocation.getArgument(0);
+                     Object secondArg = invocation.getArgument(1);
+                     Assertions.assertEquals(Arrays.toString(texts), Arrays.toString((String[])secondArg));
+                     return new ProcessingResult<>(firstArg, 0, 0, 0);
+                   }).when(mock).process(Mockito.any(), Mockito.any());
+                 })
+    ) {
+      Transcriber transcriber = new Transcriber(HINTS, Runnable::run);
+      return transcriber.transcribe(createPage(texts.length), null).join().content();
+    }
+  }
+
+  @Test
+  public void testTranscribeImagesReturnsConcatenatedTexts() {
+    // Sample text outputs to be used in tests.
+    String text1 = """
+          Two cats and a dog are playing in the garden.
+          The cats are chasing the dog. The dog is running away from the cats.
+          """;
+
+    String text2 = """
+          The dog is having fun too. Listen to the birds chirping. This is a beautiful day.
+          The sun is shining. The sky is blue.
+          """;
+
+    String text3 = """
+          The clouds are white. The birds are singing.
+          The kids are playing in the park. The parents are watching them. The kids are having fun.
+          """;
+    // Expected result is the concatenation of the provided texts.
+    String expectedResult = """
+        Two cats and a dog are playing in the garden.
+        The cats are chasing the dog. The dog is running away from the cats.
+        The dog is having fun too. Listen to the birds chirping. This is a beautiful day.
+        The sun is shining. The sky is blue.
+        The clouds are white. The birds are singing.
+        The kids are playing in the park. The parents are watching them. The kids are having fun.
+        """;
+
+    String result = invokeTest(expectedResult, text1, text2, text3);
+    assertEquals(expectedResult, result);
+  }
+
+  @Test
+  public void testRepeatingText() {
+    // Sample text outputs to be used in tests.
+    String text1 = """
+          Ladybug, ladybug, fly away home.
+          The cows are in the meadow. The sheep are in the corn.
+          Where is the
+          """;
+
+    String text2 = """
+          little logbook? The birds are in the sky. The fish are in the sea.
+          The bees are in the hive.
+          """;
+
+    String text3 = """
+          The ants are in the ground. Yard by yard, life is hard. Inch by inch, life's a cinch.
+          Ladybug, ladybug, fly away home. The cows are in the meadow. The sheep are in the corn.
+          Where is the little logbook? The birds are in the sky. The fish are in the sea.
+          """;
+    // Expected result is the concatenation of the provided texts.
+    String expectedResult = """
+        Ladybug, ladybug, fly away home.
+        The cows are in the meadow. The sheep are in the corn.
+        Where is the
+        little logbook? The birds are in the sky. The fish are in the sea.
+        The bees are in the hive.
+        The ants are in the ground. Yard by yard, life is hard. Inch by inch, life's a cinch.
+        Ladybug, ladybug, fly away home. The cows are in the meadow. The sheep are in the corn.
+        Where is the little logbook? The birds are in the sky. The fish are in the sea.
+        """;
+
+    String result = invokeTest(expectedResult, text1, text2, text3);
+    assertEquals(expectedResult, result);
+  }
+
+  @Test
+  public void testParallelTranscriptionRemovesDuplicatedOverlap() {
+    String text1 = """
+          Two cats and a dog are playing in the garden.
+          The cats are chasing the dog. The dog is running away from the cats.
+          """;
+
+    String text2 = """
+          The dog is running away from the cats.
+          The dog is having fun too. Listen to the birds chirping.
+          """;
+
+    String[][] joinerInput = new String[1][];
+
+    try (MockedConstruction<SimpleTranscriberAgent> mockedAgents = mockAgents("approx", text1, text2);
+         MockedConstruction<ContentJoiner> mockedContentJoiner =
+             Mockito.mockConstruction(ContentJoiner.class,
+                 (mock, context) -> {
+                   Mockito.doAnswer(invocation -> {
+                     joinerInput[0] = invocation.getArgument(1);
+                     return new ProcessingResult<>(invocation.getArgument(0), 10, 20, 30);
+                   }).when(mock).process(Mockito.any(), Mockito.any());
+                 })
+    ) {
+      Transcriber transcriber = new Transcriber(HINTS, Runnable::run);
+      transcriber.setParallelSlices(true);
+
+      ProcessingResult<String> result = transcriber.transcribe(createPage(2), null).join();
+
+      assertEquals(1, mockedContentJoiner.constructed().size());
+      assertEquals("The dog is having fun too. Listen to the birds chirping.\n", joinerInput[0][1]);
+      assertEquals(12, result.promptTokens());
+      assertEquals(24, result.completionTokens());
+      assertEquals(36, result.totalTokens());
+    }
+  }
+
+  @Test
+  public void testCleanSlicesAreJoinedWithoutContentJoiner() {
+    String text1 = """
+          Two cats and a dog are playing in the garden.
+          The cats are chasing the dog. The dog is running away from the cats.
+          """;
+
+    String text2 = """
+          The dog is having fun too. Listen to the birds chirping.
+          """;
+
+    String approx = text1.replace("garden", "gardon") + text2;
+
+    try (MockedConstruction<SimpleTranscriberAgent> mockedAgents = mockAgents(approx, text1, text2);
+         MockedConstruction<ContentJoiner> mockedContentJoiner = Mockito.mockConstruction(ContentJoiner.class)
+    ) {
+      ProcessingResult<String> result = new Transcriber(HINTS, Runnable::run).transcribe(createPage(2), null).join();
+
+      assertEquals(0, mockedContentJoiner.constructed().size());
+      assertEquals(text1 + text2, result.content());
+      assertEquals(2, result.promptTokens());
+      assertEquals(4, result.completionTokens());
+      assertEquals(6, result.totalTokens());
+    }
+  }
+
+  @Test
+  public void testFailingSliceFailsPageWithoutWaitingForOtherSlices() {
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try (MockedConstruction<SimpleTranscriberAgent> mockedAgents =
+             Mockito.mockConstruction(SimpleTranscriberAgent.class,
+                 (mock, context) -> {
+                   if ((int) context.arguments().get(3) == 1) {
+                     Mockito.doReturn(new ProcessingResult<>("approx", 0, 0, 0)).when(mock).transcribe(Mockito.any());
+                   } else {
+                     Mockito.doThrow(new IllegalStateException("Slice failed")).when(mock).transcribe(Mockito.any());
+                   }
+                   // The other slice never finishes on its own.
+                   Mockito.doAnswer(invocation -> {
+                     release.await();
+                     return new ProcessingResult<>("", 0, 0, 0);
+                   }).when(mock).transcribeContinuation();
+                 })
+    ) {
+      Transcriber transcriber = new Transcriber(HINTS, executor);
+      transcriber.setParallelSlices(true);
+
+      CompletableFuture<ProcessingResult<String>> result = transcriber.transcribe(createPage(2), null);
+
+      assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+    } finally {
+      release.countDown();
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * The agent of the whole page, the only one with a single sample, returns the approximation; the agents of the
+   * slices return the texts in order.
+   */
+  private static MockedConstruction<SimpleTranscriberAgent> mockAgents(String approx, String... texts) {
+    AtomicInteger slices = new AtomicInteger(0);
+    return Mockito.mockConstruction(SimpleTranscriberAgent.class,
+        (mock, context) -> {
+          ProcessingResult<String> result = (int) context.arguments().get(3) == 1
+              ? new ProcessingResult<>(approx, 0, 0, 0)
+              : new ProcessingResult<>(texts[slices.getAndIncrement()], 1, 2, 3);
+          Mockito.doReturn(result).when(mock).transcribe(Mockito.any());
+          Mockito.doReturn(result).when(mock).transcribeContinuation();
+        });
+  }
+
+  /**
+   * A blank page, cut into as many equal slices as it is high in slice heights.
+   */
+  private static BufferedImage createPage(int slices) {
+    return new BufferedImage(10, slices * PageTranscriber.SLICE_HEIGHT_PX, BufferedImage.TYPE_INT_RGB);
+  }
+}
@@ -0,0 +1,7 @@
+#!/bin/bash
+
+# Get the directory of the script (ensures correct relative paths)
+APP_DIR="$(cd "$(dirname "$0")" && pwd)"
+
+# Transcribe every image of the given folder without the UI: clipsnap-batch.sh <input folder>
+"$APP_DIR/jre/bin/java" -Dlogback.configurationFile="$APP_DIR/logback.xml" -Xmx2048M -cp "$APP_DIR/lib/bookreader-core.jar" com.github.joonasvali.bookreaderai.batch.BatchMain "$1" "$APP_DIR/clipsnap.properties"
@@ -0,0 +1,3 @@
+@echo off
+set "APP_DIR=%~dp0"
+"%APP_DIR%jre/bin/java.exe" -Dlogback.configurationFile="%APP_DIR%logback.xml" -Xmx2048M -cp "%APP_DIR%lib/bookreader-core.jar" com.github.joonasvali.bookreaderai.batch.BatchMain "%~1" "%APP_DIR%clipsnap.properties"
\ No newline at end of file